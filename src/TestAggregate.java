@@ -0,0 +1,109 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Monoid;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestAggregate extends TestCase {
+
+	// not commutative: checks that values are combined in key order
+	private static final Monoid<String,String> CONCAT = new Monoid<String,String>() {
+		public String identity() { return ""; }
+		public String of(String v) { return v; }
+		public String combine(String a, String b) { return a + b; }
+	};
+	
+	private TreeMap<Integer,Integer> tree;
+	
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+		tree.setMonoid(TestUtil.SUM);
+	}
+	
+	private long sum(int lo, int hi) {
+		long result = 0;
+		for (Entry<Integer,Integer> e : tree.entrySet()) {
+			if (e.getKey() >= lo && e.getKey() < hi) result += e.getValue();
+		}
+		return result;
+	}
+	
+	public void test00() {
+		assertEquals(0L, tree.aggregate(TestUtil.SUM).longValue());
+		assertEquals(0L, tree.aggregate(TestUtil.SUM, 1, 10).longValue());
+	}
+	
+	public void test01() {
+		for (int i=1; i <= 100; ++i) {
+			tree.put(i, i);
+		}
+		assertEquals(5050L, tree.aggregate(TestUtil.SUM).longValue());
+		assertEquals(55L, tree.aggregate(TestUtil.SUM, 1, 11).longValue());
+		assertEquals(0L, tree.aggregate(TestUtil.SUM, 50, 50).longValue());
+		assertEquals(sum(17, 83), tree.aggregate(TestUtil.SUM, 17, 83).longValue());
+	}
+	
+	public void test02() {
+		for (int i=0; i < 200; ++i) {
+			tree.put(i * 37 % 200, i);
+		}
+		for (int i=0; i < 200; i += 3) {
+			tree.remove(i);
+		}
+		tree.put(5, 1000);
+		for (int lo=-10; lo < 210; lo += 13) {
+			for (int hi=lo; hi < 220; hi += 29) {
+				assertEquals(sum(lo, hi), tree.aggregate(TestUtil.SUM, lo, hi).longValue());
+			}
+		}
+	}
+	
+	public void test03() {
+		for (int i=0; i < 20; ++i) {
+			tree.put(i, 1);
+		}
+		Iterator<Entry<Integer,Integer>> it = tree.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<Integer,Integer> e = it.next();
+			if (e.getKey() % 2 == 0) e.setValue(10);
+		}
+		assertEquals(110L, tree.aggregate(TestUtil.SUM).longValue());
+		assertEquals(22L, tree.aggregate(TestUtil.SUM, 0, 4).longValue());
+	}
+	
+	public void test04() {
+		TreeMap<Integer,String> m = new TreeMap<Integer,String>();
+		for (char c = 'a'; c <= 'z'; ++c) {
+			m.put((int)c, "" + c);
+		}
+		m.setMonoid(CONCAT); // added after the fact
+		assertEquals("abcdefghijklmnopqrstuvwxyz", m.aggregate(CONCAT));
+		assertEquals("defg", m.aggregate(CONCAT, (int)'d', (int)'h'));
+		m.remove((int)'e');
+		assertEquals("dfg", m.aggregate(CONCAT, (int)'d', (int)'h'));
+	}
+	
+	public void test05() {
+		try {
+			tree.aggregate(new Monoid<Integer,Long>() {
+				public Long identity() { return 0L; }
+				public Long of(Integer v) { return 1L; }
+				public Long combine(Long a, Long b) { return a + b; }
+			});
+			fail("should not accept a different monoid");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+	}
+	
+	public void test06() {
+		for (int i=0; i < 100; ++i) tree.put(i, i);
+		tree.replaceAll((k,v) -> v * 2);
+		assertEquals(9900L, tree.aggregate(TestUtil.SUM).longValue());
+		assertEquals(sum(10, 20), tree.aggregate(TestUtil.SUM, 10, 20).longValue());
+		assertEquals(Integer.valueOf(84), tree.get(42));
+	}
+}
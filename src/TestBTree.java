@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.BTreeMap;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestBTree extends TestCase {
+
+	private BTreeMap<Integer,String> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new BTreeMap<Integer,String>(null, 4);
+	}
+
+	public void test00() {
+		assertEquals(0, tree.size());
+		assertNull(tree.get(1));
+		assertNull(tree.get("1"));
+		assertNull(tree.remove(1));
+		assertFalse(tree.containsKey(null));
+		assertEquals("{}", tree.toString());
+		assertNull(tree.comparator());
+	}
+
+	public void test01() {
+		for (int i=0; i < 20; ++i) {
+			assertNull(tree.put(i * 7 % 20, "v" + i));
+		}
+		assertEquals(20, tree.size());
+		assertEquals("v3", tree.get(1));
+		assertEquals("v3", tree.put(1, "one"));
+		assertEquals(Integer.valueOf(0), tree.firstKey());
+		assertEquals(Integer.valueOf(19), tree.lastKey());
+		assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19]", tree.keySet().toString());
+	}
+
+	public void test02() {
+		try {
+			tree.put(null, "x");
+			fail("null key should be rejected");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		try {
+			new BTreeMap<Integer,String>(null, 3);
+			fail("fanout too small");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		tree.put(5, null);
+		assertTrue(tree.containsKey(5));
+		assertNull(tree.get(5));
+	}
+
+	public void test03() {
+		TreeMap<Integer,String> ref = new TreeMap<Integer,String>();
+		Random r = new Random(15);
+		for (int i=0; i < 3000; ++i) {
+			int k = r.nextInt(300);
+			if (r.nextInt(5) < 2) {
+				assertEquals(ref.remove(k), tree.remove(k));
+			} else {
+				assertEquals(ref.put(k, "v" + i), tree.put(k, "v" + i));
+			}
+			assertEquals(ref.size(), tree.size());
+		}
+		assertEquals(ref, tree);
+		assertEquals(ref.toString(), tree.toString());
+		for (Integer k : ref.keySet()) tree.remove(k);
+		assertTrue(tree.isEmpty());
+	}
+
+	public void test04() {
+		BTreeMap<String,Integer> desc = new BTreeMap<String,Integer>((a,b) -> b.compareTo(a));
+		for (int i=0; i < 10; ++i) desc.put("k" + i, i);
+		assertEquals("k9", desc.firstKey());
+		assertEquals("k0", desc.lastKey());
+		assertNotNull(desc.comparator());
+	}
+
+	public void test05() {
+		for (int i=0; i < 50; ++i) tree.put(i, "v" + i);
+		List<Integer> seen = new ArrayList<>();
+		tree.forEachInRange(10, 20, (k,v) -> seen.add(k));
+		assertEquals("[10, 11, 12, 13, 14, 15, 16, 17, 18, 19]", seen.toString());
+		seen.clear();
+		tree.forEachInRange(45, 100, (k,v) -> seen.add(k));
+		assertEquals("[45, 46, 47, 48, 49]", seen.toString());
+		seen.clear();
+		tree.forEach((k,v) -> seen.add(k));
+		assertEquals(new ArrayList<>(tree.keySet()), seen);
+	}
+
+	public void test06() {
+		for (int i=0; i < 50; ++i) tree.put(i, "v" + i);
+		for (Iterator<Entry<Integer,String>> it = tree.entrySet().iterator(); it.hasNext();) {
+			Entry<Integer,String> e = it.next();
+			if (e.getKey() % 3 != 0) it.remove();
+			else e.setValue("x" + e.getKey());
+		}
+		assertEquals(17, tree.size());
+		assertEquals("x3", tree.get(3));
+		assertEquals(Integer.valueOf(48), tree.lastKey());
+	}
+
+	public void test07() {
+		for (int i=0; i < 10; ++i) tree.put(i, "v" + i);
+		Iterator<Integer> it = tree.keySet().iterator();
+		it.next();
+		tree.put(100, "new");
+		try {
+			it.next();
+			fail("stale iterator should throw");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+		try {
+			tree.forEach((k,v) -> tree.remove(k));
+			fail("structural change should be detected");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+
+	public void test08() {
+		BTreeMap<Integer,Integer> big = new BTreeMap<Integer,Integer>();
+		for (int i=0; i < 1000; ++i) big.put(i * 37 % 1000, i);
+		for (int i=0; i < 1000; i += 2) big.remove(i);
+		assertEquals(500, big.size());
+		assertEquals(Integer.valueOf(1), big.firstKey());
+		big.clear();
+		assertTrue(big.isEmpty());
+		big.put(3, 3);
+		assertEquals("{3=3}", big.toString());
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.CountingBloomFilter;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestBloom extends TestCase {
+
+	private TreeMap<Integer,Integer> tree;
+	private CountingBloomFilter<Integer> filter;
+
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+		filter = new CountingBloomFilter<Integer>(Object::hashCode);
+	}
+
+	public void test00() {
+		assertNull(tree.getMissFilter());
+		tree.setMissFilter(filter);
+		assertSame(filter, tree.getMissFilter());
+		assertNull(tree.get(1));
+		tree.put(1, 10);
+		assertEquals(Integer.valueOf(10), tree.get(1));
+		assertNull(tree.get("1"));
+		assertEquals(1, filter.hits());
+		tree.setMissFilter(null);
+		assertNull(tree.getMissFilter());
+		assertEquals(Integer.valueOf(10), tree.get(1));
+		assertEquals(1, filter.hits());
+	}
+
+	public void test01() {
+		TestUtil.ProbeCounter counter = new TestUtil.ProbeCounter();
+		TreeMap<TestUtil.Key,Integer> counted = new TreeMap<TestUtil.Key,Integer>(counter);
+		CountingBloomFilter<TestUtil.Key> keyFilter = new CountingBloomFilter<TestUtil.Key>(Object::hashCode);
+		for (int i=0; i < 200; ++i) counted.put(new TestUtil.Key(i * 2), i);
+		counted.setMissFilter(keyFilter);
+		int misses = 0;
+		for (int i=0; i < 200; ++i) {
+			assertTrue(counted.containsKey(counter.probe(i * 2)));
+			if (!counted.containsKey(counter.probe(i * 2 + 1))) ++misses;
+		}
+		assertEquals(200, misses);
+		assertEquals(200, keyFilter.hits());
+		assertEquals(200, keyFilter.definiteMisses() + keyFilter.falsePositives());
+		assertTrue("false positives: " + keyFilter.falsePositives(), keyFilter.falsePositives() < 20);
+		assertTrue(keyFilter.falsePositiveRate() < 0.1);
+		// the misses the filter answered took no comparisons
+		assertTrue("took " + counter.comparisons(), counter.comparisons() < 200 * 10 + 20 * 10);
+	}
+
+	public void test02() {
+		tree.setMissFilter(filter);
+		for (int i=0; i < 100; ++i) tree.put(i, i);
+		assertTrue(filter.capacity() >= 100);
+		for (int i=0; i < 100; i += 2) tree.remove(i);
+		for (Iterator<Integer> it = tree.keySet().iterator(); it.hasNext(); ) {
+			if (it.next() % 3 == 0) it.remove();
+		}
+		filter.resetCounters();
+		for (int i=0; i < 100; ++i) {
+			assertEquals(i % 2 == 1 && i % 3 != 0, tree.containsKey(i));
+		}
+		assertEquals(tree.size(), filter.hits());
+		assertTrue(filter.definiteMisses() > 50);
+		tree.clear();
+		tree.put(1000, 0);
+		filter.resetCounters();
+		for (int i=0; i < 100; ++i) assertFalse(tree.containsKey(i));
+		assertEquals(100, filter.definiteMisses());
+	}
+
+	public void test03() {
+		tree.setMissFilter(filter);
+		TreeMap<Integer,Integer> other = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 300; ++i) other.put(i * 3, i);
+		tree.put(1, 1);
+		tree.putAll(other); // merged and rebuilt
+		for (int i=0; i < 300; ++i) assertTrue(tree.containsKey(i * 3));
+		assertTrue(tree.containsKey(1));
+		TreeMap<Integer,Integer> snap = tree.snapshot();
+		assertNull(snap.getMissFilter());
+		tree.remove(3);
+		tree.put(-5, -5); // copies the nodes above the new one
+		assertFalse(tree.containsKey(3));
+		assertTrue(tree.containsKey(-5));
+		assertTrue(snap.containsKey(3));
+		assertFalse(snap.containsKey(-5));
+	}
+
+	public void test04() {
+		java.util.TreeMap<Integer,Integer> expected = new java.util.TreeMap<>();
+		tree.setMissFilter(new CountingBloomFilter<Integer>(Object::hashCode, 4, 3));
+		Random r = new Random(24);
+		for (int i=0; i < 600; ++i) {
+			int k = r.nextInt(200);
+			if (r.nextInt(3) == 0) assertEquals(expected.remove(k), tree.remove(k));
+			else assertEquals(expected.put(k, i), tree.put(k, i));
+			k = r.nextInt(200);
+			assertEquals(expected.get(k), tree.get(k));
+		}
+		assertEquals(expected, tree);
+	}
+
+	public void test05() {
+		try {
+			new CountingBloomFilter<Integer>(null);
+			fail("null hash function");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		try {
+			new CountingBloomFilter<Integer>(Object::hashCode, 10, 0);
+			fail("no cells");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		CountingBloomFilter<Integer> f = new CountingBloomFilter<Integer>(Object::hashCode, 1000, 8);
+		assertEquals(1000, f.capacity());
+		assertEquals(1000 * 8 / 2, f.memoryBytes());
+		assertEquals(0.0, f.falsePositiveRate());
+	}
+}
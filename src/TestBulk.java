@@ -0,0 +1,242 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.DefaultEntry;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestBulk extends TestCase {
+
+	private static List<Entry<Integer,String>> entries(int from, int to, int step) {
+		List<Entry<Integer,String>> result = new ArrayList<>();
+		for (int i=from; i < to; i += step) {
+			result.add(new DefaultEntry<>(i, "v" + i));
+		}
+		return result;
+	}
+	
+	private static java.util.TreeMap<Integer,String> reference(int from, int to, int step) {
+		java.util.TreeMap<Integer,String> result = new java.util.TreeMap<>();
+		for (Entry<Integer,String> e : entries(from, to, step)) {
+			result.put(e.getKey(), e.getValue());
+		}
+		return result;
+	}
+	
+	
+	/// test0x: building from sorted input
+	
+	public void test00() {
+		TreeMap<Integer,String> t = TreeMap.fromSorted(null, entries(0, 0, 1).iterator());
+		assertEquals(0, t.size());
+		t.put(3, "three");
+		assertEquals("{3=three}", t.toString());
+	}
+	
+	public void test01() {
+		for (int n=1; n < 70; ++n) {
+			TreeMap<Integer,String> t = TreeMap.fromSorted(null, entries(0, n, 1).iterator());
+			assertEquals(n, t.size());
+			assertEquals(reference(0, n, 1).toString(), t.toString());
+			assertEquals(n-1, t.rank(n-1));
+		}
+	}
+	
+	public void test02() {
+		Integer[] keys = { 1, 4, 9, 16, 25 };
+		String[] values = { "a", "b", "c", "d", "e" };
+		TreeMap<Integer,String> t = TreeMap.fromSorted(null, keys, values);
+		assertEquals("{1=a, 4=b, 9=c, 16=d, 25=e}", t.toString());
+		assertEquals("c", t.remove(9));
+		t.put(10, "x");
+		assertEquals("{1=a, 4=b, 10=x, 16=d, 25=e}", t.toString());
+	}
+	
+	public void test03() {
+		java.util.TreeMap<Integer,String> ref = reference(0, 1000, 7);
+		TreeMap<Integer,String> t = TreeMap.fromSorted(ref);
+		assertEquals(ref, t);
+		assertEquals(ref.toString(), t.toString());
+		for (int i=0; i < 1000; i += 3) {
+			assertEquals(ref.remove(i), t.remove(i));
+		}
+		assertEquals(ref.toString(), t.toString());
+	}
+	
+	public void test04() {
+		java.util.TreeMap<String,Integer> ref = new java.util.TreeMap<>(TestUtil.reverse(TestUtil.<String>defaultComparator()));
+		ref.put("apple", 1);
+		ref.put("banana", 2);
+		ref.put("cherry", 3);
+		TreeMap<String,Integer> t = TreeMap.fromSorted(ref);
+		assertEquals("{cherry=3, banana=2, apple=1}", t.toString());
+		t.put("date", 4);
+		assertEquals("date", t.firstKey());
+	}
+	
+	public void test05() {
+		List<Entry<Integer,String>> bad = entries(0, 10, 1);
+		bad.add(new DefaultEntry<>(5, "out of order"));
+		try {
+			TreeMap.fromSorted(null, bad.iterator());
+			fail("should reject unsorted input");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		try {
+			TreeMap.fromSorted(null, new Integer[] {1, 1}, new String[] {"a", "b"});
+			fail("should reject duplicate keys");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		try {
+			TreeMap.fromSorted(null, new Integer[] {1, 2}, new String[] {"a"});
+			fail("should reject arrays of different lengths");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+	}
+	
+	
+	/// test1x: putAll
+	
+	public void test10() {
+		TreeMap<Integer,String> t = new TreeMap<>();
+		t.putAll(reference(0, 100, 3));
+		assertEquals(reference(0, 100, 3).toString(), t.toString());
+	}
+	
+	public void test11() {
+		// large sorted source: merged and rebuilt
+		java.util.TreeMap<Integer,String> ref = reference(0, 300, 2);
+		TreeMap<Integer,String> t = TreeMap.fromSorted(reference(0, 300, 3));
+		Entry<Integer,String> kept = t.entrySet().iterator().next();
+		java.util.TreeMap<Integer,String> other = reference(0, 300, 3);
+		other.putAll(ref);
+		t.putAll(ref);
+		assertEquals(other.toString(), t.toString());
+		kept.setValue("changed");
+		assertEquals("changed", t.get(0));
+	}
+	
+	public void test12() {
+		// small sorted source: inserted by walking
+		java.util.TreeMap<Integer,String> ref = reference(0, 2000, 1);
+		TreeMap<Integer,String> t = TreeMap.fromSorted(ref);
+		java.util.TreeMap<Integer,String> small = new java.util.TreeMap<>();
+		small.put(-5, "first");
+		small.put(7, "seven");
+		small.put(999, "replaced");
+		small.put(1500, "again");
+		small.put(5000, "last");
+		t.putAll(small);
+		ref.putAll(small);
+		assertEquals(ref.toString(), t.toString());
+	}
+	
+	public void test13() {
+		// different ordering: entry by entry
+		TreeMap<Integer,String> t = new TreeMap<>(TestUtil.reverse(TestUtil.<Integer>defaultComparator()));
+		t.put(50, "v50");
+		t.putAll(reference(0, 100, 10));
+		assertEquals(10, t.size());
+		assertEquals(90, t.firstKey().intValue());
+		java.util.HashMap<Integer,String> unsorted = new java.util.HashMap<>();
+		unsorted.put(200, "x");
+		unsorted.put(-1, "y");
+		t.putAll(unsorted);
+		assertEquals(200, t.firstKey().intValue());
+		assertEquals(-1, t.lastKey().intValue());
+	}
+	
+	public void test14() {
+		TreeMap<Integer,String> t = TreeMap.fromSorted(reference(0, 50, 1));
+		TreeMap<Integer,String> u = TreeMap.fromSorted(reference(25, 75, 5));
+		t.putAll(u.headMap(50, true));
+		assertEquals(51, t.size());
+		t.putAll(u);
+		assertEquals(55, t.size());
+		t.putAll(t);
+		assertEquals(55, t.size());
+	}
+	
+	
+	/// test2x: union, intersection and difference
+	
+	private static java.util.TreeMap<Integer,String> expected(java.util.TreeMap<Integer,String> a,
+			java.util.TreeMap<Integer,String> b, String op) {
+		java.util.TreeMap<Integer,String> result = new java.util.TreeMap<>();
+		for (Entry<Integer,String> e : a.entrySet()) {
+			String other = b.get(e.getKey());
+			if (op.equals("union") || op.equals("intersection")) {
+				if (other != null) result.put(e.getKey(), e.getValue() + "+" + other);
+				else if (op.equals("union")) result.put(e.getKey(), e.getValue());
+			} else if (other == null) {
+				result.put(e.getKey(), e.getValue());
+			}
+		}
+		if (op.equals("union")) {
+			for (Entry<Integer,String> e : b.entrySet()) {
+				result.putIfAbsent(e.getKey(), e.getValue());
+			}
+		}
+		return result;
+	}
+	
+	private void checkSetOperations(java.util.TreeMap<Integer,String> a, java.util.TreeMap<Integer,String> b) {
+		TreeMap<Integer,String> ta = TreeMap.fromSorted(a);
+		TreeMap<Integer,String> tb = TreeMap.fromSorted(b);
+		assertEquals(expected(a, b, "union"), ta.union(tb, (x,y) -> x + "+" + y));
+		assertEquals(expected(a, b, "intersection"), ta.intersection(tb, (x,y) -> x + "+" + y));
+		assertEquals(expected(a, b, "difference"), ta.difference(tb));
+		assertEquals(expected(b, a, "difference"), tb.difference(ta));
+		assertEquals(a, ta);
+		assertEquals(b, tb);
+	}
+	
+	public void test20() {
+		checkSetOperations(reference(0, 0, 1), reference(0, 10, 1));
+		checkSetOperations(reference(0, 100, 2), reference(0, 100, 3));
+		checkSetOperations(reference(0, 50, 1), reference(50, 100, 1));
+	}
+	
+	public void test21() {
+		// very different sizes
+		checkSetOperations(reference(0, 2000, 1), reference(100, 130, 7));
+		checkSetOperations(reference(1000, 1010, 1), reference(0, 2000, 3));
+		checkSetOperations(reference(0, 2000, 1), reference(1990, 2100, 9));
+		checkSetOperations(reference(-40, 5, 11), reference(0, 1000, 1));
+	}
+	
+	public void test22() {
+		// large enough to be split into parallel pieces
+		// (only spot checks: every access checks the invariant)
+		TreeMap<Integer,String> ta = TreeMap.fromSorted(reference(0, 60000, 2));
+		TreeMap<Integer,String> tb = TreeMap.fromSorted(reference(0, 60000, 3));
+		TreeMap<Integer,String> u = ta.union(tb, (x,y) -> x + "+" + y);
+		TreeMap<Integer,String> i = ta.intersection(tb, (x,y) -> x + "+" + y);
+		TreeMap<Integer,String> d = ta.difference(tb);
+		assertEquals(40000, u.size());
+		assertEquals(10000, i.size());
+		assertEquals(20000, d.size());
+		for (int k=0; k < 60000; k += 997) {
+			String expected = k % 6 == 0 ? "v" + k + "+v" + k : (k % 2 == 0 || k % 3 == 0) ? "v" + k : null;
+			assertEquals(expected, u.get(k));
+			assertEquals(k % 6 == 0 ? expected : null, i.get(k));
+			assertEquals(k % 2 == 0 && k % 3 != 0 ? expected : null, d.get(k));
+		}
+	}
+	
+	public void test23() {
+		TreeMap<Integer,String> t = new TreeMap<>();
+		TreeMap<Integer,String> r = new TreeMap<>(TestUtil.reverse(TestUtil.<Integer>defaultComparator()));
+		try {
+			t.union(r, (x,y) -> x);
+			fail("should not combine maps with different orderings");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Codec;
+import edu.uwm.cs351.util.DurableTreeMap;
+
+
+public class TestDurable extends TestCase {
+
+	private Path log;
+	private DurableTreeMap<Integer,Long> map;
+
+	@Override
+	protected void setUp() throws IOException {
+		log = Files.createTempFile("TestDurable", ".log");
+		Files.delete(log);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		if (map != null) map.close();
+		Files.deleteIfExists(log);
+	}
+
+	private DurableTreeMap<Integer,Long> reopen(int groupSize) throws IOException {
+		if (map != null) map.close();
+		map = new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG, groupSize);
+		return map;
+	}
+
+	public void test00() throws IOException {
+		reopen(4);
+		assertEquals(0, map.size());
+		assertEquals(16, Files.size(log));
+		reopen(4);
+		assertEquals("{}", map.toString());
+	}
+
+	public void test01() throws IOException {
+		reopen(4);
+		for (int i=0; i < 10; ++i) map.put(i, i * 10L);
+		assertEquals(Long.valueOf(30), map.remove(3));
+		assertNull(map.remove(3));
+		assertNull(map.remove("3"));
+		map.put(5, -5L);
+		reopen(4);
+		assertEquals("{0=0, 1=10, 2=20, 4=40, 5=-5, 6=60, 7=70, 8=80, 9=90}", map.toString());
+		map.clear();
+		map.put(100, 1L);
+		reopen(4);
+		assertEquals("{100=1}", map.toString());
+	}
+
+	public void test02() throws IOException {
+		reopen(4);
+		map.put(1, 1L);
+		map.put(2, 2L);
+		assertEquals(2, map.uncommitted());
+		map.put(3, 3L);
+		map.put(4, 4L); // fills the group
+		assertEquals(0, map.uncommitted());
+		map.put(5, 5L);
+		assertEquals(1, map.uncommitted());
+		// simulate a crash of the program: read the log without closing the map
+		DurableTreeMap<Integer,Long> recovered = new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG);
+		assertEquals("{1=1, 2=2, 3=3, 4=4, 5=5}", recovered.toString());
+		recovered.close();
+		map.commit();
+		assertEquals(0, map.uncommitted());
+		reopen(1);
+		assertEquals(5, map.size());
+		map.put(6, 6L);
+		assertEquals(0, map.uncommitted());
+	}
+
+	public void test03() throws IOException {
+		reopen(4);
+		for (int i=0; i < 10; ++i) map.put(i, (long) i);
+		Iterator<Entry<Integer,Long>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<Integer,Long> e = it.next();
+			if (e.getKey() % 3 == 0) it.remove();
+			else e.setValue(-e.getValue());
+		}
+		map.keySet().remove(4);
+		map.values().remove(-5L);
+		reopen(4);
+		assertEquals("{1=-1, 2=-2, 7=-7, 8=-8}", map.toString());
+	}
+
+	public void test04() throws IOException {
+		reopen(4);
+		map.put(1, 1L);
+		map.put(2, 2L);
+		map.close();
+		// a crash in the middle of writing a record
+		try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer partial = ByteBuffer.allocate(6);
+			partial.put(0, (byte) 1);
+			ch.write(partial);
+		}
+		long size = Files.size(log);
+		reopen(4);
+		assertEquals("{1=1, 2=2}", map.toString());
+		assertEquals(size - 6, Files.size(log));
+		map.put(3, 3L);
+		reopen(4);
+		assertEquals("{1=1, 2=2, 3=3}", map.toString());
+	}
+
+	public void test05() throws IOException {
+		reopen(8);
+		for (int round=0; round < 10; ++round) {
+			for (int i=0; i < 20; ++i) map.put(i, (long) round);
+		}
+		map.commit();
+		long before = Files.size(log);
+		map.checkpoint();
+		assertTrue(Files.size(log) < before / 5);
+		map.put(20, 20L);
+		reopen(8);
+		assertEquals(21, map.size());
+		assertEquals(Long.valueOf(9), map.get(0));
+		assertEquals(Long.valueOf(20), map.get(20));
+	}
+
+	public void test06() throws IOException {
+		reopen(4);
+		try {
+			map.put(1, null);
+			fail("null values cannot be logged");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		map.close();
+		assertTrue(map.isClosed());
+		assertNull(map.get(1));
+		try {
+			map.put(1, 1L);
+			fail("map is closed");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+		map = null;
+		try {
+			new DurableTreeMap<Integer,Integer>(log, null, Codec.INT, Codec.INT);
+			fail("wrong value width");
+		} catch (IOException ex) {
+			// OK
+		}
+		Files.write(log, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+		try {
+			new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG);
+			fail("not a log");
+		} catch (IOException ex) {
+			// OK
+		}
+	}
+
+	private void overwrite(long position, int b) throws IOException {
+		try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			ch.write(ByteBuffer.wrap(new byte[] { (byte) b }), position);
+		}
+	}
+
+	public void test07() throws IOException {
+		reopen(4);
+		for (int i=1; i <= 4; ++i) map.put(i, (long) i);
+		map.close();
+		long record = (Files.size(log) - 16) / 4;
+		// a damaged value in the third record
+		overwrite(16 + 2 * record + 7, 0x55);
+		reopen(4);
+		assertEquals("{1=1, 2=2}", map.toString());
+		assertEquals(16 + 2 * record, Files.size(log));
+		map.put(5, 5L);
+		map.close();
+		// garbage where the operation of the second record should be
+		overwrite(16 + record, 9);
+		reopen(4);
+		assertEquals("{1=1}", map.toString());
+		assertEquals(16 + record, Files.size(log));
+		map.put(6, 6L);
+		reopen(4);
+		assertEquals("{1=1, 6=6}", map.toString());
+	}
+
+	public void test08() throws IOException, InterruptedException {
+		map = new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG, 1000, 20);
+		map.put(1, 1L);
+		map.put(2, 2L);
+		assertEquals(2, map.uncommitted());
+		Thread.sleep(40);
+		assertEquals(2, map.uncommitted()); // only checked on a change
+		map.put(3, 3L); // the first record has waited too long
+		assertEquals(0, map.uncommitted());
+		map.put(4, 4L);
+		assertEquals(1, map.uncommitted());
+		map.close();
+		map = new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG, 1000, 0);
+		assertEquals(4, map.size());
+		map.put(5, 5L);
+		assertEquals(0, map.uncommitted());
+		try {
+			new DurableTreeMap<Integer,Long>(log, null, Codec.INT, Codec.LONG, 4, -1);
+			fail("negative delay");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+	}
+}
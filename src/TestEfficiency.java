@@ -1,3 +1,4 @@
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -6,6 +7,7 @@ import java.util.Set;
 
 import junit.framework.TestCase;
 import edu.uwm.cs351.util.DefaultEntry;
+import edu.uwm.cs351.util.Monoid;
 import edu.uwm.cs351.util.TreeMap;
 
 
@@ -142,4 +144,51 @@ public class TestEfficiency extends TestCase {
 		}
 		assertEquals(max/2-1-removed,tree.size());
 	}
+	
+	public void testSortedPut() {
+		TreeMap<Integer,Integer> sorted = new TreeMap<Integer,Integer>(TestUtil.<Integer>defaultComparator());
+		for (int i=0; i < TESTS; ++i) {
+			assertNull(sorted.put(i, i));
+		}
+		for (int i=TESTS-1; i >= 0; --i) {
+			assertEquals(i, sorted.get(i).intValue());
+		}
+	}
+	
+	// splaying after each of a run of increasing keys leaves a path
+	private TreeMap<Integer,Integer> deepTree() {
+		TreeMap<Integer,Integer> deep = new TreeMap<Integer,Integer>(null, TreeMap.Balancing.SPLAY);
+		for (int i=0; i < 200000; ++i) deep.put(i, 1);
+		return deep;
+	}
+	
+	public void testDeepMonoid() {
+		TreeMap<Integer,Integer> deep = deepTree();
+		deep.setMonoid(TestUtil.SUM);
+		assertEquals(Long.valueOf(200000), deep.aggregate(TestUtil.SUM));
+	}
+	
+	public void testDeepSnapshot() {
+		TreeMap<Integer,Integer> deep = deepTree();
+		TreeMap<Integer,Integer> s = deep.snapshot();
+		deep.put(-1, 0); // copies the whole path
+		assertEquals(200001, deep.size());
+		assertEquals(200000, s.size());
+		assertEquals(Integer.valueOf(199999), s.lastKey());
+	}
+	
+	public void testSmallSetOperations() {
+		int[] count = new int[1];
+		Comparator<Integer> counting = (a, b) -> { ++count[0]; return a.compareTo(b); };
+		TreeMap<Integer,Integer> big = new TreeMap<Integer,Integer>(counting);
+		TreeMap<Integer,Integer> small = new TreeMap<Integer,Integer>(counting);
+		for (int i=0; i < TESTS * 10; ++i) big.put(i * 2, i);
+		for (int i=0; i < 100; ++i) small.put(random.nextInt(TESTS * 20), i);
+		count[0] = 0;
+		assertEquals(TESTS * 10 + small.size(), big.union(small, (x,y) -> x).size() + big.intersection(small, (x,y) -> x).size());
+		big.difference(small);
+		small.difference(big);
+		// each of the small map's keys is found with a short search
+		assertTrue("took " + count[0], count[0] < 100 * 4 * 40);
+	}
 }
@@ -0,0 +1,130 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Comparator;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Codec;
+import edu.uwm.cs351.util.SortedKeyCodec;
+import edu.uwm.cs351.util.StreamCodec;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestExport extends TestCase {
+
+	private ByteArrayOutputStream bytes;
+
+	@Override
+	protected void setUp() {
+		bytes = new ByteArrayOutputStream();
+	}
+
+	private ByteArrayInputStream input() {
+		return new ByteArrayInputStream(bytes.toByteArray());
+	}
+
+	public void test00() throws IOException {
+		TreeMap<Integer,Integer> tree = new TreeMap<Integer,Integer>();
+		tree.export(bytes, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		assertEquals(5, bytes.size());
+		TreeMap<Integer,Integer> copy = TreeMap.importFrom(input(), null, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		assertTrue(copy.isEmpty());
+	}
+
+	public void test01() throws IOException {
+		TreeMap<Integer,Integer> tree = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 1000; ++i) tree.put(1_000_000 + i * 3, -i);
+		tree.put(Integer.MIN_VALUE, 0);
+		tree.put(Integer.MAX_VALUE, 1);
+		tree.export(bytes, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		// mostly one byte for each key and two for each value
+		assertTrue("took " + bytes.size(), bytes.size() < 1000 * 3 + 30);
+		TreeMap<Integer,Integer> copy = TreeMap.importFrom(input(), null, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		assertEquals(tree, copy);
+		copy.put(5, 5); // the copy is an ordinary map
+		assertEquals(1003, copy.size());
+	}
+
+	public void test02() throws IOException {
+		TreeMap<Long,Double> tree = new TreeMap<Long,Double>();
+		for (long i=0; i < 100; ++i) tree.put(i * 1_000_000_007L - 50_000_000_000L, i / 4.0);
+		tree.put(Long.MIN_VALUE, 0.5);
+		tree.put(Long.MAX_VALUE, -0.5);
+		StreamCodec<Double> doubles = StreamCodec.of(Codec.DOUBLE);
+		tree.export(bytes, SortedKeyCodec.LONG_DELTA, doubles);
+		TreeMap<Long,Double> copy = TreeMap.importFrom(input(), null, SortedKeyCodec.LONG_DELTA, doubles);
+		assertEquals(tree, copy);
+	}
+
+	public void test03() throws IOException {
+		TreeMap<String,String> tree = new TreeMap<String,String>();
+		String[] words = { "apple", "applesauce", "application", "apply", "banana", "band", "bandana", "", "\uD83D\uDE00a", "\uD83D\uDE01b" };
+		for (String w : words) tree.put(w, w.toUpperCase());
+		tree.export(bytes, SortedKeyCodec.STRING_PREFIX, StreamCodec.STRING);
+		TreeMap<String,String> copy = TreeMap.importFrom(input(), null, SortedKeyCodec.STRING_PREFIX, StreamCodec.STRING);
+		assertEquals(tree, copy);
+		assertEquals(tree.toString(), copy.toString());
+	}
+
+	public void test04() throws IOException {
+		Comparator<Integer> reverse = Comparator.reverseOrder();
+		TreeMap<Integer,Long> tree = new TreeMap<Integer,Long>(reverse);
+		for (int i=0; i < 50; ++i) tree.put(i * i, (long) i);
+		tree.export(bytes, SortedKeyCodec.INT_DELTA, StreamCodec.LONG);
+		TreeMap<Integer,Long> copy = TreeMap.importFrom(input(), reverse, SortedKeyCodec.INT_DELTA, StreamCodec.LONG);
+		assertEquals(tree, copy);
+		assertEquals(Integer.valueOf(49 * 49), copy.firstKey());
+		try {
+			TreeMap.importFrom(input(), null, SortedKeyCodec.INT_DELTA, StreamCodec.LONG);
+			fail("keys are out of order for this comparator");
+		} catch (IOException ex) {
+			// OK
+		}
+	}
+
+	public void test05() throws IOException {
+		TreeMap<Integer,Integer> tree = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 10; ++i) tree.put(i, i);
+		tree.export(bytes, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		tree.export(bytes, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+		ByteArrayInputStream in = input();
+		assertEquals(tree, TreeMap.importFrom(in, null, SortedKeyCodec.INT_DELTA, StreamCodec.INT));
+		assertEquals(tree, TreeMap.importFrom(in, null, SortedKeyCodec.INT_DELTA, StreamCodec.INT));
+		assertEquals(-1, in.read());
+		byte[] cut = new byte[bytes.size() / 2 - 3];
+		System.arraycopy(bytes.toByteArray(), 0, cut, 0, cut.length);
+		try {
+			TreeMap.importFrom(new ByteArrayInputStream(cut), null, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+			fail("stream ends too soon");
+		} catch (EOFException ex) {
+			// OK
+		}
+		try {
+			TreeMap.importFrom(new ByteArrayInputStream(new byte[8]), null, SortedKeyCodec.INT_DELTA, StreamCodec.INT);
+			fail("not an exported map");
+		} catch (IOException ex) {
+			// OK
+		}
+	}
+
+	public void test06() throws IOException {
+		DataOutputStream out = new DataOutputStream(bytes);
+		StreamCodec.writeVarInt(out, -1); // a "negative" length
+		StreamCodec.writeVarInt(out, StreamCodec.MAX_STRING_BYTES + 1);
+		StreamCodec.writeVarInt(out, 2);
+		out.writeBytes("hi");
+		DataInputStream in = new DataInputStream(input());
+		for (int i=0; i < 2; ++i) {
+			try {
+				StreamCodec.STRING.read(in);
+				fail("bad length");
+			} catch (IOException ex) {
+				assertFalse(ex instanceof EOFException);
+			}
+		}
+		assertEquals("hi", StreamCodec.STRING.read(in));
+	}
+}
@@ -0,0 +1,128 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestFinger extends TestCase {
+
+	private TestUtil.ProbeCounter counter = new TestUtil.ProbeCounter();
+	private TreeMap<Integer,Integer> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 1000; ++i) tree.put(i * 2, i);
+	}
+
+	/** Return a copy of the tree whose comparisons with probes are counted. */
+	private TreeMap<TestUtil.Key,Integer> counted() {
+		TreeMap<TestUtil.Key,Integer> result = new TreeMap<TestUtil.Key,Integer>(counter);
+		for (Entry<Integer,Integer> e : tree.entrySet()) result.put(new TestUtil.Key(e.getKey()), e.getValue());
+		return result;
+	}
+
+	public void test00() {
+		assertFalse(tree.isFingerSearch());
+		tree.setFingerSearch(true);
+		assertTrue(tree.isFingerSearch());
+		assertEquals(Integer.valueOf(5), tree.get(10));
+		assertNull(tree.get(11));
+		assertEquals(Integer.valueOf(6), tree.get(12));
+		assertTrue(tree.containsKey(1998));
+		assertFalse(tree.containsKey(-1));
+		assertEquals(Integer.valueOf(0), tree.get(0));
+		assertNull(tree.get("0"));
+		assertEquals(1000, tree.size());
+	}
+
+	public void test01() {
+		TreeMap<TestUtil.Key,Integer> counted = counted();
+		counted.setFingerSearch(true);
+		counted.get(counter.probe(1000));
+		counter.reset();
+		for (int k=1002; k < 1100; k += 2) counted.get(counter.probe(k));
+		int withFinger = counter.comparisons();
+		counted.setFingerSearch(false);
+		counter.reset();
+		for (int k=1002; k < 1100; k += 2) counted.get(counter.probe(k));
+		int without = counter.comparisons();
+		assertTrue(withFinger + " vs " + without, withFinger * 3 < without * 2);
+	}
+
+	public void test02() {
+		tree.setFingerSearch(true);
+		for (int k=1; k < 200; k += 2) assertNull(tree.put(k, -k));
+		for (int k=199; k > 0; k -= 2) assertEquals(Integer.valueOf(-k), tree.put(k, k));
+		assertEquals(1100, tree.size());
+		for (int k=0; k < 200; ++k) assertEquals(Integer.valueOf(k % 2 == 0 ? k / 2 : k), tree.get(k));
+	}
+
+	public void test03() {
+		tree.setFingerSearch(true);
+		tree.get(500);
+		assertEquals(Integer.valueOf(250), tree.remove(500));
+		assertNull(tree.get(500));
+		assertEquals(Integer.valueOf(251), tree.get(502));
+
+		TreeMap<TestUtil.Key,Integer> counted = counted();
+		counted.setFingerSearch(true);
+		counted.get(counter.probe(1000));
+		counter.reset();
+		counted.get(counter.probe(1000));
+		int atFinger = counter.comparisons();
+		TreeMap<TestUtil.Key,Integer> s = counted.snapshot();
+		assertNull(counted.put(counter.probe(1001), 0));
+		// the write copies only the path to the new node, and leaves the finger on it
+		counter.reset();
+		assertEquals(Integer.valueOf(0), counted.get(counter.probe(1001)));
+		assertEquals(atFinger, counter.comparisons());
+		assertNull(s.get(new TestUtil.Key(1001)));
+		assertEquals(Integer.valueOf(500), counted.get(new TestUtil.Key(1000)));
+
+		tree.clear();
+		assertNull(tree.get(502));
+		tree.put(3, 3);
+		assertEquals(Integer.valueOf(3), tree.get(3));
+	}
+
+	public void test04() {
+		java.util.TreeMap<Integer,Integer> expected = new java.util.TreeMap<>();
+		for (int i=0; i < 1000; ++i) expected.put(i * 2, i);
+		tree.setFingerSearch(true);
+		Random r = new Random(22);
+		int k = 1000;
+		for (int i=0; i < 2000; ++i) {
+			k += r.nextInt(21) - 10;
+			switch (r.nextInt(3)) {
+			case 0:
+				assertEquals(expected.remove(k), tree.remove(k));
+				break;
+			case 1:
+				assertEquals(expected.put(k, i), tree.put(k, i));
+				break;
+			default:
+				assertEquals(expected.get(k), tree.get(k));
+			}
+		}
+		assertEquals(expected, tree);
+	}
+
+	public void test05() {
+		TreeMap<TestUtil.Key,Integer> counted = counted();
+		counted.setFingerSearch(true);
+		counted.get(counter.probe(1000));
+		counter.reset();
+		counted.get(counter.probe(1000));
+		int atFinger = counter.comparisons();
+		// iterators check their invariants by searching for their keys
+		Iterator<TestUtil.Key> it = counted.keySet().iterator();
+		for (int i=0; i < 10; ++i) it.next();
+		assertTrue(it.hasNext());
+		counter.reset();
+		counted.get(counter.probe(1000));
+		assertEquals(atFinger, counter.comparisons());
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestHashIndex extends TestCase {
+
+	private TreeMap<Integer,Integer> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+	}
+
+	public void test00() {
+		assertFalse(tree.hasHashIndex());
+		assertEquals(0, tree.hashIndexBytes());
+		tree.setHashIndex(Object::hashCode);
+		assertTrue(tree.hasHashIndex());
+		assertNull(tree.get(1));
+		tree.put(1, 10);
+		assertEquals(Integer.valueOf(10), tree.get(1));
+		assertTrue(tree.containsKey(1));
+		assertFalse(tree.containsKey(2));
+		assertNull(tree.get("1"));
+		assertNull(tree.get(null));
+		tree.setHashIndex(null);
+		assertFalse(tree.hasHashIndex());
+		assertEquals(Integer.valueOf(10), tree.get(1));
+	}
+
+	public void test01() {
+		TestUtil.ProbeCounter counter = new TestUtil.ProbeCounter();
+		TreeMap<TestUtil.Key,Integer> counted = new TreeMap<TestUtil.Key,Integer>(counter);
+		for (int i=0; i < 1000; ++i) counted.put(new TestUtil.Key(i * 2), i);
+		counted.setHashIndex(Object::hashCode);
+		for (int i=0; i < 1000; ++i) {
+			assertEquals(Integer.valueOf(i), counted.get(counter.probe(i * 2)));
+			assertNull(counted.get(counter.probe(i * 2 + 1)));
+		}
+		// one comparison per hit, rarely any for a miss
+		assertTrue("took " + counter.comparisons(), counter.comparisons() < 1100);
+		assertEquals("{0=0, 2=1, 4=2}", counted.headMap(new TestUtil.Key(6)).toString());
+	}
+
+	public void test02() {
+		tree.setHashIndex(Object::hashCode, 0.25f);
+		long small = tree.hashIndexBytes();
+		for (int i=0; i < 500; ++i) tree.put(i, -i);
+		long quarter = tree.hashIndexBytes();
+		assertTrue(quarter > small);
+		tree.setHashIndex(Object::hashCode, 0.75f);
+		assertTrue(tree.hashIndexBytes() < quarter);
+		try {
+			tree.setHashIndex(Object::hashCode, 1.0f);
+			fail("table could fill up");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		assertTrue(tree.entrySet().contains(new SimpleEntry<Integer,Integer>(7, -7)));
+		assertFalse(tree.entrySet().contains(new SimpleEntry<Integer,Integer>(7, 7)));
+		assertFalse(tree.entrySet().contains(new SimpleEntry<Integer,Integer>(700, -700)));
+	}
+
+	public void test03() {
+		tree.setHashIndex(Object::hashCode);
+		for (int i=0; i < 100; ++i) tree.put(i, i);
+		for (Iterator<Entry<Integer,Integer>> it = tree.entrySet().iterator(); it.hasNext(); ) {
+			if (it.next().getKey() % 3 == 0) it.remove();
+		}
+		tree.remove(1);
+		for (int i=0; i < 100; ++i) {
+			assertEquals(i % 3 != 0 && i != 1, tree.containsKey(i));
+		}
+		tree.clear();
+		assertNull(tree.get(2));
+		tree.put(2, 2);
+		assertEquals(Integer.valueOf(2), tree.get(2));
+	}
+
+	public void test04() {
+		tree.setHashIndex(Object::hashCode);
+		TreeMap<Integer,Integer> other = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 300; ++i) other.put(i * 3, i);
+		tree.put(1, 1);
+		tree.putAll(other); // merged and rebuilt
+		for (int i=0; i < 300; ++i) assertEquals(Integer.valueOf(i), tree.get(i * 3));
+		TreeMap<Integer,Integer> snap = tree.snapshot();
+		assertFalse(snap.hasHashIndex());
+		tree.remove(3);
+		tree.put(-5, -5); // copies the nodes above the new one
+		tree.put(0, 100);
+		assertNull(tree.get(3));
+		assertEquals(Integer.valueOf(-5), tree.get(-5));
+		assertEquals(Integer.valueOf(100), tree.get(0));
+		assertEquals(Integer.valueOf(1), snap.get(3));
+		assertEquals(Integer.valueOf(0), snap.get(0));
+	}
+
+	public void test05() {
+		java.util.TreeMap<Integer,Integer> expected = new java.util.TreeMap<>();
+		// a poor hash makes long probe sequences
+		tree.setHashIndex(k -> k / 16, 0.9f);
+		Random r = new Random(25);
+		for (int i=0; i < 800; ++i) {
+			int k = r.nextInt(300);
+			if (r.nextInt(3) == 0) assertEquals(expected.remove(k), tree.remove(k));
+			else assertEquals(expected.put(k, i), tree.put(k, i));
+			k = r.nextInt(300);
+			assertEquals(expected.get(k), tree.get(k));
+		}
+		assertEquals(expected, tree);
+	}
+
+	public void test06() {
+		tree.setHashIndex(Object::hashCode, 0.5f);
+		assertEquals(16 * 8, tree.hashIndexBytes());
+		for (int i=0; i < 1000; ++i) tree.put(i, i);
+		// grown by doubling to the smallest table that holds 1000 keys at half load
+		assertEquals(2048 * 8, tree.hashIndexBytes());
+		tree.put(1000, 1000);
+		tree.put(-1, -1);
+		for (int i=-1; i <= 1000; ++i) assertEquals(Integer.valueOf(i), tree.get(i));
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.LsmTreeMap;
+
+
+public class TestLsm extends TestCase {
+
+	private LsmTreeMap<Integer,String> map;
+
+	@Override
+	protected void setUp() {
+		// compaction runs at once, when a flush makes more than two runs
+		map = new LsmTreeMap<Integer,String>(null, 4, 2, Runnable::run);
+	}
+
+	public void test00() {
+		assertEquals(0, map.size());
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+		assertNull(map.get("1"));
+		assertNull(map.remove(1));
+		assertEquals("{}", map.toString());
+		assertEquals(0, map.runCount());
+	}
+
+	public void test01() {
+		for (int i=0; i < 4; ++i) map.put(i, "a" + i);
+		assertEquals(1, map.runCount());
+		assertEquals("a2", map.put(2, "b2"));
+		assertEquals("b2", map.get(2));
+		assertEquals("a3", map.remove(3)); // tombstone hides the run's entry
+		assertNull(map.get(3));
+		assertFalse(map.containsKey(3));
+		assertEquals("{0=a0, 1=a1, 2=b2}", map.toString());
+		assertEquals(3, map.size());
+	}
+
+	public void test02() {
+		for (int i=0; i < 12; ++i) map.write(i % 5, "v" + i);
+		// three flushes, then compacted into one run
+		assertEquals(1, map.runCount());
+		assertEquals("{0=v10, 1=v11, 2=v7, 3=v8, 4=v9}", map.toString());
+		for (int i=0; i < 5; ++i) map.delete(i);
+		map.delete(100);
+		map.delete(101);
+		map.delete(102);
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.runCount()); // compaction dropped the tombstones too
+		map.write(7, "x");
+		assertEquals("{7=x}", map.toString());
+	}
+
+	public void test03() {
+		for (int i=0; i < 20; ++i) map.put(i, "v" + i);
+		Iterator<Entry<Integer,String>> it = map.entrySet().iterator();
+		for (int i=0; i < 20; ++i) map.put(i + 100, "later");
+		map.remove(5);
+		int count = 0;
+		while (it.hasNext()) {
+			Entry<Integer,String> e = it.next();
+			assertEquals("v" + count, e.getValue()); // the map as it was
+			if (count % 2 == 0) it.remove();
+			++count;
+		}
+		assertEquals(20, count);
+		assertEquals(29, map.size());
+		assertNull(map.get(0));
+		assertEquals("v1", map.get(1));
+		assertNull(map.get(5));
+		map.clear();
+		assertEquals(0, map.runCount());
+		assertEquals("{}", map.toString());
+	}
+
+	public void test04() {
+		java.util.TreeMap<Integer,String> expected = new java.util.TreeMap<>();
+		Random r = new Random(21);
+		for (int i=0; i < 500; ++i) {
+			int k = r.nextInt(60);
+			switch (r.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(k), map.remove(k));
+				break;
+			case 1:
+				expected.remove(k);
+				map.delete(k);
+				break;
+			default:
+				String v = "v" + i;
+				assertEquals(expected.put(k, v), map.put(k, v));
+			}
+			assertEquals(expected.get(k), map.get(k));
+		}
+		assertEquals(expected, map);
+		assertEquals(expected.toString(), map.toString());
+	}
+
+	public void test05() throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			LsmTreeMap<Integer,Integer> big = new LsmTreeMap<Integer,Integer>(null, 16, 3, pool);
+			for (int i=0; i < 2000; ++i) {
+				big.write(i % 700, i);
+				if (i % 100 == 0) assertEquals(Integer.valueOf(i), big.get(i % 700));
+			}
+			for (int tries=0; big.runCount() > 3 && tries < 100; ++tries) {
+				pool.submit(() -> { }).get(); // wait for queued compactions
+			}
+			assertTrue(big.runCount() <= 3);
+			assertEquals(700, big.size());
+			int expected = 0;
+			for (Entry<Integer,Integer> e : big.entrySet()) {
+				assertEquals(Integer.valueOf(expected), e.getKey());
+				assertEquals(expected + (expected < 600 ? 1400 : 700), e.getValue().intValue());
+				++expected;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	public void test06() {
+		for (int i=0; i < 12; ++i) map.write(i, "v" + i);
+		assertEquals(1, map.runCount());
+		for (int i=0; i < 8; ++i) map.delete(i);
+		// the two runs of tombstones are merged with each other, not with the older run,
+		// so the tombstones must be kept to hide its entries
+		assertEquals(2, map.runCount());
+		assertNull(map.get(0));
+		assertNull(map.get(7));
+		assertEquals("v8", map.get(8));
+		assertEquals("{8=v8, 9=v9, 10=v10, 11=v11}", map.toString());
+		assertEquals(4, map.size());
+		for (int i=0; i < 4; ++i) map.write(i + 20, "w" + i);
+		// the new run is merged with the tombstones, which are still kept
+		assertEquals(2, map.runCount());
+		assertEquals(8, map.size());
+		assertNull(map.get(0));
+	}
+}
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Codec;
+import edu.uwm.cs351.util.MappedTreeMap;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestMapped extends TestCase {
+
+	private Path file;
+	private TreeMap<Integer,Long> tree;
+	private MappedTreeMap<Integer,Long> mapped;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = Files.createTempFile("TestMapped", ".smap");
+		tree = new TreeMap<Integer,Long>();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		if (mapped != null) mapped.close();
+		Files.deleteIfExists(file);
+	}
+
+	private void open() throws IOException {
+		tree.writeTo(file, Codec.INT, Codec.LONG);
+		mapped = new MappedTreeMap<Integer,Long>(file, null, Codec.INT, Codec.LONG);
+	}
+
+	public void test00() throws IOException {
+		open();
+		assertEquals(0, mapped.size());
+		assertNull(mapped.get(3));
+		assertNull(mapped.ceilingEntry(3));
+		assertEquals("{}", mapped.toString());
+		assertEquals(20, Files.size(file));
+	}
+
+	public void test01() throws IOException {
+		for (int i=0; i < 100; ++i) tree.put(i * 3, i * 10L);
+		open();
+		assertEquals(100, mapped.size());
+		assertEquals(tree, mapped);
+		assertEquals(tree.toString(), mapped.toString());
+		assertEquals(Long.valueOf(330), mapped.get(99));
+		assertNull(mapped.get(100));
+		assertNull(mapped.get("99"));
+		assertNull(mapped.get(null));
+		assertTrue(mapped.containsKey(0));
+		assertFalse(mapped.containsKey(-1));
+		assertEquals(Integer.valueOf(0), mapped.firstKey());
+		assertEquals(Integer.valueOf(297), mapped.lastKey());
+	}
+
+	public void test02() throws IOException {
+		for (int i=0; i < 50; ++i) tree.put(i * 2, (long) i);
+		open();
+		assertEquals("10=5", mapped.ceilingEntry(9).toString());
+		assertEquals("10=5", mapped.ceilingEntry(10).toString());
+		assertEquals("12=6", mapped.higherEntry(10).toString());
+		assertEquals("8=4", mapped.floorEntry(9).toString());
+		assertEquals("8=4", mapped.lowerEntry(10).toString());
+		assertNull(mapped.lowerEntry(0));
+		assertNull(mapped.higherEntry(98));
+		assertEquals(5, mapped.rank(10));
+		assertEquals(50, mapped.rank(1000));
+		assertEquals("20=10", mapped.entryAt(10).toString());
+		try {
+			mapped.entryAt(50);
+			fail("index out of range");
+		} catch (IndexOutOfBoundsException ex) {
+			// OK
+		}
+		List<Integer> keys = new ArrayList<>();
+		mapped.forEachInRange(11, 20, (k, v) -> keys.add(k));
+		assertEquals("[12, 14, 16, 18]", keys.toString());
+	}
+
+	public void test03() throws IOException {
+		for (int i=0; i < 1000; ++i) tree.put(i, (long) -i);
+		open();
+		TreeMap<Integer,Long> live = mapped.toTreeMap();
+		assertEquals(tree, live);
+		live.put(-5, 5L);
+		live.remove(500);
+		assertEquals(1000, mapped.size());
+		assertEquals(Long.valueOf(-500), mapped.get(500));
+		assertEquals(Integer.valueOf(-5), live.firstKey());
+	}
+
+	public void test04() throws IOException, InterruptedException, ExecutionException {
+		for (int i=0; i < 1000; ++i) tree.put(i * 7, (long) i);
+		open();
+		TreeMap<Integer,Long> live = mapped.promote().get();
+		assertEquals(tree, live);
+		assertSame(tree.comparator(), live.comparator());
+		assertEquals(tree, mapped); // still usable
+	}
+
+	public void test05() throws IOException {
+		Comparator<Integer> reverse = Comparator.reverseOrder();
+		TreeMap<Integer,Long> backward = new TreeMap<Integer,Long>(reverse);
+		for (int i=0; i < 20; ++i) backward.put(i, (long) i);
+		backward.writeTo(file, Codec.INT, Codec.LONG);
+		mapped = new MappedTreeMap<Integer,Long>(file, reverse, Codec.INT, Codec.LONG);
+		assertEquals(Integer.valueOf(19), mapped.firstKey());
+		assertEquals("14=14", mapped.ceilingEntry(14).toString());
+		assertEquals(Long.valueOf(3), mapped.get(3));
+		assertEquals(backward, mapped.toTreeMap());
+		assertSame(reverse, mapped.toTreeMap().comparator());
+	}
+
+	public void test06() throws IOException {
+		tree.put(1, 1L);
+		open();
+		mapped.close();
+		assertTrue(mapped.isClosed());
+		try {
+			mapped.get(1);
+			fail("map is closed");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+		try {
+			new MappedTreeMap<Integer,Long>(file, null, Codec.INT, null);
+			fail("null codec");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		try {
+			new MappedTreeMap<Integer,Integer>(file, null, Codec.INT, Codec.INT);
+			fail("wrong value width");
+		} catch (IOException ex) {
+			// OK
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ch.write(ByteBuffer.allocate(3));
+		}
+		try {
+			new MappedTreeMap<Integer,Long>(file, null, Codec.INT, Codec.LONG);
+			fail("trailing data");
+		} catch (IOException ex) {
+			// OK
+		}
+	}
+
+	public void test07() throws IOException {
+		try {
+			tree.put(1, null);
+			tree.writeTo(file, Codec.INT, Codec.LONG);
+			fail("null values cannot be encoded");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		tree.put(1, 10L);
+		tree.put(2, 20L);
+		open();
+		for (Entry<Integer,Long> e : mapped.entrySet()) {
+			try {
+				e.setValue(0L);
+				fail("mapped entries are read-only");
+			} catch (UnsupportedOperationException ex) {
+				// OK
+			}
+		}
+		try {
+			mapped.put(3, 30L);
+			fail("mapped map is read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		assertTrue(mapped.entrySet().contains(tree.firstEntry()));
+	}
+
+	public void test08() throws IOException {
+		for (int i=0; i < 100; ++i) tree.put(i, (long)i);
+		tree.writeTo(file, Codec.INT, Codec.LONG);
+		long size = Files.size(file);
+		tree.put(50, null);
+		try {
+			tree.writeTo(file, Codec.INT, Codec.LONG);
+			fail("null values cannot be encoded");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		// the earlier file is untouched, and nothing is left beside it
+		assertEquals(size, Files.size(file));
+		assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+		mapped = new MappedTreeMap<Integer,Long>(file, null, Codec.INT, Codec.LONG);
+		assertEquals(100, mapped.size());
+		assertEquals(Long.valueOf(50), mapped.get(50));
+		assertEquals(Long.valueOf(99), mapped.get(99));
+	}
+}
@@ -0,0 +1,239 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestNavigation extends TestCase {
+
+	private TreeMap<Integer,String> tree;
+	private java.util.TreeMap<Integer,String> reference;
+	
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,String>();
+		reference = new java.util.TreeMap<Integer,String>();
+		for (int i=10; i <= 100; i += 10) {
+			tree.put(i, "v" + i);
+			reference.put(i, "v" + i);
+		}
+	}
+	
+	protected void assertSameMap(NavigableMap<Integer,String> expected, NavigableMap<Integer,String> actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.descendingMap().toString(), actual.descendingMap().toString());
+		for (int k=0; k <= 110; k += 5) {
+			assertEquals("lowerKey(" + k + ")", expected.lowerKey(k), actual.lowerKey(k));
+			assertEquals("floorKey(" + k + ")", expected.floorKey(k), actual.floorKey(k));
+			assertEquals("ceilingKey(" + k + ")", expected.ceilingKey(k), actual.ceilingKey(k));
+			assertEquals("higherKey(" + k + ")", expected.higherKey(k), actual.higherKey(k));
+			assertEquals("get(" + k + ")", expected.get(k), actual.get(k));
+		}
+	}
+	
+	
+	/// test0x: navigation on the whole map
+	
+	public void test00() {
+		TreeMap<Integer,String> empty = new TreeMap<Integer,String>();
+		assertNull(empty.firstEntry());
+		assertNull(empty.lastEntry());
+		assertNull(empty.floorKey(3));
+		assertNull(empty.pollFirstEntry());
+		try {
+			empty.firstKey();
+			fail("firstKey of empty map should throw");
+		} catch (NoSuchElementException ex) {
+			// OK
+		}
+	}
+	
+	public void test01() {
+		assertEquals(10, tree.firstKey().intValue());
+		assertEquals(100, tree.lastKey().intValue());
+		assertEquals("v10", tree.firstEntry().getValue());
+		assertEquals("v100", tree.lastEntry().getValue());
+		assertNull(tree.comparator());
+	}
+	
+	public void test02() {
+		assertSameMap(reference, tree);
+	}
+	
+	public void test03() {
+		assertEquals(reference.pollFirstEntry(), tree.pollFirstEntry());
+		assertEquals(reference.pollLastEntry(), tree.pollLastEntry());
+		assertSameMap(reference, tree);
+	}
+	
+	public void test04() {
+		try {
+			tree.ceilingEntry(40).setValue("changed");
+			fail("navigation entries should not be modifiable");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		assertEquals("v40", tree.get(40));
+	}
+	
+	
+	/// test1x: range views
+	
+	public void test10() {
+		assertSameMap(reference.subMap(20, true, 70, false), tree.subMap(20, true, 70, false));
+		assertSameMap(reference.subMap(25, false, 70, true), tree.subMap(25, false, 70, true));
+		assertSameMap(reference.headMap(45, false), tree.headMap(45, false));
+		assertSameMap(reference.tailMap(50, true), tree.tailMap(50, true));
+		assertSameMap(reference.subMap(55, true, 56, false), tree.subMap(55, true, 56, false));
+	}
+	
+	public void test11() {
+		assertSameMap(reference.descendingMap(), tree.descendingMap());
+		assertSameMap(reference.descendingMap().headMap(40, true), tree.descendingMap().headMap(40, true));
+		assertSameMap(reference.descendingMap().subMap(90, false, 20, true), tree.descendingMap().subMap(90, false, 20, true));
+		assertSameMap(reference.subMap(20, true, 80, false).descendingMap().tailMap(50, false),
+				tree.subMap(20, true, 80, false).descendingMap().tailMap(50, false));
+	}
+	
+	public void test12() {
+		NavigableMap<Integer,String> view = tree.subMap(30, true, 60, true);
+		tree.put(45, "v45");
+		tree.put(5, "v5");
+		assertEquals(5, view.size());
+		assertEquals("v45", view.get(45));
+		assertNull(view.get(5));
+		assertNull(view.remove(70));
+		assertEquals("v40", view.remove(40));
+		assertFalse(tree.containsKey(40));
+	}
+	
+	public void test13() {
+		NavigableMap<Integer,String> view = tree.headMap(50, false);
+		try {
+			view.put(50, "no");
+			fail("should not be able to put out of range");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		try {
+			view.subMap(10, 60);
+			fail("should not be able to make a wider view");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+		try {
+			tree.subMap(60, 10);
+			fail("should not be able to make an inverted view");
+		} catch (IllegalArgumentException ex) {
+			// OK
+		}
+	}
+	
+	public void test14() {
+		NavigableMap<Integer,String> view = tree.subMap(25, true, 75, false);
+		Iterator<Entry<Integer,String>> it = view.entrySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getKey() % 20 == 0) it.remove();
+		}
+		assertEquals("{30=v30, 50=v50, 70=v70}", view.toString());
+		assertEquals(8, tree.size());
+		view.clear();
+		assertEquals("{10=v10, 20=v20, 80=v80, 90=v90, 100=v100}", tree.toString());
+	}
+	
+	public void test15() {
+		Iterator<Entry<Integer,String>> it = tree.descendingMap().entrySet().iterator();
+		assertEquals(100, it.next().getKey().intValue());
+		it.remove();
+		assertEquals(90, it.next().getKey().intValue());
+		tree.put(1000, "later");
+		try {
+			it.next();
+			fail("stale iterator should throw");
+		} catch (java.util.ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+	
+	
+	/// test2x: key sets
+	
+	public void test20() {
+		NavigableSet<Integer> keys = tree.navigableKeySet();
+		assertEquals(reference.navigableKeySet().toString(), keys.toString());
+		assertEquals(reference.descendingKeySet().toString(), tree.descendingKeySet().toString());
+		assertEquals(30, keys.ceiling(25).intValue());
+		assertEquals(20, keys.lower(30).intValue());
+		assertEquals("[60, 50, 40]", keys.subSet(40, true, 60, true).descendingSet().toString());
+		assertTrue(keys.remove(50));
+		assertFalse(keys.remove(50));
+		assertFalse(tree.containsKey(50));
+		assertEquals(10, keys.pollFirst().intValue());
+		assertEquals(100, keys.pollLast().intValue());
+		assertEquals(7, tree.size());
+	}
+	
+	
+	/// test3x: order statistics
+	
+	public void test30() {
+		for (int i=0; i < 10; ++i) {
+			assertEquals((i+1)*10, tree.select(i).intValue());
+			assertEquals(i, tree.rank((i+1)*10));
+			assertEquals("v" + (i+1)*10, tree.entryAt(i).getValue());
+		}
+		assertEquals(0, tree.rank(5));
+		assertEquals(3, tree.rank(35));
+		assertEquals(10, tree.rank(500));
+	}
+	
+	public void test31() {
+		try {
+			tree.select(10);
+			fail("select past the end should throw");
+		} catch (IndexOutOfBoundsException ex) {
+			// OK
+		}
+		try {
+			tree.entryAt(-1);
+			fail("negative index should throw");
+		} catch (IndexOutOfBoundsException ex) {
+			// OK
+		}
+	}
+	
+	public void test32() {
+		assertEquals(5, tree.countInRange(30, 80));
+		assertEquals(6, tree.countInRange(25, 81));
+		assertEquals(0, tree.countInRange(41, 49));
+		assertEquals(10, tree.countInRange(0, 1000));
+		tree.remove(50);
+		tree.put(55, "v55");
+		assertEquals(5, tree.countInRange(30, 80));
+		assertEquals(5, tree.rank(60));
+		assertEquals(55, tree.select(4).intValue());
+	}
+	
+	public void test33() {
+		TreeMap<Integer,Integer> big = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 1000; ++i) {
+			big.put(i*7 % 1000, i);
+		}
+		for (int i=0; i < 1000; i += 3) {
+			big.remove(i);
+		}
+		int index = 0;
+		for (Integer k : big.keySet()) {
+			assertEquals(k, big.select(index));
+			assertEquals(index, big.rank(k));
+			++index;
+		}
+		assertEquals(big.size(), index);
+		assertEquals(big.subMap(100, true, 200, true).size(), big.countInRange(100, 201));
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Codec;
+import edu.uwm.cs351.util.OffHeapTreeMap;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestOffHeap extends TestCase {
+
+	private OffHeapTreeMap<Integer,Long> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new OffHeapTreeMap<Integer,Long>(null, Codec.INT, Codec.LONG);
+	}
+
+	@Override
+	protected void tearDown() {
+		tree.close();
+	}
+
+	public void test00() {
+		assertEquals(0, tree.size());
+		assertNull(tree.get(3));
+		assertNull(tree.get("3"));
+		assertFalse(tree.containsKey(null));
+		assertTrue(tree.offHeapBytes() > 0);
+		assertEquals("{}", tree.toString());
+	}
+
+	public void test01() {
+		assertNull(tree.put(5, 50L));
+		assertNull(tree.put(-2, -20L));
+		assertEquals(Long.valueOf(50), tree.put(5, 55L));
+		assertEquals("{-2=-20, 5=55}", tree.toString());
+		assertEquals(Integer.valueOf(-2), tree.firstKey());
+		assertEquals(Integer.valueOf(5), tree.lastKey());
+		assertEquals(Long.valueOf(-20), tree.remove(-2));
+		assertNull(tree.remove(-2));
+		assertEquals(1, tree.size());
+	}
+
+	public void test02() {
+		try {
+			tree.put(1, null);
+			fail("null values cannot be encoded");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+		try {
+			tree.put(null, 1L);
+			fail("null keys cannot be encoded");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+	}
+
+	public void test03() {
+		TreeMap<Integer,Long> ref = new TreeMap<Integer,Long>();
+		Random r = new Random(14);
+		for (int i=0; i < 2000; ++i) {
+			int k = r.nextInt(500);
+			if (r.nextInt(3) == 0) {
+				assertEquals(ref.remove(k), tree.remove(k));
+			} else {
+				assertEquals(ref.put(k, (long)i), tree.put(k, (long)i));
+			}
+		}
+		assertEquals(ref, tree);
+		assertEquals(ref.toString(), tree.toString());
+	}
+
+	public void test04() {
+		// more than one chunk of records
+		tree = new OffHeapTreeMap<Integer,Long>((a,b) -> b.compareTo(a), Codec.INT, Codec.LONG);
+		int n = 3000;
+		for (int i=0; i < n; ++i) tree.put(i, (long)i * i);
+		assertEquals(n, tree.size());
+		assertEquals(Integer.valueOf(n-1), tree.firstKey());
+		assertEquals(Long.valueOf(100L * 100), tree.get(100));
+		for (int i=0; i < n; i += 2) tree.remove(i);
+		long bytes = tree.offHeapBytes();
+		for (int i=0; i < n; i += 2) tree.put(i, 0L);
+		assertEquals(bytes, tree.offHeapBytes()); // freed slots were reused
+	}
+
+	public void test05() {
+		for (int i=0; i < 10; ++i) tree.put(i, (long)i);
+		Iterator<Entry<Integer,Long>> it = tree.entrySet().iterator();
+		Entry<Integer,Long> e = it.next();
+		e.setValue(100L);
+		assertEquals(Long.valueOf(100), tree.get(0));
+		it.remove();
+		assertEquals(Integer.valueOf(1), it.next().getKey());
+		tree.put(20, 20L);
+		try {
+			it.next();
+			fail("stale iterator should throw");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+
+	public void test06() {
+		tree.put(1, 1L);
+		tree.close();
+		assertTrue(tree.isClosed());
+		assertEquals(0, tree.offHeapBytes());
+		try {
+			tree.get(1);
+			fail("closed map should not be usable");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+	}
+
+	public void test07() {
+		for (int i=0; i < 3; ++i) tree.put(i, (long)i);
+		Iterator<Entry<Integer,Long>> it = tree.entrySet().iterator();
+		it.next();
+		tree.close();
+		try {
+			it.hasNext();
+			fail("iterator of closed map should not be usable");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+		try {
+			it.next();
+			fail("iterator of closed map should not be usable");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+		try {
+			it.remove();
+			fail("iterator of closed map should not be usable");
+		} catch (IllegalStateException ex) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.IntIntTreeMap;
+import edu.uwm.cs351.util.LongObjectTreeMap;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestPrimitive extends TestCase {
+
+	private IntIntTreeMap ints;
+	private LongObjectTreeMap<String> longs;
+
+	@Override
+	protected void setUp() {
+		ints = new IntIntTreeMap();
+		longs = new LongObjectTreeMap<String>();
+	}
+
+
+	/// test0x: IntIntTreeMap
+
+	public void test00() {
+		assertEquals(0, ints.size());
+		assertFalse(ints.containsKey(0));
+		assertEquals(0, ints.get(0));
+		assertEquals(-1, ints.getOrDefault(0, -1));
+		assertEquals("{}", ints.toString());
+	}
+
+	public void test01() {
+		assertEquals(0, ints.put(5, 50));
+		assertEquals(0, ints.put(-3, 0));
+		assertEquals(50, ints.put(5, 55));
+		assertEquals(2, ints.size());
+		assertTrue(ints.containsKey(-3));
+		assertEquals(0, ints.getOrDefault(-3, 99));
+		assertEquals(55, ints.get(5));
+		assertEquals("{-3=0, 5=55}", ints.toString());
+	}
+
+	public void test02() {
+		ints.put(Integer.MAX_VALUE, 1);
+		ints.put(Integer.MIN_VALUE, 2);
+		ints.put(0, 3);
+		assertEquals(Integer.MIN_VALUE, ints.firstKey());
+		assertEquals(Integer.MAX_VALUE, ints.lastKey());
+		assertEquals(Integer.valueOf(1), ints.get((Object)Integer.MAX_VALUE));
+		assertNull(ints.get("0"));
+		assertNull(ints.get((Object)1L));
+		assertEquals(3, ints.remove(0));
+		assertEquals(0, ints.remove(0));
+		assertEquals(2, ints.size());
+	}
+
+	public void test03() {
+		TreeMap<Integer,Integer> ref = new TreeMap<Integer,Integer>();
+		Random r = new Random(351);
+		for (int i=0; i < 1000; ++i) {
+			int k = r.nextInt(200) - 100;
+			if (r.nextInt(3) == 0) {
+				assertEquals(ref.remove(k), ints.remove((Object)k));
+			} else {
+				assertEquals(ref.put(k, i), ints.put((Integer)k, (Integer)i));
+			}
+		}
+		assertEquals(ref, ints);
+		assertEquals(ints, ref);
+		assertEquals(ref.toString(), ints.toString());
+		assertEquals(ref.hashCode(), ints.hashCode());
+	}
+
+	public void test04() {
+		for (int i=0; i < 20; ++i) ints.put(i * 3 % 20, i);
+		List<Integer> keys = new ArrayList<>();
+		ints.forEachEntry((k,v) -> keys.add(k));
+		assertEquals(new ArrayList<>(ints.keySet()), keys);
+		for (Iterator<Entry<Integer,Integer>> it = ints.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getKey() % 2 == 0) it.remove();
+		}
+		assertEquals("[1, 3, 5, 7, 9, 11, 13, 15, 17, 19]", ints.keySet().toString());
+		Entry<Integer,Integer> e = ints.entrySet().iterator().next();
+		e.setValue(100);
+		assertEquals(100, ints.get(1));
+	}
+
+	public void test05() {
+		ints.put(1, 1);
+		ints.put(2, 2);
+		Iterator<Integer> it = ints.keySet().iterator();
+		it.next();
+		ints.put(3, 3);
+		try {
+			it.next();
+			fail("stale iterator should throw");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+		try {
+			ints.forEachEntry((k,v) -> ints.remove(k));
+			fail("structural change should be detected");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+		try {
+			ints.put(null, 3);
+			fail("null key should be rejected");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+	}
+
+	public void test06() {
+		ints = new IntIntTreeMap(0);
+		for (int round=0; round < 3; ++round) {
+			for (int i=0; i < 300; ++i) ints.put(i * 7 % 300, i);
+			for (int i=0; i < 300; i += 2) ints.remove(i);
+			assertEquals(150, ints.size());
+			assertEquals(299, ints.lastKey());
+			for (int i=1; i < 300; i += 2) ints.remove(i);
+			assertTrue(ints.isEmpty());
+		}
+		ints.put(4, 40);
+		ints.clear();
+		ints.put(5, 50);
+		assertEquals("{5=50}", ints.toString());
+	}
+
+	public void test07() {
+		for (int i=0; i < 5; ++i) ints.put(i, i);
+		Iterator<Entry<Integer,Integer>> it = ints.entrySet().iterator();
+		Entry<Integer,Integer> e1 = it.next();
+		assertEquals("0=0", e1.toString());
+		Entry<Integer,Integer> e2 = it.next();
+		assertEquals("1=1", e2.toString());
+		assertEquals(Integer.valueOf(1), e1.getKey()); // entries are flyweights
+		it.remove();
+		assertEquals("2=2", it.next().toString());
+		assertEquals("{0=0, 2=2, 3=3, 4=4}", ints.toString());
+	}
+
+	/// test1x: LongObjectTreeMap
+
+	public void test10() {
+		assertNull(longs.get(0));
+		assertNull(longs.put(1L << 40, "big"));
+		assertNull(longs.put(-1, null));
+		assertEquals("big", longs.put(1L << 40, "bigger"));
+		assertTrue(longs.containsKey(-1));
+		assertTrue(longs.containsKey((Object)(-1L)));
+		assertFalse(longs.containsKey((Object)(-1)));
+		assertEquals("dflt", longs.getOrDefault(7, "dflt"));
+		assertEquals("{-1=null, 1099511627776=bigger}", longs.toString());
+	}
+
+	public void test11() {
+		longs.put(Long.MAX_VALUE, "max");
+		longs.put(Long.MIN_VALUE, "min");
+		assertEquals(Long.MIN_VALUE, longs.firstKey());
+		assertEquals(Long.MAX_VALUE, longs.lastKey());
+		assertEquals("min", longs.remove(Long.MIN_VALUE));
+		assertNull(longs.remove(Long.MIN_VALUE));
+		assertEquals(1, longs.size());
+		longs.clear();
+		assertTrue(longs.isEmpty());
+	}
+
+	public void test12() {
+		TreeMap<Long,String> ref = new TreeMap<Long,String>();
+		Random r = new Random(3510);
+		for (int i=0; i < 1000; ++i) {
+			long k = r.nextInt(200) * 1000003L;
+			if (r.nextInt(3) == 0) {
+				assertEquals(ref.remove(k), longs.remove(k));
+			} else {
+				assertEquals(ref.put(k, "v" + i), longs.put((Long)k, "v" + i));
+			}
+		}
+		assertEquals(ref, longs);
+		List<Long> keys = new ArrayList<>();
+		longs.forEachEntry((k,v) -> keys.add(k));
+		assertEquals(new ArrayList<>(ref.keySet()), keys);
+	}
+}
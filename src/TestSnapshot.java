@@ -0,0 +1,216 @@
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Monoid;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestSnapshot extends TestCase {
+
+	private TreeMap<Integer,Integer> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 20; ++i) tree.put(i, i * 10);
+	}
+
+	public void test00() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		assertTrue(s.isSnapshot());
+		assertFalse(tree.isSnapshot());
+		assertEquals(tree, s);
+		assertSame(s, tree.snapshot());
+		assertSame(s, s.snapshot());
+	}
+
+	public void test01() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		tree.put(100, 1000);
+		tree.remove(0);
+		tree.put(5, -5);
+		assertEquals(20, s.size());
+		assertEquals(Integer.valueOf(0), s.get(0));
+		assertEquals(Integer.valueOf(50), s.get(5));
+		assertNull(s.get(100));
+		assertEquals(Integer.valueOf(-5), tree.get(5));
+		assertEquals(20, tree.size());
+		assertNotSame(s, tree.snapshot());
+	}
+
+	public void test02() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		try {
+			s.put(1, 1);
+			fail("snapshot should be read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		try {
+			s.remove(1);
+			fail("snapshot should be read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		try {
+			s.clear();
+			fail("snapshot should be read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		try {
+			s.entrySet().iterator().next().setValue(3);
+			fail("snapshot entries should be read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		assertEquals(tree, s);
+	}
+
+	public void test03() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		Iterator<Integer> it = s.keySet().iterator();
+		assertEquals(Integer.valueOf(0), it.next());
+		for (int i=0; i < 20; i += 2) tree.remove(i);
+		tree.clear();
+		tree.put(-1, -1);
+		int count = 1;
+		while (it.hasNext()) {
+			assertEquals(Integer.valueOf(count), it.next());
+			++count;
+		}
+		assertEquals(20, count);
+		assertEquals("{-1=-1}", tree.toString());
+		assertEquals(Integer.valueOf(9), s.headMap(10).lastKey());
+	}
+
+	public void test04() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		Iterator<Entry<Integer,Integer>> it = tree.entrySet().iterator();
+		it.next();
+		it.remove(); // copies the nodes above it, then carries on
+		assertEquals(Integer.valueOf(1), it.next().getKey());
+		it.remove();
+		Entry<Integer,Integer> e = it.next();
+		e.setValue(-2);
+		assertEquals(Integer.valueOf(-2), tree.get(2));
+		assertEquals(18, tree.size());
+		assertEquals(20, s.size());
+		assertEquals(Integer.valueOf(20), s.get(2));
+	}
+
+	public void test05() {
+		Iterator<Integer> live = tree.keySet().iterator();
+		live.next();
+		tree.snapshot();
+		live.next(); // reading is fine while the nodes are shared
+		tree.put(50, 50);
+		try {
+			live.next();
+			fail("adding a key is a change");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+
+	public void test06() {
+		tree.setMonoid(TestUtil.SUM);
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		tree.put(3, 1000);
+		tree.remove(4);
+		assertEquals(Long.valueOf(1900), s.aggregate(TestUtil.SUM));
+		assertEquals(Long.valueOf(1900 - 30 + 1000 - 40), tree.aggregate(TestUtil.SUM));
+		assertEquals(Long.valueOf(30 + 40), s.aggregate(TestUtil.SUM, 3, 5));
+	}
+
+	public void test07() {
+		Entry<Integer,Integer> old = tree.entrySet().iterator().next();
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		tree.put(1, 11);
+		assertEquals(Integer.valueOf(0), old.setValue(5)); // still an entry of the live map
+		assertEquals(Integer.valueOf(5), old.getValue());
+		assertEquals(Integer.valueOf(0), s.get(0));
+		assertEquals(Integer.valueOf(5), tree.get(0));
+		TreeMap<Integer,Integer> s2 = tree.snapshot();
+		Iterator<Integer> it = tree.descendingKeySet().iterator();
+		it.next();
+		it.remove();
+		assertEquals(Integer.valueOf(18), it.next());
+		assertEquals(Integer.valueOf(19), s2.lastKey());
+		assertEquals(Integer.valueOf(18), tree.lastKey());
+	}
+
+	public void test08() {
+		tree.setMonoid(TestUtil.SUM);
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		for (Entry<Integer,Integer> e : tree.entrySet()) {
+			e.setValue(e.getValue() + 1); // copies the node (and those above it) first
+		}
+		assertEquals(Integer.valueOf(1), tree.get(0));
+		assertEquals(Integer.valueOf(0), s.get(0));
+		assertEquals(Long.valueOf(1900 + 20), tree.aggregate(TestUtil.SUM));
+		assertEquals(Long.valueOf(1900), s.aggregate(TestUtil.SUM));
+		Entry<Integer,Integer> first = s.firstEntry();
+		try {
+			s.entrySet().iterator().next().setValue(3);
+			fail("snapshot entries should be read-only");
+		} catch (UnsupportedOperationException ex) {
+			// OK
+		}
+		assertEquals(first, s.entrySet().iterator().next());
+	}
+
+	public void test09() {
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		Iterator<Entry<Integer,Integer>> it = s.entrySet().iterator();
+		Iterator<Integer> down = s.descendingKeySet().iterator();
+		assertEquals(Integer.valueOf(0), it.next().getKey());
+		assertEquals(Integer.valueOf(19), down.next());
+		Entry<Integer,Integer> e = tree.firstEntry();
+		tree.remove(1); // the snapshot keeps its nodes; its iterators carry on in them
+		tree.put(1, 100);
+		assertEquals(Integer.valueOf(10), it.next().getValue());
+		assertEquals(Integer.valueOf(18), down.next());
+		int count = 2;
+		while (it.hasNext()) {
+			assertEquals(Integer.valueOf(count), it.next().getKey());
+			++count;
+		}
+		assertEquals(20, count);
+		assertEquals(e, s.firstEntry());
+		TreeMap<Integer,Integer> s2 = tree.snapshot();
+		final int[] sum = new int[1];
+		s2.forEach((k, v) -> {
+			if (k == 5) tree.put(5, -5); // copies a path in the middle of the walk
+			sum[0] += v;
+		});
+		assertEquals(1900 - 10 + 100, sum[0]);
+		assertEquals(Integer.valueOf(50), s2.get(5));
+	}
+
+	public void test10() {
+		Integer[] keys = new Integer[1 << 12];
+		for (int i=0; i < keys.length; ++i) keys[i] = i;
+		TreeMap<Integer,Integer> big = TreeMap.fromSorted(null, keys, keys);
+		Set<Entry<Integer,Integer>> before = Collections.newSetFromMap(new IdentityHashMap<>());
+		before.addAll(big.entrySet());
+		TreeMap<Integer,Integer> s = big.snapshot();
+		big.put(-1, -1);
+		big.put(1 << 11, 0);
+		int made = 0;
+		for (Entry<Integer,Integer> e : big.entrySet()) {
+			if (!before.contains(e)) ++made;
+		}
+		// a new node and copies of the nodes above the two changed (at most 2 log n each), not the whole tree
+		assertTrue("made " + made + " nodes", made <= 1 + 2 * 2 * 13);
+		assertEquals(1 << 12, s.size());
+		assertEquals(Integer.valueOf(1 << 11), s.get(1 << 11));
+		assertEquals(Integer.valueOf(0), big.get(1 << 11));
+		assertNull(s.get(-1));
+	}
+}
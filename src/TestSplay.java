@@ -0,0 +1,114 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.Monoid;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestSplay extends TestCase {
+
+	private TreeMap<Integer,Integer> tree;
+
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>(null, TreeMap.Balancing.SPLAY);
+	}
+
+	public void test00() {
+		assertNull(tree.get(1));
+		assertFalse(tree.containsKey(1));
+		assertNull(tree.put(1, 10));
+		assertEquals(Integer.valueOf(10), tree.put(1, 11));
+		assertEquals(Integer.valueOf(11), tree.get(1));
+		assertNull(tree.get("1"));
+		assertEquals(Integer.valueOf(11), tree.remove(1));
+		assertEquals("{}", tree.toString());
+	}
+
+	public void test01() {
+		TestUtil.ProbeCounter counter = new TestUtil.ProbeCounter();
+		TreeMap<TestUtil.Key,Integer> counted = new TreeMap<TestUtil.Key,Integer>(counter, TreeMap.Balancing.SPLAY);
+		for (int i=0; i < 500; ++i) counted.put(new TestUtil.Key((i * 37) % 500), i);
+		counted.get(new TestUtil.Key(123));
+		counter.reset();
+		assertEquals(Integer.valueOf(179), counted.get(counter.probe(123)));
+		assertEquals(1, counter.comparisons()); // found at the root
+		counted.containsKey(new TestUtil.Key(300));
+		counter.reset();
+		assertTrue(counted.containsKey(counter.probe(300)));
+		assertEquals(1, counter.comparisons());
+		counted.put(new TestUtil.Key(1000), 0);
+		counter.reset();
+		assertEquals(Integer.valueOf(0), counted.get(counter.probe(1000)));
+		assertEquals(1, counter.comparisons());
+		assertEquals(501, counted.size());
+	}
+
+	public void test02() {
+		for (int i=0; i < 100; ++i) tree.put(i, i);
+		Iterator<Entry<Integer,Integer>> it = tree.entrySet().iterator();
+		int expected = 0;
+		while (it.hasNext()) {
+			Entry<Integer,Integer> e = it.next();
+			assertEquals(Integer.valueOf(expected), e.getKey());
+			tree.get(99 - expected); // splaying does not disturb the iterator
+			tree.containsKey(expected / 2);
+			tree.put(expected, -expected); // nor does changing a value
+			if (expected % 3 == 0) it.remove();
+			++expected;
+		}
+		assertEquals(100, expected);
+		assertEquals(66, tree.size());
+		assertEquals(Integer.valueOf(-1), tree.get(1));
+		assertNull(tree.get(3));
+		assertEquals(Integer.valueOf(1), tree.firstKey());
+		assertEquals(Integer.valueOf(98), tree.lastKey());
+	}
+
+	public void test03() {
+		tree.setMonoid(TestUtil.SUM);
+		for (int i=1; i <= 100; ++i) tree.put(i, i);
+		for (int i=1; i <= 100; i += 7) tree.get(i);
+		assertEquals(Long.valueOf(5050), tree.aggregate(TestUtil.SUM));
+		assertEquals(Long.valueOf(10 + 11 + 12), tree.aggregate(TestUtil.SUM, 10, 13));
+		assertEquals(49, tree.rank(50));
+		assertEquals(Integer.valueOf(77), tree.select(76));
+	}
+
+	public void test04() {
+		for (int i=0; i < 50; ++i) tree.put(i, i);
+		TreeMap<Integer,Integer> s = tree.snapshot();
+		Iterator<Integer> it = s.keySet().iterator();
+		for (int i=0; i < 25; ++i) it.next();
+		tree.get(3); // splaying copies the shared nodes first
+		s.get(40);
+		tree.put(60, 60); // copies first
+		tree.get(10);
+		for (int i=25; i < 50; ++i) assertEquals(Integer.valueOf(i), it.next());
+		assertFalse(it.hasNext());
+		assertEquals(51, tree.size());
+	}
+
+	public void test05() {
+		java.util.TreeMap<Integer,Integer> expected = new java.util.TreeMap<>();
+		Random r = new Random(23);
+		for (int i=0; i < 2000; ++i) {
+			// mostly a few hot keys
+			int k = r.nextInt(10) < 9 ? r.nextInt(8) : r.nextInt(300);
+			switch (r.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(k), tree.remove(k));
+				break;
+			case 1:
+				assertEquals(expected.put(k, i), tree.put(k, i));
+				break;
+			default:
+				assertEquals(expected.get(k), tree.get(k));
+			}
+		}
+		assertEquals(expected, tree);
+		assertEquals(expected.toString(), tree.descendingMap().descendingMap().toString());
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.StampedTreeMap;
+
+
+public class TestStamped extends TestCase {
+
+	private StampedTreeMap<Integer,String> map;
+
+	@Override
+	protected void setUp() {
+		map = new StampedTreeMap<Integer,String>();
+	}
+
+	public void test00() {
+		assertEquals(0, map.size());
+		assertNull(map.get(1));
+		assertNull(map.get("1"));
+		assertFalse(map.containsKey(1));
+		assertNull(map.firstEntry());
+		assertNull(map.ceilingKey(3));
+		assertEquals("{}", map.toString());
+	}
+
+	public void test01() {
+		for (int i=0; i < 10; ++i) map.put(i * 2, "v" + i);
+		assertEquals("v3", map.get(6));
+		assertEquals(Integer.valueOf(0), map.firstKey());
+		assertEquals(Integer.valueOf(18), map.lastKey());
+		assertEquals(Integer.valueOf(6), map.ceilingKey(5));
+		assertEquals(Integer.valueOf(8), map.higherKey(6));
+		assertEquals(Integer.valueOf(4), map.floorKey(5));
+		assertEquals(Integer.valueOf(4), map.lowerKey(6));
+		assertNull(map.lowerKey(0));
+		assertEquals("6=v3", map.floorEntry(6).toString());
+		try {
+			map.floorEntry(null);
+			fail("null key should be rejected");
+		} catch (NullPointerException ex) {
+			// OK
+		}
+	}
+
+	public void test02() {
+		assertNull(map.putIfAbsent(1, "a"));
+		assertEquals("a", map.putIfAbsent(1, "b"));
+		assertEquals("ab", map.merge(1, "b", String::concat));
+		assertEquals("x", map.computeIfAbsent(2, k -> "x"));
+		assertTrue(map.replace(2, "x", "y"));
+		assertEquals("y", map.get(2));
+		assertEquals("1=ab", map.pollFirstEntry().toString());
+		assertEquals(1, map.size());
+	}
+
+	public void test03() {
+		for (int i=0; i < 10; ++i) map.put(i, "v" + i);
+		Iterator<Entry<Integer,String>> it = map.entrySet().iterator();
+		map.put(100, "later"); // the entry set is a snapshot
+		int count = 0;
+		while (it.hasNext()) {
+			if (it.next().getKey() % 2 == 0) it.remove();
+			++count;
+		}
+		assertEquals(10, count);
+		assertEquals("{1=v1, 3=v3, 5=v5, 7=v7, 9=v9, 100=later}", map.toString());
+	}
+
+	public void test04() throws InterruptedException {
+		// even keys are always present; a writer keeps adding and removing odd keys
+		for (int i=0; i < 200; i += 2) map.put(i, "even");
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writer = new Thread(() -> {
+			for (int round=0; round < 20; ++round) {
+				for (int i=1; i < 200; i += 2) map.put(i, "odd");
+				for (int i=1; i < 200; i += 2) map.remove(i);
+			}
+			done.set(true);
+		});
+		Thread[] readers = new Thread[4];
+		for (int t=0; t < readers.length; ++t) {
+			readers[t] = new Thread(() -> {
+				try {
+					while (!done.get()) {
+						for (int i=0; i < 200; i += 2) {
+							if (!"even".equals(map.get(i))) throw new AssertionError("lost " + i);
+							Integer c = map.ceilingKey(i);
+							if (c == null || c != i) throw new AssertionError("ceiling of " + i + " is " + c);
+							Integer h = map.higherKey(i);
+							if (h != null && h != i + 1 && h != i + 2) throw new AssertionError("higher of " + i + " is " + h);
+						}
+					}
+				} catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			});
+		}
+		writer.start();
+		for (Thread t : readers) t.start();
+		writer.join();
+		for (Thread t : readers) t.join();
+		if (failure.get() != null) throw new AssertionError(failure.get());
+		assertEquals(100, map.size());
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+import edu.uwm.cs351.util.TreeMap;
+
+
+public class TestStreams extends TestCase {
+
+	private TreeMap<Integer,Integer> tree;
+	
+	@Override
+	protected void setUp() {
+		tree = new TreeMap<Integer,Integer>();
+		for (int i=0; i < 200; ++i) {
+			tree.put(i * 7 % 200, i);
+		}
+	}
+	
+	public void test00() {
+		Spliterator<Entry<Integer,Integer>> s = tree.entrySet().spliterator();
+		assertTrue(s.hasCharacteristics(Spliterator.ORDERED));
+		assertTrue(s.hasCharacteristics(Spliterator.SORTED));
+		assertTrue(s.hasCharacteristics(Spliterator.DISTINCT));
+		assertTrue(s.hasCharacteristics(Spliterator.SIZED));
+		assertTrue(s.hasCharacteristics(Spliterator.SUBSIZED));
+		assertEquals(200, s.getExactSizeIfKnown());
+		assertNull(tree.keySet().spliterator().getComparator());
+		assertFalse(tree.values().spliterator().hasCharacteristics(Spliterator.SORTED));
+	}
+	
+	public void test01() {
+		Spliterator<Integer> s = tree.keySet().spliterator();
+		Spliterator<Integer> prefix = s.trySplit();
+		assertEquals(100, prefix.estimateSize());
+		assertEquals(100, s.estimateSize());
+		Spliterator<Integer> quarter = prefix.trySplit();
+		List<Integer> keys = new ArrayList<>();
+		quarter.forEachRemaining(keys::add);
+		prefix.forEachRemaining(keys::add);
+		while (s.tryAdvance(keys::add)) { }
+		assertEquals(200, keys.size());
+		for (int i=0; i < 200; ++i) {
+			assertEquals(i, keys.get(i).intValue());
+		}
+	}
+	
+	public void test02() {
+		long expected = 0;
+		for (int i=0; i < 200; ++i) expected += i;
+		assertEquals(expected, tree.values().parallelStream().mapToLong(Integer::longValue).sum());
+		assertEquals(expected, tree.keySet().parallelStream().mapToLong(Integer::longValue).sum());
+		assertEquals(tree.keySet().stream().collect(Collectors.toList()),
+				tree.entrySet().parallelStream().map(Entry::getKey).collect(Collectors.toList()));
+	}
+	
+	public void test03() {
+		assertEquals(50L, tree.subMap(100, true, 150, false).entrySet().parallelStream().count());
+		assertEquals("[100, 101, 102]", tree.subMap(100, true, 103, false).keySet().stream()
+				.collect(Collectors.toList()).toString());
+		assertEquals("[102, 101, 100]", tree.subMap(100, true, 103, false).descendingKeySet().stream()
+				.collect(Collectors.toList()).toString());
+	}
+	
+	public void test04() {
+		Spliterator<Integer> s = tree.keySet().spliterator();
+		assertTrue(s.tryAdvance(k -> { }));
+		tree.remove(50);
+		try {
+			s.tryAdvance(k -> { });
+			fail("stale spliterator should throw");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+	
+	public void test05() {
+		List<Integer> keys = new ArrayList<>();
+		tree.forEach((k,v) -> keys.add(k));
+		assertEquals(new ArrayList<>(tree.keySet()), keys);
+		List<Integer> values = new ArrayList<>();
+		tree.values().forEach(values::add);
+		assertEquals(new ArrayList<>(tree.values()), values);
+		List<Entry<Integer,Integer>> entries = new ArrayList<>();
+		tree.entrySet().forEach(entries::add);
+		assertEquals(new ArrayList<>(tree.entrySet()), entries);
+	}
+	
+	public void test06() {
+		tree.replaceAll((k,v) -> k + v);
+		assertEquals(Integer.valueOf(7 + 1), tree.get(7));
+		tree.forEach((k,v) -> tree.put(k, v)); // replacing values is not structural
+		try {
+			tree.forEach((k,v) -> tree.remove(k));
+			fail("structural change should be detected");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+		assertEquals(199, tree.size());
+		try {
+			tree.values().forEach(v -> tree.put(-1, v));
+			fail("structural change should be detected");
+		} catch (ConcurrentModificationException ex) {
+			// OK
+		}
+	}
+}
@@ -1,6 +1,8 @@
 import java.util.Comparator;
 import java.util.Random;
 
+import edu.uwm.cs351.util.Monoid;
+
 
 /**
  * Things to be used by the driver / test suite.
@@ -46,5 +48,73 @@ public class TestUtil {
 		};
 	}
 	
+	
+	/**
+	 * An integer key of which every instance is a distinct object,
+	 * so that a comparator can tell the key being searched for
+	 * from the equal key already in a map.
+	 */
+	public static final class Key implements Comparable<Key> {
+		public final int value;
+		
+		public Key(int value) {
+			this.value = value;
+		}
+		
+		public int compareTo(Key k) {
+			return Integer.compare(value, k.value);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key)o).value == value;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Integer.hashCode(value);
+		}
+		
+		@Override
+		public String toString() {
+			return Integer.toString(value);
+		}
+	}
+	
+	/**
+	 * A comparator of keys that counts only the comparisons made with the
+	 * current probe, so that comparisons made while a map checks its
+	 * invariants (which only compare keys in the map) do not count.
+	 */
+	public static class ProbeCounter implements Comparator<Key> {
+		private Key probe;
+		private int comparisons;
+		
+		public int compare(Key a, Key b) {
+			if (a == probe || b == probe) ++comparisons;
+			return a.compareTo(b);
+		}
+		
+		/** Return a new key to search for, whose comparisons are counted. */
+		public Key probe(int k) {
+			return probe = new Key(k);
+		}
+		
+		public int comparisons() {
+			return comparisons;
+		}
+		
+		public void reset() {
+			comparisons = 0;
+		}
+	}
+	
+	/** Sums integer values, treating null as zero. */
+	public static final Monoid<Integer,Long> SUM = new Monoid<Integer,Long>() {
+		public Long identity() { return 0L; }
+		public Long of(Integer v) { return v == null ? 0L : v.longValue(); }
+		public Long combine(Long a, Long b) { return a + b; }
+	};
+	
 
 }
\ No newline at end of file
@@ -0,0 +1,665 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A sorted map kept in a B+ tree.
+ * Each page holds up to <em>fanout</em> keys (or children), searched by
+ * binary search, so a lookup touches far fewer pages than a binary tree
+ * touches nodes.  All entries are in the leaves, which are linked in
+ * key order, so iteration and range scans just walk along the leaves.
+ * It is ordered and iterated the same way as a {@link TreeMap}
+ * with the same comparator; iterators are fail-fast.
+ * Null keys are not allowed, but null values are.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class BTreeMap<K,V> extends AbstractMap<K,V> {
+
+	public static final int DEFAULT_FANOUT = 64;
+
+	// Every page has room for one more than the fanout, so that it can
+	// overflow briefly before it is split.
+	private static abstract class Page {
+		int n; // number of keys in a leaf, number of children in an inner page
+		final Object[] keys;
+		Page(int cap) {
+			keys = new Object[cap];
+		}
+	}
+
+	private static final class Leaf extends Page {
+		final Object[] values;
+		Leaf next; // next leaf in key order, or null
+		Leaf(int fanout) {
+			super(fanout + 1);
+			values = new Object[fanout + 1];
+		}
+	}
+
+	/**
+	 * An inner page with n children and n-1 separating keys:
+	 * keys[i] is no greater than every key under children[i+1],
+	 * and greater than every key under children[i].
+	 */
+	private static final class Inner extends Page {
+		final Page[] children;
+		Inner(int fanout) {
+			super(fanout);
+			children = new Page[fanout + 1];
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+	private final Comparator<K> comparator;
+	private final int fanout;
+	private final int min; // fewest keys or children a page other than the root may have
+	private Page root;
+	private Leaf first; // leftmost leaf
+	private int numItems = 0;
+	private int version = 0;
+	private volatile Set<Entry<K,V>> entrySet;
+
+	// path of the last descent, reused between operations
+	private Inner[] pathPages = new Inner[8];
+	private int[] pathSlots = new int[8];
+	private int depth; // length of the path recorded by descend
+	private Leaf foundLeaf; // leaf reached by the last find
+
+
+	/// Invariant checks:
+
+	private static Consumer<String> reporter = (s) -> { System.err.println("Invariant error: " + s); };
+
+	private boolean report(String error) {
+		reporter.accept(error);
+		return false;
+	}
+
+	private Leaf nextLeaf; // next leaf expected while checking
+	private int leafDepth; // depth of all leaves, or -1 if not known yet
+
+	/**
+	 * Return the number of entries under the page, or -1 if there is a problem:
+	 * a key out of order or outside the bounds (lo inclusive, hi exclusive, either may be null),
+	 * a page too full or too empty, leaves at different depths, or a leaf out of sequence.
+	 */
+	private int checkPage(Page p, int depth, Object lo, Object hi) {
+		boolean isRoot = p == root;
+		if (p.n > fanout) return -1;
+		if (p instanceof Leaf) {
+			Leaf l = (Leaf)p;
+			if (!isRoot && l.n < min) return -1;
+			if (leafDepth < 0) leafDepth = depth;
+			else if (leafDepth != depth) return -1;
+			if (l != nextLeaf) return -1;
+			nextLeaf = l.next;
+			for (int i=0; i < l.n; ++i) {
+				if (l.keys[i] == null) return -1;
+				if (i > 0 && compare(l.keys[i-1], l.keys[i]) >= 0) return -1;
+				if (lo != null && compare(lo, l.keys[i]) > 0) return -1;
+				if (hi != null && compare(l.keys[i], hi) >= 0) return -1;
+			}
+			return l.n;
+		}
+		Inner in = (Inner)p;
+		if (in.n < (isRoot ? 2 : min)) return -1;
+		int total = 0;
+		for (int i=0; i < in.n; ++i) {
+			Object clo = i == 0 ? lo : in.keys[i-1];
+			Object chi = i == in.n-1 ? hi : in.keys[i];
+			if (i > 0 && i < in.n-1 && compare(clo, chi) >= 0) return -1;
+			int c = checkPage(in.children[i], depth+1, clo, chi);
+			if (c < 0) return -1;
+			total += c;
+		}
+		return total;
+	}
+
+	private boolean wellFormed() {
+		if (comparator == null) return report("comparator is null");
+		if (root == null || first == null) return report("root or first leaf is null");
+		nextLeaf = first;
+		leafDepth = -1;
+		int count = checkPage(root, 0, null, null);
+		if (count < 0) return report("page is out of order, has the wrong occupancy or is badly linked");
+		if (nextLeaf != null) return report("leaf chain continues past the last leaf");
+		if (count != numItems) return report("numItems is " + numItems + " but there are " + count + " entries");
+		return true;
+	}
+
+
+	/// Constructors
+
+	public BTreeMap() {
+		this(null);
+	}
+
+	public BTreeMap(Comparator<K> c) {
+		this(c, DEFAULT_FANOUT);
+	}
+
+	/**
+	 * Create an empty B+ tree map.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param fanout most keys in a leaf and most children of an inner page, at least 4
+	 */
+	@SuppressWarnings("unchecked") // for comparator creation
+	public BTreeMap(Comparator<K> c, int fanout) {
+		if (fanout < 4) throw new IllegalArgumentException("fanout must be at least 4: " + fanout);
+		comparator = c == null ? (Comparator<K>) NATURAL : c;
+		this.fanout = fanout;
+		min = fanout / 2;
+		root = first = new Leaf(fanout);
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	/**
+	 * Return the comparator, or null if the natural ordering is used.
+	 * @return comparator given to the constructor
+	 */
+	public Comparator<K> comparator() {
+		return comparator == NATURAL ? null : comparator;
+	}
+
+
+	/// Searching
+
+	@SuppressWarnings("unchecked")
+	private int compare(Object a, Object b) {
+		return comparator.compare((K)a, (K)b);
+	}
+
+	/**
+	 * Binary search for a key in the first n keys of a page.
+	 * @return index of the key, or -(insertion point)-1 if it is not there
+	 */
+	private int search(Object[] keys, int n, Object k) {
+		int lo = 0, hi = n - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compare(keys[mid], k);
+			if (c < 0) lo = mid + 1;
+			else if (c > 0) hi = mid - 1;
+			else return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * Return which child of an inner page may hold the key.
+	 */
+	private int childIndex(Inner in, Object k) {
+		int i = search(in.keys, in.n - 1, k);
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+
+	/**
+	 * Descend to the leaf that may hold the key, recording the path.
+	 * @return the leaf; the path has depth entries afterwards
+	 */
+	private Leaf descend(Object k) {
+		Page p = root;
+		depth = 0;
+		while (p instanceof Inner) {
+			Inner in = (Inner)p;
+			int c = childIndex(in, k);
+			if (depth == pathPages.length) {
+				pathPages = Arrays.copyOf(pathPages, depth * 2);
+				pathSlots = Arrays.copyOf(pathSlots, depth * 2);
+			}
+			pathPages[depth] = in;
+			pathSlots[depth] = c;
+			++depth;
+			p = in.children[c];
+		}
+		return (Leaf)p;
+	}
+
+	/**
+	 * Return the leaf and position of the key, without recording a path.
+	 * @return index of the key in the leaf stored in foundLeaf, or negative if not present
+	 */
+	private int find(Object k) {
+		Page p = root;
+		while (p instanceof Inner) {
+			Inner in = (Inner)p;
+			p = in.children[childIndex(in, k)];
+		}
+		foundLeaf = (Leaf)p;
+		return search(p.keys, p.n, k);
+	}
+
+
+	/// Map operations
+
+	@Override // implementation
+	public int size() {
+		return numItems;
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		assert wellFormed() : "invariant broken in containsKey";
+		if (o == null) return false;
+		try {
+			return find(o) >= 0;
+		} catch (ClassCastException ex) {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public V get(Object o) {
+		assert wellFormed() : "invariant broken in get";
+		if (o == null) return null;
+		try {
+			int i = find(o);
+			return i >= 0 ? (V)foundLeaf.values[i] : null;
+		} catch (ClassCastException ex) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override // implementation
+	public V put(K k, V v) {
+		assert wellFormed() : "invariant broken at start of put";
+		if (k == null) throw new NullPointerException("null key");
+		Leaf leaf = descend(k);
+		int i = search(leaf.keys, leaf.n, k);
+		if (i >= 0) {
+			V old = (V)leaf.values[i];
+			leaf.values[i] = v;
+			return old;
+		}
+		i = -i - 1;
+		System.arraycopy(leaf.keys, i, leaf.keys, i+1, leaf.n - i);
+		System.arraycopy(leaf.values, i, leaf.values, i+1, leaf.n - i);
+		leaf.keys[i] = k;
+		leaf.values[i] = v;
+		++leaf.n;
+		++numItems;
+		++version;
+		if (leaf.n > fanout) splitUp(leaf);
+		assert wellFormed() : "invariant broken at end of put";
+		return null;
+	}
+
+	/**
+	 * Split an overfull page in two, and propagate the split up the recorded path.
+	 * @param p page that is overfull, at the end of the recorded path
+	 */
+	private void splitUp(Page p) {
+		Page right;
+		Object sep;
+		if (p instanceof Leaf) {
+			Leaf l = (Leaf)p;
+			Leaf r = new Leaf(fanout);
+			int h = l.n / 2;
+			r.n = l.n - h;
+			System.arraycopy(l.keys, h, r.keys, 0, r.n);
+			System.arraycopy(l.values, h, r.values, 0, r.n);
+			Arrays.fill(l.keys, h, l.n, null);
+			Arrays.fill(l.values, h, l.n, null);
+			l.n = h;
+			r.next = l.next;
+			l.next = r;
+			right = r;
+			sep = r.keys[0];
+		} else {
+			Inner in = (Inner)p;
+			Inner r = new Inner(fanout);
+			int h = in.n / 2;
+			r.n = in.n - h;
+			System.arraycopy(in.children, h, r.children, 0, r.n);
+			System.arraycopy(in.keys, h, r.keys, 0, r.n - 1);
+			sep = in.keys[h-1];
+			Arrays.fill(in.children, h, in.n, null);
+			Arrays.fill(in.keys, h-1, in.n-1, null);
+			in.n = h;
+			right = r;
+		}
+		if (depth == 0) {
+			Inner r = new Inner(fanout);
+			r.children[0] = p;
+			r.children[1] = right;
+			r.keys[0] = sep;
+			r.n = 2;
+			root = r;
+			return;
+		}
+		--depth;
+		Inner parent = pathPages[depth];
+		int c = pathSlots[depth];
+		System.arraycopy(parent.keys, c, parent.keys, c+1, parent.n - 1 - c);
+		System.arraycopy(parent.children, c+1, parent.children, c+2, parent.n - 1 - c);
+		parent.keys[c] = sep;
+		parent.children[c+1] = right;
+		++parent.n;
+		if (parent.n > fanout) splitUp(parent);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public V remove(Object o) {
+		assert wellFormed() : "invariant broken at start of remove";
+		if (o == null) return null;
+		Leaf leaf;
+		int i;
+		try {
+			leaf = descend(o);
+			i = search(leaf.keys, leaf.n, o);
+		} catch (ClassCastException ex) {
+			return null;
+		}
+		if (i < 0) return null;
+		V old = (V)leaf.values[i];
+		System.arraycopy(leaf.keys, i+1, leaf.keys, i, leaf.n - i - 1);
+		System.arraycopy(leaf.values, i+1, leaf.values, i, leaf.n - i - 1);
+		--leaf.n;
+		leaf.keys[leaf.n] = leaf.values[leaf.n] = null;
+		--numItems;
+		++version;
+		Page p = leaf;
+		while (depth > 0 && p.n < min) {
+			--depth;
+			p = pathPages[depth];
+			rebalance((Inner)p, pathSlots[depth]);
+		}
+		if (root instanceof Inner && root.n == 1) {
+			root = ((Inner)root).children[0];
+		}
+		assert wellFormed() : "invariant broken at end of remove";
+		return old;
+	}
+
+	/**
+	 * Fix a child that has too few keys or children, by moving one over
+	 * from a sibling if it has some to spare, or else merging with a sibling.
+	 * @param parent inner page
+	 * @param c index of the child that is too small
+	 */
+	private void rebalance(Inner parent, int c) {
+		if (c > 0 && parent.children[c-1].n > min) {
+			moveRight(parent, c-1);
+		} else if (c+1 < parent.n && parent.children[c+1].n > min) {
+			moveLeft(parent, c);
+		} else if (c > 0) {
+			merge(parent, c-1);
+		} else {
+			merge(parent, c);
+		}
+	}
+
+	/**
+	 * Move the last key (or child) of parent.children[j] to the front of parent.children[j+1].
+	 */
+	private void moveRight(Inner parent, int j) {
+		Page l = parent.children[j], r = parent.children[j+1];
+		if (l instanceof Leaf) {
+			Leaf ll = (Leaf)l, rl = (Leaf)r;
+			System.arraycopy(rl.keys, 0, rl.keys, 1, rl.n);
+			System.arraycopy(rl.values, 0, rl.values, 1, rl.n);
+			--ll.n;
+			rl.keys[0] = ll.keys[ll.n];
+			rl.values[0] = ll.values[ll.n];
+			ll.keys[ll.n] = ll.values[ll.n] = null;
+			++rl.n;
+			parent.keys[j] = rl.keys[0];
+		} else {
+			Inner li = (Inner)l, ri = (Inner)r;
+			System.arraycopy(ri.keys, 0, ri.keys, 1, ri.n - 1);
+			System.arraycopy(ri.children, 0, ri.children, 1, ri.n);
+			ri.keys[0] = parent.keys[j];
+			ri.children[0] = li.children[li.n-1];
+			++ri.n;
+			parent.keys[j] = li.keys[li.n-2];
+			li.keys[li.n-2] = null;
+			li.children[li.n-1] = null;
+			--li.n;
+		}
+	}
+
+	/**
+	 * Move the first key (or child) of parent.children[j+1] to the end of parent.children[j].
+	 */
+	private void moveLeft(Inner parent, int j) {
+		Page l = parent.children[j], r = parent.children[j+1];
+		if (l instanceof Leaf) {
+			Leaf ll = (Leaf)l, rl = (Leaf)r;
+			ll.keys[ll.n] = rl.keys[0];
+			ll.values[ll.n] = rl.values[0];
+			++ll.n;
+			--rl.n;
+			System.arraycopy(rl.keys, 1, rl.keys, 0, rl.n);
+			System.arraycopy(rl.values, 1, rl.values, 0, rl.n);
+			rl.keys[rl.n] = rl.values[rl.n] = null;
+			parent.keys[j] = rl.keys[0];
+		} else {
+			Inner li = (Inner)l, ri = (Inner)r;
+			li.keys[li.n-1] = parent.keys[j];
+			li.children[li.n] = ri.children[0];
+			++li.n;
+			parent.keys[j] = ri.keys[0];
+			System.arraycopy(ri.keys, 1, ri.keys, 0, ri.n - 2);
+			System.arraycopy(ri.children, 1, ri.children, 0, ri.n - 1);
+			--ri.n;
+			ri.keys[ri.n-1] = null;
+			ri.children[ri.n] = null;
+		}
+	}
+
+	/**
+	 * Merge parent.children[j+1] into parent.children[j] and drop it from the parent.
+	 */
+	private void merge(Inner parent, int j) {
+		Page l = parent.children[j], r = parent.children[j+1];
+		if (l instanceof Leaf) {
+			Leaf ll = (Leaf)l, rl = (Leaf)r;
+			System.arraycopy(rl.keys, 0, ll.keys, ll.n, rl.n);
+			System.arraycopy(rl.values, 0, ll.values, ll.n, rl.n);
+			ll.n += rl.n;
+			ll.next = rl.next;
+		} else {
+			Inner li = (Inner)l, ri = (Inner)r;
+			li.keys[li.n-1] = parent.keys[j];
+			System.arraycopy(ri.keys, 0, li.keys, li.n, ri.n - 1);
+			System.arraycopy(ri.children, 0, li.children, li.n, ri.n);
+			li.n += ri.n;
+		}
+		System.arraycopy(parent.keys, j+1, parent.keys, j, parent.n - j - 2);
+		System.arraycopy(parent.children, j+2, parent.children, j+1, parent.n - j - 2);
+		--parent.n;
+		parent.keys[parent.n-1] = null;
+		parent.children[parent.n] = null;
+	}
+
+	@Override // efficiency
+	public void clear() {
+		root = first = new Leaf(fanout);
+		numItems = 0;
+		++version;
+	}
+
+	/**
+	 * Return the smallest key.
+	 * @return smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public K firstKey() {
+		if (numItems == 0) throw new NoSuchElementException("map is empty");
+		return (K)first.keys[0];
+	}
+
+	/**
+	 * Return the largest key.
+	 * @return largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public K lastKey() {
+		if (numItems == 0) throw new NoSuchElementException("map is empty");
+		Page p = root;
+		while (p instanceof Inner) p = ((Inner)p).children[p.n-1];
+		return (K)p.keys[p.n-1];
+	}
+
+
+	/// Scans
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		if (action == null) throw new NullPointerException();
+		int expected = version;
+		for (Leaf l = first; l != null; l = l.next) {
+			for (int i=0; i < l.n; ++i) {
+				action.accept((K)l.keys[i], (V)l.values[i]);
+				if (version != expected) throw new ConcurrentModificationException("map changed during forEach");
+			}
+		}
+	}
+
+	/**
+	 * Perform the action on every entry with a key at least lo and less than hi,
+	 * in increasing key order.  Only the first leaf is searched for;
+	 * the rest are reached along the leaf links.
+	 * @param lo lowest key to include, must not be null
+	 * @param hi key to stop before, must not be null
+	 * @param action action to perform, must not be null
+	 * @throws ConcurrentModificationException if the action adds or removes keys
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+		if (lo == null || hi == null || action == null) throw new NullPointerException();
+		int expected = version;
+		int i = find(lo);
+		if (i < 0) i = -i - 1;
+		for (Leaf l = foundLeaf; l != null; l = l.next, i = 0) {
+			for (; i < l.n; ++i) {
+				if (compare(l.keys[i], hi) >= 0) return;
+				action.accept((K)l.keys[i], (V)l.values[i]);
+				if (version != expected) throw new ConcurrentModificationException("map changed during scan");
+			}
+		}
+	}
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		Set<Entry<K,V>> result = entrySet;
+		if (result == null) entrySet = result = new EntrySet();
+		return result;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+		@Override // required
+		public int size() {
+			return numItems;
+		}
+
+		@Override // required
+		public Iterator<Entry<K,V>> iterator() {
+			return new MyIterator();
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry<?,?>)) return false;
+			Entry<?,?> e = (Entry<?,?>)o;
+			return containsKey(e.getKey()) && Objects.equals(get(e.getKey()), e.getValue());
+		}
+
+		@Override // efficiency
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			BTreeMap.this.remove(((Entry<?,?>)o).getKey());
+			return true;
+		}
+
+		@Override // efficiency
+		public void clear() {
+			BTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * An entry copied out of a leaf; setting its value writes through to the map
+	 * as long as the map has not been structurally changed.
+	 */
+	private class LeafEntry extends SimpleEntry<K,V> {
+		private static final long serialVersionUID = 1L;
+		private final Leaf leaf;
+		private final int index;
+		private final int entryVersion = version;
+
+		@SuppressWarnings("unchecked")
+		LeafEntry(Leaf l, int i) {
+			super((K)l.keys[i], (V)l.values[i]);
+			leaf = l;
+			index = i;
+		}
+
+		@Override // decorate
+		public V setValue(V v) {
+			if (entryVersion != version) throw new ConcurrentModificationException("stale entry");
+			leaf.values[index] = v;
+			return super.setValue(v);
+		}
+	}
+
+	private class MyIterator implements Iterator<Entry<K,V>> {
+		private Leaf leaf = first.n == 0 ? null : first; // leaf of the next entry, or null if none
+		private int index = 0;
+		private Object current = null; // key of the last entry returned, if it can be removed
+		private int colVersion = version;
+
+		private void checkVersion() {
+			if (colVersion != version) throw new ConcurrentModificationException("stale iterator");
+		}
+
+		public boolean hasNext() {
+			checkVersion();
+			return leaf != null;
+		}
+
+		public Entry<K,V> next() {
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			Entry<K,V> result = new LeafEntry(leaf, index);
+			current = leaf.keys[index];
+			if (++index == leaf.n) {
+				leaf = leaf.next;
+				index = 0;
+			}
+			return result;
+		}
+
+		public void remove() {
+			checkVersion();
+			if (current == null) throw new IllegalStateException("nothing to remove");
+			Object following = leaf == null ? null : leaf.keys[index];
+			BTreeMap.this.remove(current);
+			current = null;
+			colVersion = version;
+			if (following != null) {
+				// pages may have been merged, so find the next key again
+				index = find(following);
+				leaf = foundLeaf;
+			}
+		}
+	}
+}
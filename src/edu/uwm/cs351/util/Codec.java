@@ -0,0 +1,53 @@
+package edu.uwm.cs351.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-width binary encoding of values, used to store keys and values
+ * outside the Java heap.  Reads and writes use absolute positions, so the
+ * buffer's position and limit are never changed.
+ * @param <T> type of values encoded
+ */
+public interface Codec<T> {
+
+	/**
+	 * Return the number of bytes every encoded value takes.
+	 * @return width of the encoding in bytes, positive
+	 */
+	int width();
+
+	/**
+	 * Write the encoding of a value.
+	 * @param buf buffer to write into, must not be null
+	 * @param offset position of the first byte to write
+	 * @param value value to encode, must not be null
+	 */
+	void write(ByteBuffer buf, int offset, T value);
+
+	/**
+	 * Read a value written by {@link #write}.
+	 * @param buf buffer to read from, must not be null
+	 * @param offset position of the first byte of the encoding
+	 * @return decoded value
+	 */
+	T read(ByteBuffer buf, int offset);
+
+
+	public static final Codec<Integer> INT = new Codec<Integer>() {
+		public int width() { return Integer.BYTES; }
+		public void write(ByteBuffer buf, int offset, Integer value) { buf.putInt(offset, value); }
+		public Integer read(ByteBuffer buf, int offset) { return buf.getInt(offset); }
+	};
+
+	public static final Codec<Long> LONG = new Codec<Long>() {
+		public int width() { return Long.BYTES; }
+		public void write(ByteBuffer buf, int offset, Long value) { buf.putLong(offset, value); }
+		public Long read(ByteBuffer buf, int offset) { return buf.getLong(offset); }
+	};
+
+	public static final Codec<Double> DOUBLE = new Codec<Double>() {
+		public int width() { return Double.BYTES; }
+		public void write(ByteBuffer buf, int offset, Double value) { buf.putDouble(offset, value); }
+		public Double read(ByteBuffer buf, int offset) { return buf.getDouble(offset); }
+	};
+}
@@ -0,0 +1,206 @@
+package edu.uwm.cs351.util;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * A counting Bloom filter over the keys of a {@link TreeMap}, which lets
+ * get and containsKey answer most lookups of absent keys without searching
+ * (see {@link TreeMap#setMissFilter}).  Each key increments k of the
+ * filter's four-bit cells, chosen from its hash; a key whose cells are
+ * not all positive is certainly absent.  Since removing a key decrements
+ * its cells, the filter stays accurate as the map changes.
+ * (A cell that reaches its maximum stays there, so that it can never
+ * wrongly become zero.)
+ * <p>
+ * The hash function must be consistent with the map's comparator:
+ * keys that compare equal must have equal hashes.
+ * The filter counts how lookups went, so that its size can be tuned:
+ * with c cells per key, about (0.6185)^c of the lookups for absent keys
+ * get past it (false positives).
+ * A filter belongs to the map it was given to, which fills it and
+ * makes it larger as the map grows.
+ * @param <K> type of keys
+ */
+public class CountingBloomFilter<K> {
+
+	public static final int DEFAULT_CELLS_PER_KEY = 10;
+	private static final int MIN_CAPACITY = 16;
+	private static final int MAX_COUNT = 15; // a cell is four bits
+
+	private final ToIntFunction<? super K> hash;
+	private final int cellsPerKey;
+	private final int hashes;
+	private int capacity;
+	private int cells;
+	private long[] data; // sixteen cells per long
+
+	private long definiteMisses, hits, falsePositives;
+
+	/**
+	 * Create a filter with the default number of cells per key.
+	 * @param hash hash function consistent with the map's comparator, must not be null
+	 */
+	public CountingBloomFilter(ToIntFunction<? super K> hash) {
+		this(hash, MIN_CAPACITY, DEFAULT_CELLS_PER_KEY);
+	}
+
+	/**
+	 * Create a filter.
+	 * @param hash hash function consistent with the map's comparator, must not be null
+	 * @param capacity number of keys to make room for at first, must not be negative
+	 * @param cellsPerKey number of cells for each key, must be positive;
+	 * more cells make false positives rarer
+	 */
+	public CountingBloomFilter(ToIntFunction<? super K> hash, int capacity, int cellsPerKey) {
+		if (hash == null) throw new NullPointerException("hash function is null");
+		if (capacity < 0) throw new IllegalArgumentException("negative capacity: " + capacity);
+		if (cellsPerKey <= 0) throw new IllegalArgumentException("cells per key must be positive: " + cellsPerKey);
+		this.hash = hash;
+		this.cellsPerKey = cellsPerKey;
+		hashes = Math.max(1, (int) Math.round(cellsPerKey * Math.log(2)));
+		resize(capacity);
+	}
+
+
+	/// Statistics
+
+	/**
+	 * Return the number of lookups the filter answered by itself,
+	 * because the key was certainly absent.
+	 * @return number of lookups that skipped the search
+	 */
+	public long definiteMisses() {
+		return definiteMisses;
+	}
+
+	/**
+	 * Return the number of lookups that got past the filter and found the key.
+	 * @return number of successful lookups
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * Return the number of lookups that got past the filter but did not find the key.
+	 * @return number of searches the filter failed to save
+	 */
+	public long falsePositives() {
+		return falsePositives;
+	}
+
+	/**
+	 * Return the fraction of lookups for absent keys that the filter let through.
+	 * @return false positives over all lookups for absent keys, or 0 if there were none
+	 */
+	public double falsePositiveRate() {
+		long misses = definiteMisses + falsePositives;
+		return misses == 0 ? 0.0 : (double) falsePositives / misses;
+	}
+
+	/**
+	 * Set all the counts of lookups back to zero.
+	 */
+	public void resetCounters() {
+		definiteMisses = hits = falsePositives = 0;
+	}
+
+	/**
+	 * Return the number of keys the filter has room for at present.
+	 * @return capacity of the filter
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Return the number of bytes the cells take.
+	 * @return size of the filter's table in bytes
+	 */
+	public long memoryBytes() {
+		return (long) data.length * Long.BYTES;
+	}
+
+
+	/// Used by TreeMap
+
+	/**
+	 * Make room for the given number of keys, forgetting all keys.
+	 */
+	void resize(int cap) {
+		capacity = Math.max(cap, MIN_CAPACITY);
+		long n = (long) capacity * cellsPerKey;
+		cells = (int) Math.min(n, (long) Integer.MAX_VALUE - 15);
+		data = new long[(cells + 15) >>> 4];
+	}
+
+	/**
+	 * Forget all keys (but not the counts of lookups).
+	 */
+	void clear() {
+		Arrays.fill(data, 0L);
+	}
+
+	void add(K k) {
+		long h1 = mix(hash.applyAsInt(k));
+		long h2 = mix(h1) | 1;
+		for (int i=0; i < hashes; ++i) {
+			int c = cell(h1 + i * h2);
+			int v = get(c);
+			if (v < MAX_COUNT) set(c, v + 1);
+		}
+	}
+
+	void remove(K k) {
+		long h1 = mix(hash.applyAsInt(k));
+		long h2 = mix(h1) | 1;
+		for (int i=0; i < hashes; ++i) {
+			int c = cell(h1 + i * h2);
+			int v = get(c);
+			if (v > 0 && v < MAX_COUNT) set(c, v - 1);
+		}
+	}
+
+	/**
+	 * Return false if the key is certainly absent, true if it may be present.
+	 */
+	boolean mightContain(K k) {
+		long h1 = mix(hash.applyAsInt(k));
+		long h2 = mix(h1) | 1;
+		for (int i=0; i < hashes; ++i) {
+			if (get(cell(h1 + i * h2)) == 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Record how a lookup went.
+	 * @param passed whether the filter let the lookup through
+	 * @param found whether the search then found the key
+	 */
+	void record(boolean passed, boolean found) {
+		if (!passed) ++definiteMisses;
+		else if (found) ++hits;
+		else ++falsePositives;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	private int cell(long h) {
+		return (int) Long.remainderUnsigned(h, cells);
+	}
+
+	private int get(int c) {
+		return (int) (data[c >>> 4] >>> ((c & 15) << 2)) & 0xF;
+	}
+
+	private void set(int c, int v) {
+		int shift = (c & 15) << 2;
+		data[c >>> 4] = data[c >>> 4] & ~(0xFL << shift) | (long) v << shift;
+	}
+}
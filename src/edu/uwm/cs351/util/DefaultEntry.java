@@ -30,16 +30,18 @@ public class DefaultEntry<K,V> implements Map.Entry<K,V> {
 		if (!(o instanceof Map.Entry))
 			return false;
 		Map.Entry<?,?> e = (Map.Entry<?,?>)o;
-		return eq(key, e.getKey()) && eq(value, e.getValue());
+		return eq(getKey(), e.getKey()) && eq(getValue(), e.getValue());
 	}
 
 	public int hashCode() {
-		return ((key   == null)   ? 0 :   key.hashCode()) ^
-			   ((value == null)   ? 0 : value.hashCode());
+		K k = getKey();
+		V v = getValue();
+		return ((k == null) ? 0 : k.hashCode()) ^
+			   ((v == null) ? 0 : v.hashCode());
 	}
 
 	public String toString() {
-		return key + "=" + value;
+		return getKey() + "=" + getValue();
 	}
 
 	private static boolean eq(Object o1, Object o2) {
@@ -0,0 +1,501 @@
+package edu.uwm.cs351.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * A sorted map whose changes are recorded in a write-ahead log, so that
+ * its contents can be recovered after a crash.  The entries are kept
+ * in a {@link TreeMap}; every put, remove and clear (including removals
+ * through iterators and setValue on entries) appends a short record
+ * (an operation byte, the key and the value, encoded by {@link Codec}s,
+ * and a CRC-32C checksum) to the log.  Creating a map over an existing log
+ * replays it, stopping at the first record that is incomplete or corrupt.
+ * <p>
+ * Each record is written to the log before the update returns, so it
+ * survives the program crashing.  Records are forced to the device in groups
+ * (group commit): a change survives the system crashing once its group fills,
+ * once a change is made at least the maximum delay after the oldest unforced one,
+ * or when {@link #commit()} or {@link #close()} is called.  So while changes
+ * keep coming, a system crash loses at most the changes of the last incomplete
+ * group and of the last delay period; a group size of one (or a delay of zero)
+ * makes every change durable before it returns.  The delay is only checked
+ * when a change is made: no thread forces the log of an idle map, so
+ * {@link #commit()} should be called after the last change of a burst.
+ * Since the log only grows,
+ * {@link #checkpoint()} should be called now and then to rewrite it with
+ * just the current entries.
+ * <p>
+ * Like {@link TreeMap}, this class is not synchronized.
+ * Null keys and values are not allowed.  If the log cannot be written,
+ * an update throws UncheckedIOException; the change has been made in memory,
+ * but may not be durable.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class DurableTreeMap<K,V> extends AbstractMap<K,V> implements AutoCloseable {
+
+	// log layout
+	private static final int MAGIC = 0x574C4F47; // "WLOG"
+	private static final int FORMAT = 2;
+	private static final int KEY_WIDTH = 8, VALUE_WIDTH = 12;
+	private static final int HEADER = 16;
+
+	// record kinds; a zero byte is a never-written tail
+	private static final byte PUT = 1, REMOVE = 2, CLEAR = 3;
+	private static final int CHECKSUM = 4; // bytes of CRC at the end of every record
+
+	public static final int DEFAULT_GROUP_SIZE = 32;
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 100;
+	private static final int READ_BATCH = 1 << 16; // bytes read at a time during replay
+
+	private final TreeMap<K,V> map;
+	private final Path log;
+	private final Codec<K> keyCodec;
+	private final Codec<V> valueCodec;
+	private final int groupSize;
+	private final long maxDelay; // in nanoseconds
+
+	private FileChannel channel; // null once closed
+	private final ByteBuffer record; // the record being written
+	private final CRC32C crc = new CRC32C();
+	private int pending = 0; // number of records written since the last force
+	private long firstPending; // System.nanoTime() when the oldest of them was written
+	private volatile Set<Entry<K,V>> entrySet;
+
+	/**
+	 * Create a durable map with the default group size and delay.
+	 * @see #DurableTreeMap(Path, Comparator, Codec, Codec, int, long)
+	 */
+	public DurableTreeMap(Path log, Comparator<K> c, Codec<K> kc, Codec<V> vc) throws IOException {
+		this(log, c, kc, vc, DEFAULT_GROUP_SIZE);
+	}
+
+	/**
+	 * Create a durable map with the default delay.
+	 * @see #DurableTreeMap(Path, Comparator, Codec, Codec, int, long)
+	 */
+	public DurableTreeMap(Path log, Comparator<K> c, Codec<K> kc, Codec<V> vc, int groupSize) throws IOException {
+		this(log, c, kc, vc, groupSize, DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	/**
+	 * Create a durable map using the given log.  If the log exists,
+	 * the map starts with the contents it records; a partial or corrupt record
+	 * (left by a crash while writing) and everything after it are discarded.
+	 * Otherwise a new log is created.
+	 * @param log file holding the log, must not be null
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param kc encoding of keys, must not be null
+	 * @param vc encoding of values, must not be null
+	 * @param groupSize number of records forced to the device together, must be positive
+	 * @param maxDelayMillis milliseconds after which a change made later forces
+	 * the group early, must not be negative
+	 * @throws IOException if the log cannot be read or created, or is not a log
+	 * written with these encodings
+	 */
+	public DurableTreeMap(Path log, Comparator<K> c, Codec<K> kc, Codec<V> vc, int groupSize, long maxDelayMillis) throws IOException {
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		if (groupSize <= 0) throw new IllegalArgumentException("group size must be positive: " + groupSize);
+		if (maxDelayMillis < 0) throw new IllegalArgumentException("maximum delay must not be negative: " + maxDelayMillis);
+		map = new TreeMap<K,V>(c);
+		this.log = log;
+		keyCodec = kc;
+		valueCodec = vc;
+		this.groupSize = groupSize;
+		maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		record = ByteBuffer.allocate(recordLength(PUT));
+		channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) writeHeader(channel);
+			else replay();
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	private int recordLength(byte op) {
+		switch (op) {
+		case PUT: return 1 + keyCodec.width() + valueCodec.width() + CHECKSUM;
+		case REMOVE: return 1 + keyCodec.width() + CHECKSUM;
+		case CLEAR: return 1 + CHECKSUM;
+		default: return -1;
+		}
+	}
+
+	/**
+	 * Encode a record, with its checksum, in a buffer.
+	 * @param buf buffer with room for the record at p
+	 * @param k key of the record, ignored for CLEAR
+	 * @param v value of the record, ignored unless PUT
+	 * @return length of the record
+	 */
+	private int encode(ByteBuffer buf, int p, byte op, K k, V v) {
+		int len = recordLength(op);
+		buf.put(p, op);
+		if (op != CLEAR) keyCodec.write(buf, p + 1, k);
+		if (op == PUT) valueCodec.write(buf, p + 1 + keyCodec.width(), v);
+		buf.putInt(p + len - CHECKSUM, checksum(buf, p, len - CHECKSUM));
+		return len;
+	}
+
+	private int checksum(ByteBuffer buf, int p, int n) {
+		crc.reset();
+		crc.update(buf.duplicate().limit(p + n).position(p));
+		return (int) crc.getValue();
+	}
+
+	private void writeHeader(FileChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(0, MAGIC);
+		header.putInt(4, FORMAT);
+		header.putInt(KEY_WIDTH, keyCodec.width());
+		header.putInt(VALUE_WIDTH, valueCodec.width());
+		while (header.hasRemaining()) ch.write(header);
+		ch.force(false);
+	}
+
+	/**
+	 * Apply every record in the log to the map, up to the first one that
+	 * is incomplete or fails its checksum, and cut off the log there.
+	 */
+	private void replay() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(Math.max(READ_BATCH, HEADER + recordLength(PUT)));
+		buf.limit(HEADER);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) throw new IOException(log + " is too short to be a log");
+		}
+		if (buf.getInt(0) != MAGIC) throw new IOException(log + " is not a log");
+		if (buf.getInt(4) != FORMAT) throw new IOException(log + " has unknown format " + buf.getInt(4));
+		if (buf.getInt(KEY_WIDTH) != keyCodec.width() || buf.getInt(VALUE_WIDTH) != valueCodec.width()) {
+			throw new IOException(log + " was written with different encodings");
+		}
+		long valid = HEADER; // end of the last complete record
+		buf.clear();
+		boolean atEnd = false;
+		while (!atEnd) {
+			atEnd = channel.read(buf) < 0;
+			buf.flip();
+			while (buf.hasRemaining()) {
+				int p = buf.position();
+				byte op = buf.get(p);
+				int len = recordLength(op);
+				if (len < 0) {
+					atEnd = true; // space allocated but never written, or garbage
+					break;
+				}
+				if (buf.remaining() < len) break;
+				if (buf.getInt(p + len - CHECKSUM) != checksum(buf, p, len - CHECKSUM)) {
+					atEnd = true; // torn or corrupt: nothing after it can be trusted
+					break;
+				}
+				apply(buf, p, op);
+				buf.position(p + len);
+				valid += len;
+			}
+			buf.compact();
+		}
+		channel.truncate(valid);
+		channel.position(valid);
+	}
+
+	private void apply(ByteBuffer buf, int p, byte op) {
+		switch (op) {
+		case PUT:
+			map.put(keyCodec.read(buf, p + 1), valueCodec.read(buf, p + 1 + keyCodec.width()));
+			break;
+		case REMOVE:
+			map.remove(keyCodec.read(buf, p + 1));
+			break;
+		case CLEAR:
+			map.clear();
+			break;
+		}
+	}
+
+
+	/// Logging
+
+	private void checkOpen() {
+		if (channel == null) throw new IllegalStateException("map is closed");
+	}
+
+	/**
+	 * Write a record to the log, and force the group if it is full
+	 * or its oldest record has waited for the maximum delay.
+	 * @param k key of the record, ignored for CLEAR
+	 * @param v value of the record, ignored unless PUT
+	 */
+	private void append(byte op, K k, V v) {
+		record.clear();
+		record.limit(encode(record, 0, op, k, v));
+		try {
+			while (record.hasRemaining()) channel.write(record);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		long now = System.nanoTime();
+		if (pending++ == 0) firstPending = now;
+		if (pending == groupSize || now - firstPending >= maxDelay) commit();
+	}
+
+	/**
+	 * Force all changes written to the log to the device.
+	 * @throws UncheckedIOException if the log cannot be forced
+	 */
+	public void commit() {
+		checkOpen();
+		if (pending == 0) return;
+		try {
+			channel.force(false);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} finally {
+			pending = 0;
+		}
+	}
+
+	/**
+	 * Return the number of changes made since the last commit,
+	 * which would be lost if the system crashed now.
+	 * @return number of records not yet forced to the device
+	 */
+	public int uncommitted() {
+		return pending;
+	}
+
+	/**
+	 * Replace the log with one that has a single record for each entry,
+	 * so that replaying it is no slower than inserting the entries.
+	 * The new log is written beside the old one, forced,
+	 * and then moved over it, so a crash leaves one or the other.
+	 * If the move fails, the map carries on logging to the old log.
+	 * @throws IOException if the new log cannot be written or moved
+	 */
+	public void checkpoint() throws IOException {
+		checkOpen();
+		commit();
+		Path tmp = log.resolveSibling(log.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writeHeader(ch);
+			ByteBuffer buf = ByteBuffer.allocate(Math.max(1, READ_BATCH / recordLength(PUT)) * recordLength(PUT));
+			for (Entry<K,V> e : map.entrySet()) {
+				if (buf.remaining() < recordLength(PUT)) {
+					buf.flip();
+					while (buf.hasRemaining()) ch.write(buf);
+					buf.clear();
+				}
+				int p = buf.position();
+				buf.position(p + encode(buf, p, PUT, e.getKey(), e.getValue()));
+			}
+			buf.flip();
+			while (buf.hasRemaining()) ch.write(buf);
+			ch.force(false);
+		}
+		channel.close();
+		channel = null;
+		try {
+			Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(tmp);
+			throw ex;
+		} finally {
+			// the new log, or the old one if the move failed
+			channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+		}
+	}
+
+	/**
+	 * Commit any remaining changes and close the log.
+	 * The map cannot be changed after this, although it may still be read.
+	 * @throws UncheckedIOException if the log cannot be written or closed
+	 */
+	@Override // required
+	public void close() {
+		if (channel == null) return;
+		try {
+			commit();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Return whether {@link #close()} has been called.
+	 * @return whether this map is closed
+	 */
+	public boolean isClosed() {
+		return channel == null;
+	}
+
+
+	/// Map operations
+
+	/**
+	 * Return the comparator, or null if the natural ordering is used.
+	 * @return comparator given to the constructor
+	 */
+	public Comparator<? super K> comparator() {
+		return map.comparator();
+	}
+
+	@Override // implementation
+	public int size() {
+		return map.size();
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		return map.containsKey(o);
+	}
+
+	@Override // efficiency
+	public V get(Object o) {
+		return map.get(o);
+	}
+
+	@Override // implementation
+	public V put(K k, V v) {
+		checkOpen();
+		if (v == null) throw new NullPointerException("null value");
+		V old = map.put(k, v);
+		append(PUT, k, v);
+		return old;
+	}
+
+	@Override // efficiency
+	public V remove(Object o) {
+		checkOpen();
+		V old = map.remove(o);
+		if (old == null) return null;
+		@SuppressWarnings("unchecked") // it was found, so it is a key
+		K k = (K)o;
+		append(REMOVE, k, null);
+		return old;
+	}
+
+	@Override // efficiency
+	public void clear() {
+		checkOpen();
+		if (map.isEmpty()) return;
+		map.clear();
+		append(CLEAR, null, null);
+	}
+
+	public K firstKey() {
+		return map.firstKey();
+	}
+
+	public K lastKey() {
+		return map.lastKey();
+	}
+
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		map.forEach(action);
+	}
+
+
+	/// Views
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		if (entrySet == null) entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+
+		@Override // required
+		public int size() {
+			return map.size();
+		}
+
+		@Override // required
+		public Iterator<Entry<K,V>> iterator() {
+			return new LoggedIterator(map.entrySet().iterator());
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			return map.entrySet().contains(o);
+		}
+
+		@Override // efficiency
+		public void clear() {
+			DurableTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * An entry of the underlying map whose changes are logged.
+	 */
+	private class LoggedEntry extends SimpleEntry<K,V> {
+		private static final long serialVersionUID = 1L;
+		private final transient Entry<K,V> entry;
+
+		LoggedEntry(Entry<K,V> e) {
+			super(e);
+			entry = e;
+		}
+
+		@Override // decorate
+		public V setValue(V v) {
+			checkOpen();
+			if (v == null) throw new NullPointerException("null value");
+			V old = entry.setValue(v);
+			append(PUT, getKey(), v);
+			super.setValue(v);
+			return old;
+		}
+	}
+
+	private class LoggedIterator implements Iterator<Entry<K,V>> {
+		private final Iterator<Entry<K,V>> it;
+		private K current = null;
+
+		LoggedIterator(Iterator<Entry<K,V>> it) {
+			this.it = it;
+		}
+
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		public Entry<K,V> next() {
+			Entry<K,V> e = it.next();
+			current = e.getKey();
+			return new LoggedEntry(e);
+		}
+
+		public void remove() {
+			checkOpen();
+			it.remove();
+			append(REMOVE, current, null);
+			current = null;
+		}
+	}
+}
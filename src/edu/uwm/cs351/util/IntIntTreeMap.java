@@ -0,0 +1,349 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A sorted map from int to int, kept in a red-black tree.
+ * It is ordered and iterated the same way as a
+ * {@link TreeMap TreeMap&lt;Integer,Integer&gt;} with the natural ordering,
+ * but keys and values are stored unboxed, and the primitive operations
+ * ({@link #get(int)}, {@link #put(int,int)}, {@link #containsKey(int)} ...)
+ * compare keys directly and allocate nothing.
+ * The boxed Map operations are still available.
+ * <p>
+ * Nodes are not objects: each node is a slot in parallel arrays
+ * (see {@link SlotTreeMap}).  Entries returned by an iterator are flyweights:
+ * the same entry object is moved along to each slot in turn, so an entry
+ * must not be kept after the iterator moves on.
+ */
+public class IntIntTreeMap extends SlotTreeMap<Integer,Integer> {
+
+	/**
+	 * Action performed on each entry by {@link IntIntTreeMap#forEachEntry}.
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(int key, int value);
+	}
+
+	// slot i holds keys[i] and values[i]
+	private int[] keys, values;
+	private volatile Set<Entry<Integer,Integer>> entrySet;
+
+
+	/// Invariant checks:
+
+	/**
+	 * Return the number of nodes in the subtree, or -1 if some node
+	 * has the wrong parent or a key outside the range lo..hi (inclusive).
+	 */
+	private int checkInRange(int r, int p, long lo, long hi) {
+		if (r == NIL) return 0;
+		if (r <= DUMMY || r >= used) return -1;
+		if (parent[r] != p || keys[r] < lo || keys[r] > hi) return -1;
+		int ln = checkInRange(left[r], r, lo, (long)keys[r] - 1);
+		if (ln < 0) return -1;
+		int rn = checkInRange(right[r], r, (long)keys[r] + 1, hi);
+		if (rn < 0) return -1;
+		return ln + rn + 1;
+	}
+
+	private boolean wellFormed() {
+		if (keys == null || keys.length != capacity() || values.length != capacity()) return report("storage is not allocated");
+		if (checkInRange(left[DUMMY], DUMMY, Integer.MIN_VALUE, Integer.MAX_VALUE) != numItems) {
+			return report("tree is out of order, has bad parents or has the wrong number of nodes");
+		}
+		return wellFormedTree();
+	}
+
+
+	/// Storage
+
+	public IntIntTreeMap() {
+		this(16);
+	}
+
+	/**
+	 * Create an empty map with room for the given number of entries
+	 * before the arrays need to grow.
+	 * @param initialCapacity number of entries to make room for, must not be negative
+	 */
+	public IntIntTreeMap(int initialCapacity) {
+		super(initialCapacity);
+		keys = new int[capacity()];
+		values = new int[capacity()];
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	@Override // required
+	void resize(int n) {
+		keys = Arrays.copyOf(keys, n);
+		values = Arrays.copyOf(values, n);
+	}
+
+
+	/// Primitive operations
+
+	private int findKey(int k) {
+		int r = left[DUMMY];
+		while (r != NIL) {
+			if (k < keys[r]) r = left[r];
+			else if (k > keys[r]) r = right[r];
+			else return r;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Return whether the key is in the map.
+	 * @param k key to look for
+	 * @return whether there is an entry for this key
+	 */
+	public boolean containsKey(int k) {
+		assert wellFormed() : "invariant broken in containsKey";
+		return findKey(k) != NIL;
+	}
+
+	/**
+	 * Return the value for a key, or 0 if the key is not in the map.
+	 * Use {@link #containsKey(int)} or {@link #getOrDefault(int,int)}
+	 * to tell a missing key from one mapped to 0.
+	 * @param k key to look for
+	 * @return value for the key, or 0 if none
+	 */
+	public int get(int k) {
+		return getOrDefault(k, 0);
+	}
+
+	/**
+	 * Return the value for a key, or the given default if the key is not in the map.
+	 * @param k key to look for
+	 * @param defaultValue value to return if there is no entry for the key
+	 * @return value for the key, or defaultValue if none
+	 */
+	public int getOrDefault(int k, int defaultValue) {
+		assert wellFormed() : "invariant broken in getOrDefault";
+		int n = findKey(k);
+		return n == NIL ? defaultValue : values[n];
+	}
+
+	/**
+	 * Map the key to the value, replacing any previous value.
+	 * @param k key to add or change
+	 * @param v new value
+	 * @return previous value for the key, or 0 if it was not in the map
+	 */
+	public int put(int k, int v) {
+		int n = findOrAdd(k, v);
+		if (n == NIL) return 0;
+		int old = values[n];
+		values[n] = v;
+		return old;
+	}
+
+	/**
+	 * Find the node for the key in a single descent, or add one
+	 * with the given value if there is none.
+	 * @param k key to find or add
+	 * @param v value for a new node
+	 * @return the existing node for the key (unchanged), or NIL if one was added
+	 */
+	private int findOrAdd(int k, int v) {
+		assert wellFormed() : "invariant broken at start of put";
+		int p = DUMMY;
+		int r = left[DUMMY];
+		boolean toLeft = true;
+		while (r != NIL) {
+			p = r;
+			if (k < keys[r]) {
+				r = left[r];
+				toLeft = true;
+			} else if (k > keys[r]) {
+				r = right[r];
+				toLeft = false;
+			} else {
+				return r;
+			}
+		}
+		int n = allocate();
+		keys[n] = k;
+		values[n] = v;
+		attach(p, toLeft, n);
+		assert wellFormed() : "invariant broken at end of put";
+		return NIL;
+	}
+
+	/**
+	 * Remove the entry for a key, if any.
+	 * @param k key to remove
+	 * @return value that the key had, or 0 if it was not in the map
+	 */
+	public int remove(int k) {
+		assert wellFormed() : "invariant broken at start of remove";
+		int n = findKey(k);
+		if (n == NIL) return 0;
+		int result = values[n];
+		removeNode(n);
+		assert wellFormed() : "invariant broken at end of remove";
+		return result;
+	}
+
+	/**
+	 * Return the smallest key.
+	 * @return smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int firstKey() {
+		if (left[DUMMY] == NIL) throw new NoSuchElementException("map is empty");
+		return keys[firstInTree(left[DUMMY])];
+	}
+
+	/**
+	 * Return the largest key.
+	 * @return largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public int lastKey() {
+		return keys[highestNode()];
+	}
+
+	/**
+	 * Perform the action on every entry in increasing key order, without boxing.
+	 * @param action action to perform, must not be null
+	 * @throws ConcurrentModificationException if the action adds or removes keys
+	 */
+	public void forEachEntry(EntryConsumer action) {
+		if (action == null) throw new NullPointerException();
+		int expected = version;
+		for (int n = lowestNode(); n != DUMMY; n = successor(n)) {
+			action.accept(keys[n], values[n]);
+			if (version != expected) throw new ConcurrentModificationException("map changed during forEachEntry");
+		}
+	}
+
+
+	/// Map operations
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		return o instanceof Integer && containsKey(((Integer)o).intValue());
+	}
+
+	@Override // efficiency
+	public Integer get(Object o) {
+		if (!(o instanceof Integer)) return null;
+		int n = findKey((Integer)o);
+		return n == NIL ? null : values[n];
+	}
+
+	@Override // implementation
+	public Integer put(Integer k, Integer v) {
+		if (k == null || v == null) throw new NullPointerException("null key or value");
+		int n = findOrAdd(k, v);
+		if (n == NIL) return null;
+		int old = values[n];
+		values[n] = v;
+		return old;
+	}
+
+	@Override // efficiency
+	public Integer remove(Object o) {
+		if (!(o instanceof Integer)) return null;
+		int n = findKey((Integer)o);
+		if (n == NIL) return null;
+		int result = values[n];
+		removeNode(n);
+		assert wellFormed() : "invariant broken at end of remove";
+		return result;
+	}
+
+	@Override // required
+	public Set<Entry<Integer,Integer>> entrySet() {
+		Set<Entry<Integer,Integer>> result = entrySet;
+		if (result == null) entrySet = result = new EntrySet();
+		return result;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<Integer,Integer>> {
+		@Override // required
+		public int size() {
+			return numItems;
+		}
+
+		@Override // required
+		public Iterator<Entry<Integer,Integer>> iterator() {
+			return new MyIterator();
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry<?,?>)) return false;
+			Entry<?,?> e = (Entry<?,?>)o;
+			if (!(e.getKey() instanceof Integer)) return false;
+			int n = findKey((Integer)e.getKey());
+			return n != NIL && Integer.valueOf(values[n]).equals(e.getValue());
+		}
+
+		@Override // efficiency
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			IntIntTreeMap.this.remove(((Integer)((Entry<?,?>)o).getKey()).intValue());
+			return true;
+		}
+
+		@Override // efficiency
+		public void clear() {
+			IntIntTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * An entry for whatever slot it is currently placed on.
+	 */
+	private class Flyweight implements Map.Entry<Integer,Integer> {
+		int slot;
+
+		public Integer getKey() {
+			return keys[slot];
+		}
+
+		public Integer getValue() {
+			return values[slot];
+		}
+
+		public Integer setValue(Integer v) {
+			int old = values[slot];
+			values[slot] = v; // throws NullPointerException if null
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+			return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+		}
+
+		public int hashCode() {
+			return Integer.hashCode(keys[slot]) ^ Integer.hashCode(values[slot]);
+		}
+
+		public String toString() {
+			return keys[slot] + "=" + values[slot];
+		}
+	}
+
+	private class MyIterator extends SlotIterator implements Iterator<Entry<Integer,Integer>> {
+		private final Flyweight entry = new Flyweight();
+
+		public Entry<Integer,Integer> next() {
+			entry.slot = nextSlot();
+			return entry;
+		}
+	}
+}
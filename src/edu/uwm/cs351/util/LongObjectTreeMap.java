@@ -0,0 +1,355 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A sorted map from long to objects, kept in a red-black tree.
+ * It is ordered and iterated the same way as a
+ * {@link TreeMap TreeMap&lt;Long,V&gt;} with the natural ordering,
+ * but keys are stored unboxed, and the primitive operations
+ * ({@link #get(long)}, {@link #put(long,Object)}, {@link #containsKey(long)} ...)
+ * compare keys directly and allocate nothing.
+ * The boxed Map operations are still available.  Values may be null.
+ * <p>
+ * Nodes are not objects: each node is a slot in parallel arrays
+ * (see {@link SlotTreeMap}).  Entries returned by an iterator are flyweights:
+ * the same entry object is moved along to each slot in turn, so an entry
+ * must not be kept after the iterator moves on.
+ * @param <V> type of values
+ */
+public class LongObjectTreeMap<V> extends SlotTreeMap<Long,V> {
+
+	/**
+	 * Action performed on each entry by {@link LongObjectTreeMap#forEachEntry}.
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer<V> {
+		void accept(long key, V value);
+	}
+
+	// slot i holds keys[i] and values[i]
+	private long[] keys;
+	private Object[] values;
+	private volatile Set<Entry<Long,V>> entrySet;
+
+
+	/// Invariant checks:
+
+	/**
+	 * Return the number of nodes in the subtree, or -1 if some node
+	 * has the wrong parent or a key outside the range lo..hi (inclusive).
+	 */
+	private int checkInRange(int r, int p, long lo, long hi) {
+		if (r == NIL) return 0;
+		if (r <= DUMMY || r >= used) return -1;
+		if (parent[r] != p || keys[r] < lo || keys[r] > hi) return -1;
+		if (keys[r] == Long.MIN_VALUE && left[r] != NIL) return -1;
+		if (keys[r] == Long.MAX_VALUE && right[r] != NIL) return -1;
+		int ln = checkInRange(left[r], r, lo, keys[r] - 1);
+		if (ln < 0) return -1;
+		int rn = checkInRange(right[r], r, keys[r] + 1, hi);
+		if (rn < 0) return -1;
+		return ln + rn + 1;
+	}
+
+	private boolean wellFormed() {
+		if (keys == null || keys.length != capacity() || values.length != capacity()) return report("storage is not allocated");
+		if (checkInRange(left[DUMMY], DUMMY, Long.MIN_VALUE, Long.MAX_VALUE) != numItems) {
+			return report("tree is out of order, has bad parents or has the wrong number of nodes");
+		}
+		return wellFormedTree();
+	}
+
+
+	/// Storage
+
+	public LongObjectTreeMap() {
+		this(16);
+	}
+
+	/**
+	 * Create an empty map with room for the given number of entries
+	 * before the arrays need to grow.
+	 * @param initialCapacity number of entries to make room for, must not be negative
+	 */
+	public LongObjectTreeMap(int initialCapacity) {
+		super(initialCapacity);
+		keys = new long[capacity()];
+		values = new Object[capacity()];
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	@Override // required
+	void resize(int n) {
+		keys = Arrays.copyOf(keys, n);
+		values = Arrays.copyOf(values, n);
+	}
+
+	@Override // decorate
+	void release(int n) {
+		values[n] = null; // so the value can be collected
+		super.release(n);
+	}
+
+
+	/// Primitive operations
+
+	private int findKey(long k) {
+		int r = left[DUMMY];
+		while (r != NIL) {
+			if (k < keys[r]) r = left[r];
+			else if (k > keys[r]) r = right[r];
+			else return r;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Return whether the key is in the map.
+	 * @param k key to look for
+	 * @return whether there is an entry for this key
+	 */
+	public boolean containsKey(long k) {
+		assert wellFormed() : "invariant broken in containsKey";
+		return findKey(k) != NIL;
+	}
+
+	/**
+	 * Return the value for a key, or null if the key is not in the map.
+	 * @param k key to look for
+	 * @return value for the key, or null if none
+	 */
+	public V get(long k) {
+		return getOrDefault(k, null);
+	}
+
+	/**
+	 * Return the value for a key, or the given default if the key is not in the map.
+	 * @param k key to look for
+	 * @param defaultValue value to return if there is no entry for the key
+	 * @return value for the key, or defaultValue if none
+	 */
+	public V getOrDefault(long k, V defaultValue) {
+		assert wellFormed() : "invariant broken in getOrDefault";
+		int n = findKey(k);
+		return n == NIL ? defaultValue : valueAt(n);
+	}
+
+	/**
+	 * Map the key to the value, replacing any previous value.
+	 * @param k key to add or change
+	 * @param v new value
+	 * @return previous value for the key, or null if it was not in the map
+	 */
+	public V put(long k, V v) {
+		assert wellFormed() : "invariant broken at start of put";
+		int p = DUMMY;
+		int r = left[DUMMY];
+		boolean toLeft = true;
+		while (r != NIL) {
+			p = r;
+			if (k < keys[r]) {
+				r = left[r];
+				toLeft = true;
+			} else if (k > keys[r]) {
+				r = right[r];
+				toLeft = false;
+			} else {
+				V old = valueAt(r);
+				values[r] = v;
+				return old;
+			}
+		}
+		int n = allocate();
+		keys[n] = k;
+		values[n] = v;
+		attach(p, toLeft, n);
+		assert wellFormed() : "invariant broken at end of put";
+		return null;
+	}
+
+	/**
+	 * Remove the entry for a key, if any.
+	 * @param k key to remove
+	 * @return value that the key had, or null if it was not in the map
+	 */
+	public V remove(long k) {
+		assert wellFormed() : "invariant broken at start of remove";
+		int n = findKey(k);
+		if (n == NIL) return null;
+		V result = valueAt(n);
+		removeNode(n);
+		assert wellFormed() : "invariant broken at end of remove";
+		return result;
+	}
+
+	/**
+	 * Return the smallest key.
+	 * @return smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public long firstKey() {
+		if (left[DUMMY] == NIL) throw new NoSuchElementException("map is empty");
+		return keys[firstInTree(left[DUMMY])];
+	}
+
+	/**
+	 * Return the largest key.
+	 * @return largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public long lastKey() {
+		return keys[highestNode()];
+	}
+
+	/**
+	 * Perform the action on every entry in increasing key order, without boxing.
+	 * @param action action to perform, must not be null
+	 * @throws ConcurrentModificationException if the action adds or removes keys
+	 */
+	public void forEachEntry(EntryConsumer<? super V> action) {
+		if (action == null) throw new NullPointerException();
+		int expected = version;
+		for (int n = lowestNode(); n != DUMMY; n = successor(n)) {
+			action.accept(keys[n], valueAt(n));
+			if (version != expected) throw new ConcurrentModificationException("map changed during forEachEntry");
+		}
+	}
+
+
+	/// Map operations
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		return o instanceof Long && containsKey(((Long)o).longValue());
+	}
+
+	@Override // efficiency
+	public V get(Object o) {
+		if (!(o instanceof Long)) return null;
+		int n = findKey((Long)o);
+		return n == NIL ? null : valueAt(n);
+	}
+
+	@Override // implementation
+	public V put(Long k, V v) {
+		if (k == null) throw new NullPointerException("null key");
+		return put(k.longValue(), v);
+	}
+
+	@Override // efficiency
+	public V remove(Object o) {
+		if (!(o instanceof Long)) return null;
+		int n = findKey((Long)o);
+		if (n == NIL) return null;
+		V result = valueAt(n);
+		removeNode(n);
+		assert wellFormed() : "invariant broken at end of remove";
+		return result;
+	}
+
+	@Override // decorate
+	public void clear() {
+		Arrays.fill(values, 1, used, null);
+		super.clear();
+	}
+
+	@Override // required
+	public Set<Entry<Long,V>> entrySet() {
+		Set<Entry<Long,V>> result = entrySet;
+		if (result == null) entrySet = result = new EntrySet();
+		return result;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<Long,V>> {
+		@Override // required
+		public int size() {
+			return numItems;
+		}
+
+		@Override // required
+		public Iterator<Entry<Long,V>> iterator() {
+			return new MyIterator();
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry<?,?>)) return false;
+			Entry<?,?> e = (Entry<?,?>)o;
+			if (!(e.getKey() instanceof Long)) return false;
+			int n = findKey((Long)e.getKey());
+			return n != NIL && Objects.equals(values[n], e.getValue());
+		}
+
+		@Override // efficiency
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			LongObjectTreeMap.this.remove(((Long)((Entry<?,?>)o).getKey()).longValue());
+			return true;
+		}
+
+		@Override // efficiency
+		public void clear() {
+			LongObjectTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * An entry for whatever slot it is currently placed on.
+	 */
+	private class Flyweight implements Map.Entry<Long,V> {
+		int slot;
+
+		public Long getKey() {
+			return keys[slot];
+		}
+
+		public V getValue() {
+			return valueAt(slot);
+		}
+
+		public V setValue(V v) {
+			V old = valueAt(slot);
+			values[slot] = v;
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+			return getKey().equals(e.getKey()) && Objects.equals(values[slot], e.getValue());
+		}
+
+		public int hashCode() {
+			return Long.hashCode(keys[slot]) ^ Objects.hashCode(values[slot]);
+		}
+
+		public String toString() {
+			return keys[slot] + "=" + values[slot];
+		}
+	}
+
+	private class MyIterator extends SlotIterator implements Iterator<Entry<Long,V>> {
+		private final Flyweight entry = new Flyweight();
+
+		public Entry<Long,V> next() {
+			entry.slot = nextSlot();
+			return entry;
+		}
+	}
+
+
+	/// Tree helpers
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int n) {
+		return (V)values[n];
+	}
+}
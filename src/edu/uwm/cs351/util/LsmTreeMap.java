@@ -0,0 +1,553 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A sorted map optimized for writing, in the style of a log-structured merge tree.
+ * Changes go into a small {@link TreeMap} (the memtable); when it fills up,
+ * its entries are moved into an immutable sorted array (a run).
+ * Removing a key writes a tombstone, which hides older entries for the key.
+ * When there are too many runs, a compactor merges the newest group of
+ * adjacent runs of similar size into one (dropping overwritten entries,
+ * and tombstones too if the oldest run is in the group) in the background,
+ * and then swaps the merged run in for the ones it merged.
+ * Since runs are only merged with runs of about their size, each entry is
+ * copied O(log n) times, rather than on every compaction.
+ * So a write only ever descends a small tree, however large the map grows.
+ * <p>
+ * A lookup tries the memtable and then the runs from newest to oldest,
+ * using binary search.  Iteration merges the memtable and the runs;
+ * an iterator sees the map as it was when the iterator was created
+ * (it takes a {@link TreeMap#snapshot()} of the memtable), so it is never
+ * disturbed by later changes or by compaction, and removing through it
+ * writes a tombstone.
+ * <p>
+ * {@link #write} and {@link #delete} change the map without looking for
+ * the old value; put and remove look it up first, as the Map interface requires.
+ * Since a key may be present in several runs, {@link #size()} counts the keys by
+ * iterating (without a snapshot), in linear time.  Null keys and values are not allowed.
+ * Like {@link TreeMap}, this class is not synchronized (the compactor
+ * synchronizes with it on its own).
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class LsmTreeMap<K,V> extends AbstractMap<K,V> {
+
+	public static final int DEFAULT_MEMTABLE_SIZE = 1024;
+	public static final int DEFAULT_MAX_RUNS = 4;
+
+	private static final Object TOMBSTONE = new Object();
+
+	@SuppressWarnings("unchecked")
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+	/**
+	 * An immutable run of entries with strictly increasing keys.
+	 * A value may be the tombstone.
+	 */
+	private static final class Run {
+		final Object[] keys;
+		final Object[] values;
+
+		Run(Object[] ks, Object[] vs) {
+			keys = ks;
+			values = vs;
+		}
+	}
+
+	private final Comparator<K> comparator;
+	private final int memtableSize;
+	private final int maxRuns;
+	private final Executor compactor;
+
+	private TreeMap<K,Object> memtable;
+	private volatile Run[] runs = new Run[0]; // newest first; replaced, never changed
+	private final Object runLock = new Object(); // guards replacing runs, and compacting
+	private boolean compacting = false;
+	private volatile Set<Entry<K,V>> entrySet;
+
+
+	/// Invariant checks:
+
+	private static Consumer<String> reporter = (s) -> { System.err.println("Invariant error: " + s); };
+
+	private boolean report(String error) {
+		reporter.accept(error);
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean wellFormed() {
+		if (memtable == null) return report("memtable is null");
+		if (memtable.size() >= memtableSize) return report("memtable should have been flushed at " + memtable.size());
+		Run[] rs = runs;
+		for (int r=0; r < rs.length; ++r) {
+			Run run = rs[r];
+			if (run == null) return report("run " + r + " is null");
+			if (run.keys.length != run.values.length) return report("run " + r + " has unmatched keys and values");
+			if (run.keys.length == 0) return report("run " + r + " is empty");
+			for (int i=0; i < run.keys.length; ++i) {
+				if (run.keys[i] == null || run.values[i] == null) return report("null in run " + r + " at " + i);
+				if (i > 0 && comparator.compare((K)run.keys[i-1], (K)run.keys[i]) >= 0) {
+					return report("run " + r + " out of order at " + i);
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/// Constructors
+
+	public LsmTreeMap() {
+		this(null);
+	}
+
+	public LsmTreeMap(Comparator<K> c) {
+		this(c, DEFAULT_MEMTABLE_SIZE, DEFAULT_MAX_RUNS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create an empty write-optimized map.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param memtableSize number of entries at which the memtable is flushed to a run, must be positive
+	 * @param maxRuns number of runs beyond which they are compacted, must be positive
+	 * @param compactor executor to run compactions on, must not be null
+	 * (an executor that runs tasks immediately makes compaction synchronous)
+	 */
+	@SuppressWarnings("unchecked") // for comparator creation
+	public LsmTreeMap(Comparator<K> c, int memtableSize, int maxRuns, Executor compactor) {
+		if (memtableSize <= 0) throw new IllegalArgumentException("memtable size must be positive: " + memtableSize);
+		if (maxRuns <= 0) throw new IllegalArgumentException("maximum runs must be positive: " + maxRuns);
+		if (compactor == null) throw new NullPointerException("compactor is null");
+		comparator = c == null ? (Comparator<K>) NATURAL : c;
+		this.memtableSize = memtableSize;
+		this.maxRuns = maxRuns;
+		this.compactor = compactor;
+		memtable = newMemtable();
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	private TreeMap<K,Object> newMemtable() {
+		return new TreeMap<K,Object>(comparator == NATURAL ? null : comparator);
+	}
+
+	/**
+	 * Return the comparator, or null if the natural ordering is used.
+	 * @return comparator given to the constructor
+	 */
+	public Comparator<? super K> comparator() {
+		return comparator == NATURAL ? null : comparator;
+	}
+
+	/**
+	 * Return the number of immutable runs currently holding entries.
+	 * @return number of runs
+	 */
+	public int runCount() {
+		return runs.length;
+	}
+
+
+	/// Lookup
+
+	/**
+	 * Return the newest value (or tombstone) for the key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object lookup(Object o) {
+		if (o == null) return null;
+		Object v = memtable.get(o);
+		if (v != null) return v;
+		K k = (K)o;
+		try {
+			for (Run run : runs) {
+				int lo = 0, hi = run.keys.length - 1;
+				while (lo <= hi) {
+					int mid = (lo + hi) >>> 1;
+					int c = comparator.compare((K)run.keys[mid], k);
+					if (c == 0) return run.values[mid];
+					if (c < 0) lo = mid + 1;
+					else hi = mid - 1;
+				}
+			}
+		} catch (ClassCastException ex) {
+			// not a key
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public V get(Object o) {
+		Object v = lookup(o);
+		return v == TOMBSTONE ? null : (V)v;
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		return get(o) != null;
+	}
+
+	/**
+	 * Return the number of entries, by iterating over them.
+	 * @return number of entries
+	 */
+	@Override // implementation
+	public int size() {
+		int count = 0;
+		for (MergeIterator it = new MergeIterator(memtable.entrySet().iterator()); it.hasNext(); it.advance()) {
+			++count;
+		}
+		return count;
+	}
+
+	@Override // efficiency
+	public boolean isEmpty() {
+		return !new MergeIterator(memtable.entrySet().iterator()).hasNext();
+	}
+
+
+	/// Updates
+
+	/**
+	 * Set the value for a key without looking up the old value.
+	 * @param k key, must not be null
+	 * @param v value, must not be null
+	 */
+	public void write(K k, V v) {
+		if (v == null) throw new NullPointerException("null value");
+		record(k, v);
+	}
+
+	/**
+	 * Remove the key (if present) without looking it up.
+	 * @param k key, must not be null
+	 */
+	public void delete(K k) {
+		record(k, TOMBSTONE);
+	}
+
+	private void record(K k, Object v) {
+		assert wellFormed() : "invariant broken at start of write";
+		memtable.put(k, v);
+		if (memtable.size() >= memtableSize) flush();
+		assert wellFormed() : "invariant broken at end of write";
+	}
+
+	@Override // implementation
+	public V put(K k, V v) {
+		if (v == null) throw new NullPointerException("null value");
+		V old = get(k);
+		record(k, v);
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public V remove(Object o) {
+		V old = get(o);
+		if (old != null) record((K)o, TOMBSTONE);
+		return old;
+	}
+
+	@Override // efficiency
+	public void clear() {
+		memtable = newMemtable();
+		synchronized (runLock) {
+			runs = new Run[0];
+		}
+		assert wellFormed() : "invariant broken in clear";
+	}
+
+	/**
+	 * Move the memtable's entries into a new run, and start a compaction
+	 * if there are now too many runs.
+	 */
+	private void flush() {
+		int n = memtable.size();
+		Object[] ks = new Object[n];
+		Object[] vs = new Object[n];
+		int[] i = { 0 };
+		memtable.forEach((k, v) -> {
+			ks[i[0]] = k;
+			vs[i[0]] = v;
+			++i[0];
+		});
+		memtable = newMemtable();
+		boolean start;
+		synchronized (runLock) {
+			Run[] old = runs;
+			Run[] rs = new Run[old.length + 1];
+			rs[0] = new Run(ks, vs);
+			System.arraycopy(old, 0, rs, 1, old.length);
+			runs = rs;
+			start = startCompaction();
+		}
+		if (start) compactor.execute(this::compact);
+	}
+
+
+	/// Compaction
+
+	/**
+	 * Return whether a compaction should start now; if so, it is marked as running.
+	 * Must be called holding runLock.
+	 */
+	private boolean startCompaction() {
+		if (compacting || runs.length <= maxRuns) return false;
+		compacting = true;
+		return true;
+	}
+
+	/**
+	 * Choose the runs to merge: the newest group of two or more adjacent runs
+	 * none of which is more than twice as long as another, or failing that,
+	 * the adjacent pair with the fewest entries between them.
+	 * Only adjacent runs may be merged, so that newer entries still hide older ones.
+	 * @param rs runs, newest first, at least two
+	 * @return the start (inclusive) and end (exclusive) of the runs to merge
+	 */
+	private static int[] chooseVictims(Run[] rs) {
+		for (int i=0; i < rs.length - 1; ++i) {
+			int min = rs[i].keys.length, max = min;
+			int j = i + 1;
+			for (; j < rs.length; ++j) {
+				int len = rs[j].keys.length;
+				if (Math.max(max, len) > 2 * Math.min(min, len)) break;
+				min = Math.min(min, len);
+				max = Math.max(max, len);
+			}
+			if (j - i >= 2) return new int[] { i, j };
+		}
+		int best = 0;
+		for (int i=1; i < rs.length - 1; ++i) {
+			if (rs[i].keys.length + rs[i+1].keys.length < rs[best].keys.length + rs[best+1].keys.length) best = i;
+		}
+		return new int[] { best, best + 2 };
+	}
+
+	/**
+	 * Merge a group of adjacent runs into one, and put it in their place.
+	 * Runs flushed meanwhile stay in front; if the map was cleared
+	 * meanwhile, the merged run is thrown away.
+	 */
+	private void compact() {
+		boolean again;
+		try {
+			Run[] seen = runs;
+			int[] range = chooseVictims(seen);
+			int from = range[0], to = range[1];
+			Run merged = merge(Arrays.copyOfRange(seen, from, to), to == seen.length);
+			synchronized (runLock) {
+				Run[] current = runs;
+				int added = current.length - seen.length;
+				boolean isSuffix = added >= 0;
+				for (int i=0; isSuffix && i < seen.length; ++i) {
+					isSuffix = current[added + i] == seen[i];
+				}
+				if (isSuffix) {
+					int removed = to - from - (merged == null ? 0 : 1);
+					Run[] rs = new Run[current.length - removed];
+					System.arraycopy(current, 0, rs, 0, added + from);
+					if (merged != null) rs[added + from] = merged;
+					System.arraycopy(current, added + to, rs, rs.length - (seen.length - to), seen.length - to);
+					runs = rs;
+				}
+			}
+		} finally {
+			synchronized (runLock) {
+				compacting = false;
+				again = startCompaction();
+			}
+		}
+		if (again) compactor.execute(this::compact);
+	}
+
+	/**
+	 * Merge adjacent runs (given newest first) into one run with the newest entry
+	 * for each key.  Tombstones must be kept unless the oldest run is included,
+	 * since they may still hide entries in older runs.
+	 * @param rs runs to merge
+	 * @param dropTombstones whether to leave tombstones out of the result
+	 * @return merged run, or null if nothing is left
+	 */
+	@SuppressWarnings("unchecked")
+	private Run merge(Run[] rs, boolean dropTombstones) {
+		int total = 0;
+		for (Run r : rs) total += r.keys.length;
+		Object[] ks = new Object[total];
+		Object[] vs = new Object[total];
+		int n = 0;
+		int[] pos = new int[rs.length];
+		for (;;) {
+			int best = -1; // newest run whose next key is least
+			for (int r=0; r < rs.length; ++r) {
+				if (pos[r] == rs[r].keys.length) continue;
+				if (best < 0 || comparator.compare((K)rs[r].keys[pos[r]], (K)rs[best].keys[pos[best]]) < 0) best = r;
+			}
+			if (best < 0) break;
+			Object k = rs[best].keys[pos[best]];
+			Object v = rs[best].values[pos[best]];
+			for (int r=0; r < rs.length; ++r) {
+				if (pos[r] < rs[r].keys.length && comparator.compare((K)rs[r].keys[pos[r]], (K)k) == 0) ++pos[r];
+			}
+			if (v == TOMBSTONE && dropTombstones) continue;
+			ks[n] = k;
+			vs[n] = v;
+			++n;
+		}
+		if (n == 0) return null;
+		if (n < total) {
+			ks = Arrays.copyOf(ks, n);
+			vs = Arrays.copyOf(vs, n);
+		}
+		return new Run(ks, vs);
+	}
+
+
+	/// Iteration
+
+	@SuppressWarnings("unchecked")
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		MergeIterator it = new MergeIterator();
+		while (it.hasNext()) {
+			it.advance();
+			action.accept((K)it.key, (V)it.value);
+		}
+	}
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		if (entrySet == null) entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+
+		@Override // required
+		public int size() {
+			return LsmTreeMap.this.size();
+		}
+
+		@Override // required
+		public Iterator<Entry<K,V>> iterator() {
+			return new MergeIterator();
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Entry<?,?> e = (Entry<?,?>) o;
+			V v = get(e.getKey());
+			return v != null && v.equals(e.getValue());
+		}
+
+		@Override // efficiency
+		public void clear() {
+			LsmTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * Merge the memtable and the runs at the time of creation,
+	 * taking the newest entry for each key and skipping tombstones.
+	 */
+	private class MergeIterator implements Iterator<Entry<K,V>> {
+		private final Iterator<Entry<K,Object>> mem;
+		private Entry<K,Object> memNext;
+		private final Run[] rs = runs;
+		private final int[] pos = new int[rs.length];
+		private Object key, value; // entry found by advance
+		private boolean ready = false; // whether the next live entry has been found
+		private Object current = null; // key to remove
+
+		/**
+		 * Iterate over a snapshot of the memtable, so that the map may change meanwhile.
+		 */
+		MergeIterator() {
+			this(memtable.snapshot().entrySet().iterator());
+		}
+
+		/**
+		 * Iterate using the given iterator over the memtable.
+		 * If it is not over a snapshot, the map must not change while this is used.
+		 */
+		MergeIterator(Iterator<Entry<K,Object>> mem) {
+			this.mem = mem;
+			memNext = mem.hasNext() ? mem.next() : null;
+		}
+
+		/**
+		 * Find the next entry, whether or not it is a tombstone.
+		 * @return whether there is one
+		 */
+		@SuppressWarnings("unchecked")
+		private boolean step() {
+			Object k = memNext == null ? null : memNext.getKey();
+			Object v = memNext == null ? null : memNext.getValue();
+			int best = -1;
+			for (int r=0; r < rs.length; ++r) {
+				if (pos[r] == rs[r].keys.length) continue;
+				Object rk = rs[r].keys[pos[r]];
+				if (k == null || comparator.compare((K)rk, (K)k) < 0) {
+					k = rk;
+					v = rs[r].values[pos[r]];
+					best = r;
+				}
+			}
+			if (k == null) return false;
+			if (memNext != null && (best < 0 || comparator.compare(memNext.getKey(), (K)k) == 0)) {
+				memNext = mem.hasNext() ? mem.next() : null;
+			}
+			for (int r=0; r < rs.length; ++r) {
+				if (pos[r] < rs[r].keys.length && comparator.compare((K)rs[r].keys[pos[r]], (K)k) == 0) ++pos[r];
+			}
+			key = k;
+			value = v;
+			return true;
+		}
+
+		public boolean hasNext() {
+			while (!ready) {
+				if (!step()) return false;
+				ready = value != TOMBSTONE;
+			}
+			return true;
+		}
+
+		/**
+		 * Move past the entry found by hasNext, leaving it in key and value.
+		 */
+		void advance() {
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			ready = false;
+			current = key;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Entry<K,V> next() {
+			advance();
+			return new SimpleImmutableEntry<K,V>((K)key, (V)value);
+		}
+
+		@SuppressWarnings("unchecked")
+		public void remove() {
+			if (current == null) throw new IllegalStateException("nothing to remove");
+			delete((K)current);
+			current = null;
+		}
+	}
+}
@@ -0,0 +1,465 @@
+package edu.uwm.cs351.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A read-only sorted map over a file written by {@link TreeMap#writeTo}.
+ * The file is a short header followed by one fixed-width record
+ * (key then value, encoded by {@link Codec}s) per entry, in increasing key order.
+ * Opening the map only reads the header and maps the file into memory,
+ * so it takes the same time however large the file is;
+ * pages are read by the operating system as lookups touch them.
+ * Lookups are binary searches and range scans read consecutive records,
+ * so no tree nodes are ever created.  Keys and values are decoded when read.
+ * <p>
+ * The map cannot be changed, but {@link #toTreeMap()} and {@link #promote}
+ * build an ordinary (mutable) {@link TreeMap} with the same entries in linear time.
+ * Since nothing changes, the map may be read by several threads at once.
+ * It should be closed when no longer needed; after that any use
+ * throws IllegalStateException.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class MappedTreeMap<K,V> extends AbstractMap<K,V> implements AutoCloseable {
+
+	// header layout
+	static final int MAGIC = 0x534D4150; // "SMAP"
+	static final int FORMAT = 1;
+	private static final int COUNT = 8, KEY_WIDTH = 12, VALUE_WIDTH = 16;
+	static final int HEADER = 20;
+
+	private static final int WRITE_BATCH = 1 << 16; // bytes buffered per write
+	private static final long REGION_LIMIT = Integer.MAX_VALUE; // largest single mapping
+
+	@SuppressWarnings("unchecked")
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+	private final Comparator<K> comparator;
+	private final Codec<K> keyCodec;
+	private final Codec<V> valueCodec;
+	private final int recordSize;
+	private final int perRegion; // records in each mapped region
+	private final int numItems;
+
+	private ByteBuffer[] regions; // null once closed
+	private volatile Set<Entry<K,V>> entrySet;
+
+
+	/// Invariant checks:
+
+	private static Consumer<String> reporter = (s) -> { System.err.println("Invariant error: " + s); };
+
+	private boolean report(String error) {
+		reporter.accept(error);
+		return false;
+	}
+
+	private boolean wellFormed() {
+		if (regions == null) return true;
+		if (numItems < 0) return report("negative count " + numItems);
+		if (perRegion <= 0) return report("region holds no records");
+		if (regions.length != regionsFor(numItems, perRegion)) return report("wrong number of regions: " + regions.length);
+		K prev = null;
+		for (int i=0; i < numItems; ++i) {
+			K k = keyAt(i);
+			if (k == null) return report("null key at " + i);
+			if (prev != null && comparator.compare(prev, k) >= 0) return report("keys out of order at " + i);
+			prev = k;
+		}
+		return true;
+	}
+
+
+	/// Writing and opening
+
+	/**
+	 * Write the entries to a file in the format read by this class.
+	 * The file is created or replaced, and forced to the device before returning.
+	 * The entries are written to a temporary file beside it, which is then
+	 * renamed over it, so if writing fails part way (for example because
+	 * the codec rejects a value) the file is left as it was.
+	 * @param file file to write, must not be null
+	 * @param n number of entries
+	 * @param entries exactly n entries in strictly increasing key order, none null
+	 * @param kc encoding of keys, must not be null
+	 * @param vc encoding of values, must not be null
+	 * @throws IOException if the file cannot be written
+	 */
+	static <K,V> void write(Path file, int n, Iterator<? extends Entry<? extends K, ? extends V>> entries,
+			Codec<? super K> kc, Codec<? super V> vc) throws IOException {
+		int record = kc.width() + vc.width();
+		ByteBuffer buf = ByteBuffer.allocate(Math.max(HEADER, Math.max(1, WRITE_BATCH / record) * record));
+		buf.putInt(0, MAGIC);
+		buf.putInt(4, FORMAT);
+		buf.putInt(COUNT, n);
+		buf.putInt(KEY_WIDTH, kc.width());
+		buf.putInt(VALUE_WIDTH, vc.width());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				buf.limit(HEADER);
+				drain(ch, buf);
+				int pos = 0;
+				for (int i=0; i < n; ++i) {
+					if (pos + record > buf.capacity()) {
+						buf.limit(pos);
+						drain(ch, buf);
+						pos = 0;
+					}
+					Entry<? extends K, ? extends V> e = entries.next();
+					kc.write(buf, pos, e.getKey());
+					vc.write(buf, pos + kc.width(), e.getValue());
+					pos += record;
+				}
+				buf.limit(pos);
+				drain(ch, buf);
+				ch.force(true);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(tmp);
+			throw ex;
+		}
+	}
+
+	private static int regionsFor(int records, int perRegion) {
+		return (int) (((long) records + perRegion - 1) / perRegion);
+	}
+
+	private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.position(0);
+		while (buf.hasRemaining()) ch.write(buf);
+		buf.clear();
+	}
+
+	/**
+	 * Open a map over a file written by {@link TreeMap#writeTo}.
+	 * Only the header is read; the records are mapped but not examined.
+	 * @param file file to open, must not be null
+	 * @param c comparator the file was written with, if null then the natural ordering of keys is used
+	 * @param kc encoding of keys the file was written with, must not be null
+	 * @param vc encoding of values the file was written with, must not be null
+	 * @throws IOException if the file cannot be read, or is not in this format
+	 * for these encodings
+	 */
+	@SuppressWarnings("unchecked") // for comparator creation
+	public MappedTreeMap(Path file, Comparator<K> c, Codec<K> kc, Codec<V> vc) throws IOException {
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		comparator = c == null ? (Comparator<K>) NATURAL : c;
+		keyCodec = kc;
+		valueCodec = vc;
+		recordSize = kc.width() + vc.width();
+		perRegion = (int) (REGION_LIMIT / recordSize);
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining()) {
+				if (ch.read(header) < 0) throw new IOException(file + " is too short to be a sorted map");
+			}
+			if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a sorted map");
+			if (header.getInt(4) != FORMAT) throw new IOException(file + " has unknown format " + header.getInt(4));
+			if (header.getInt(KEY_WIDTH) != kc.width() || header.getInt(VALUE_WIDTH) != vc.width()) {
+				throw new IOException(file + " was written with different encodings");
+			}
+			numItems = header.getInt(COUNT);
+			if (numItems < 0 || ch.size() != HEADER + (long) numItems * recordSize) {
+				throw new IOException(file + " is truncated or has trailing data");
+			}
+			regions = new ByteBuffer[regionsFor(numItems, perRegion)];
+			for (int r=0; r < regions.length; ++r) {
+				long start = HEADER + (long) r * perRegion * recordSize;
+				int records = Math.min(perRegion, numItems - r * perRegion);
+				regions[r] = ch.map(FileChannel.MapMode.READ_ONLY, start, (long) records * recordSize);
+			}
+		}
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	/**
+	 * Release the mapping.  The memory is unmapped when the buffers are
+	 * next collected; the map cannot be used after this.
+	 */
+	@Override // required
+	public void close() {
+		regions = null;
+	}
+
+	/**
+	 * Return whether {@link #close()} has been called.
+	 * @return whether this map is closed
+	 */
+	public boolean isClosed() {
+		return regions == null;
+	}
+
+	/**
+	 * Return the comparator, or null if the natural ordering is used.
+	 * @return comparator given to the constructor
+	 */
+	public Comparator<? super K> comparator() {
+		return comparator == NATURAL ? null : comparator;
+	}
+
+
+	/// Records
+
+	private void checkOpen() {
+		if (regions == null) throw new IllegalStateException("map is closed");
+	}
+
+	private ByteBuffer region(int i) {
+		ByteBuffer[] rs = regions;
+		if (rs == null) throw new IllegalStateException("map is closed");
+		return rs[i / perRegion];
+	}
+
+	private int base(int i) {
+		return (i % perRegion) * recordSize;
+	}
+
+	private K keyAt(int i) {
+		return keyCodec.read(region(i), base(i));
+	}
+
+	private V valueAt(int i) {
+		return valueCodec.read(region(i), base(i) + keyCodec.width());
+	}
+
+	private Entry<K,V> entryOrNull(int i) {
+		if (i < 0 || i >= numItems) return null;
+		return new SimpleImmutableEntry<K,V>(keyAt(i), valueAt(i));
+	}
+
+	/**
+	 * Return the index of the first record whose key is greater than
+	 * (if strict) or at least (if not) the given key.
+	 * @return index in the range [0,size()]
+	 */
+	private int search(K key, boolean strict) {
+		checkOpen();
+		if (key == null) throw new NullPointerException("key is null");
+		int lo = 0, hi = numItems;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = comparator.compare(keyAt(mid), key);
+			if (c < 0 || strict && c == 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Return the index of the record with the given key, or -1 if there is none.
+	 * Keys of the wrong type are not found.
+	 */
+	private int find(Object o) {
+		if (o == null) return -1;
+		@SuppressWarnings("unchecked")
+		K k = (K)o;
+		try {
+			int i = search(k, false);
+			if (i < numItems && comparator.compare(keyAt(i), k) == 0) return i;
+		} catch (ClassCastException ex) {
+			// not found
+		}
+		return -1;
+	}
+
+
+	/// Map operations
+
+	@Override // implementation
+	public int size() {
+		checkOpen();
+		return numItems;
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		return find(o) >= 0;
+	}
+
+	@Override // efficiency
+	public V get(Object o) {
+		int i = find(o);
+		return i < 0 ? null : valueAt(i);
+	}
+
+	public K firstKey() {
+		checkOpen();
+		if (numItems == 0) throw new NoSuchElementException("map is empty");
+		return keyAt(0);
+	}
+
+	public K lastKey() {
+		checkOpen();
+		if (numItems == 0) throw new NoSuchElementException("map is empty");
+		return keyAt(numItems - 1);
+	}
+
+	public Entry<K,V> ceilingEntry(K key) {
+		return entryOrNull(search(key, false));
+	}
+
+	public Entry<K,V> higherEntry(K key) {
+		return entryOrNull(search(key, true));
+	}
+
+	public Entry<K,V> floorEntry(K key) {
+		return entryOrNull(search(key, true) - 1);
+	}
+
+	public Entry<K,V> lowerEntry(K key) {
+		return entryOrNull(search(key, false) - 1);
+	}
+
+	/**
+	 * Return the number of keys in the map strictly less than the given key.
+	 * @param key key to look for, must not be null
+	 * @return number of keys less than this key
+	 */
+	public int rank(K key) {
+		return search(key, false);
+	}
+
+	/**
+	 * Return the entry at the given position in iteration order.
+	 * @param i index, must be in the range [0,size())
+	 * @return the entry at this index
+	 * @throws IndexOutOfBoundsException if the index is not legal
+	 */
+	public Entry<K,V> entryAt(int i) {
+		checkOpen();
+		if (i < 0 || i >= numItems) throw new IndexOutOfBoundsException("index " + i + " for size " + numItems);
+		return entryOrNull(i);
+	}
+
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		checkOpen();
+		for (int i=0; i < numItems; ++i) {
+			action.accept(keyAt(i), valueAt(i));
+		}
+	}
+
+	/**
+	 * Perform the action on every entry with a key at least lo and less than hi,
+	 * in increasing key order.  Only the first record is searched for;
+	 * the rest are read in sequence.
+	 * @param lo lowest key to include, must not be null
+	 * @param hi key to stop before, must not be null
+	 * @param action action to perform, must not be null
+	 */
+	public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+		if (hi == null) throw new NullPointerException("hi is null");
+		for (int i = search(lo, false); i < numItems; ++i) {
+			K k = keyAt(i);
+			if (comparator.compare(k, hi) >= 0) break;
+			action.accept(k, valueAt(i));
+		}
+	}
+
+
+	/// Promotion to a live map
+
+	/**
+	 * Return a new mutable map with the same ordering and entries,
+	 * built in linear time without comparing keys except to check their order.
+	 * @return new tree map with these entries
+	 */
+	public TreeMap<K,V> toTreeMap() {
+		checkOpen();
+		DefaultEntry<K,V> flyweight = new DefaultEntry<K,V>(null, null);
+		return TreeMap.fromSorted(comparator == NATURAL ? null : comparator, new Iterator<Entry<K,V>>() {
+			private int i = 0;
+			public boolean hasNext() { return i < numItems; }
+			public Entry<K,V> next() {
+				flyweight.key = keyAt(i);
+				flyweight.value = valueAt(i);
+				++i;
+				return flyweight;
+			}
+		}, numItems);
+	}
+
+	/**
+	 * Start building a mutable copy (see {@link #toTreeMap()}) in the background.
+	 * This map can still be read meanwhile, but should not be closed
+	 * until the result is ready; if it is, the result completes
+	 * with an IllegalStateException.
+	 * @param executor executor to build the copy on, must not be null
+	 * @return future result
+	 */
+	public CompletableFuture<TreeMap<K,V>> promote(Executor executor) {
+		return CompletableFuture.supplyAsync(this::toTreeMap, executor);
+	}
+
+	/**
+	 * Start building a mutable copy in the common fork-join pool.
+	 * @return future result
+	 * @see #promote(Executor)
+	 */
+	public CompletableFuture<TreeMap<K,V>> promote() {
+		return CompletableFuture.supplyAsync(this::toTreeMap);
+	}
+
+
+	/// Views
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		if (entrySet == null) entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+
+		@Override // required
+		public int size() {
+			return MappedTreeMap.this.size();
+		}
+
+		@Override // required
+		public Iterator<Entry<K,V>> iterator() {
+			checkOpen();
+			return new Iterator<Entry<K,V>>() {
+				private int next = 0;
+
+				public boolean hasNext() {
+					return next < numItems;
+				}
+
+				public Entry<K,V> next() {
+					if (!hasNext()) throw new NoSuchElementException("no more");
+					return entryOrNull(next++);
+				}
+			};
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Entry<?,?> e = (Entry<?,?>) o;
+			int i = find(e.getKey());
+			return i >= 0 && Objects.equals(valueAt(i), e.getValue());
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package edu.uwm.cs351.util;
+
+/**
+ * An associative way of summarizing values, used to maintain range aggregates
+ * (sums, minimums, maximums, ...) in a {@link TreeMap}.
+ * The combine operation must be associative and the identity must be
+ * neutral for it; combine need not be commutative, since values are
+ * always combined in key order.
+ * @param <V> type of values being summarized
+ * @param <A> type of the summary
+ */
+public interface Monoid<V,A> {
+	
+	/**
+	 * Return the summary of no values.
+	 * @return the identity of combine
+	 */
+	A identity();
+	
+	/**
+	 * Return the summary of a single value.
+	 * @param value value to summarize, may be null if the map has null values
+	 * @return summary of just this value
+	 */
+	A of(V value);
+	
+	/**
+	 * Combine two summaries, the first of which covers keys before the second.
+	 * @param a summary of earlier values
+	 * @param b summary of later values
+	 * @return summary of all the values
+	 */
+	A combine(A a, A b);
+}
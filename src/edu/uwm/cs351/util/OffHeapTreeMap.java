@@ -0,0 +1,654 @@
+package edu.uwm.cs351.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A sorted map kept in a red-black tree whose nodes live outside the Java heap.
+ * Keys and values are stored in fixed-width encodings given by {@link Codec}s,
+ * and the links are slot numbers, so the garbage collector sees only
+ * a few large direct buffers, no matter how many entries there are.
+ * It is ordered and iterated the same way as a {@link TreeMap} with the same comparator.
+ * <p>
+ * Each node is a record of three int links, a color byte, the key and the value.
+ * Records are allocated in chunks, and slots freed by removal are reused.
+ * Keys and values are decoded when read, so entries are copies
+ * (although setValue writes through to the map).
+ * Null keys and values are not allowed.
+ * <p>
+ * The map must be closed when it is no longer needed; after that any use
+ * throws IllegalStateException.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class OffHeapTreeMap<K,V> extends AbstractMap<K,V> implements AutoCloseable {
+
+	private static final int NIL = -1; // a null link
+	private static final int DUMMY = 0; // slot of the dummy node, whose left child is the root
+
+	// record layout
+	private static final int LEFT = 0, RIGHT = 4, PARENT = 8, RED = 12, KEY = 13;
+
+	private static final int CHUNK_BITS = 10; // records per chunk is 2^CHUNK_BITS
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	@SuppressWarnings("unchecked")
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+	private final Comparator<K> comparator;
+	private final Codec<K> keyCodec;
+	private final Codec<V> valueCodec;
+	private final int valueOffset, recordSize;
+
+	private ByteBuffer[] chunks; // null once closed
+	private int used = 1; // slots below this have been handed out at least once
+	private int free = NIL; // first slot on the free list, which is linked through RIGHT
+
+	private int numItems = 0;
+	private int version = 0;
+	private volatile Set<Entry<K,V>> entrySet;
+
+
+	/// Invariant checks:
+
+	private static Consumer<String> reporter = (s) -> { System.err.println("Invariant error: " + s); };
+
+	private boolean report(String error) {
+		reporter.accept(error);
+		return false;
+	}
+
+	/**
+	 * Return the number of nodes in the subtree, or -1 if some node has
+	 * the wrong parent or a key not strictly between the bounds.
+	 * @param lo slot whose key all keys must be greater than, or NIL if none
+	 * @param hi slot whose key all keys must be less than, or NIL if none
+	 */
+	private int checkInRange(int r, int p, int lo, int hi) {
+		if (r == NIL) return 0;
+		if (r <= DUMMY || r >= used || parent(r) != p) return -1;
+		K k = keyAt(r);
+		if (lo != NIL && comparator.compare(keyAt(lo), k) >= 0) return -1;
+		if (hi != NIL && comparator.compare(k, keyAt(hi)) >= 0) return -1;
+		int ln = checkInRange(left(r), r, lo, r);
+		if (ln < 0) return -1;
+		int rn = checkInRange(right(r), r, r, hi);
+		if (rn < 0) return -1;
+		return ln + rn + 1;
+	}
+
+	private int checkBlackHeight(int r) {
+		if (r == NIL) return 0;
+		if (isRed(r) && (isRed(left(r)) || isRed(right(r)))) return -1;
+		int lh = checkBlackHeight(left(r));
+		if (lh < 0) return -1;
+		int rh = checkBlackHeight(right(r));
+		if (rh != lh) return -1;
+		return isRed(r) ? lh : lh + 1;
+	}
+
+	private boolean wellFormed() {
+		if (chunks == null) return true; // nothing to check once closed
+		if (right(DUMMY) != NIL || parent(DUMMY) != NIL) return report("dummy is not correct");
+		if (checkInRange(left(DUMMY), DUMMY, NIL, NIL) != numItems) {
+			return report("tree is out of order, has bad parents or has the wrong number of nodes");
+		}
+		if (isRed(left(DUMMY))) return report("root is red");
+		if (checkBlackHeight(left(DUMMY)) < 0) return report("red-black properties violated");
+		int freed = 0;
+		for (int i = free; i != NIL; i = right(i)) {
+			if (i <= DUMMY || i >= used || ++freed > used) return report("free list is corrupt");
+		}
+		if (1 + numItems + freed != used) return report("slots are lost: " + used + " used, " + freed + " free");
+		return true;
+	}
+
+
+	/// Storage
+
+	/**
+	 * Create an empty off-heap map.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param kc encoding of keys, must not be null
+	 * @param vc encoding of values, must not be null
+	 */
+	@SuppressWarnings("unchecked") // for comparator creation
+	public OffHeapTreeMap(Comparator<K> c, Codec<K> kc, Codec<V> vc) {
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		comparator = c == null ? (Comparator<K>) NATURAL : c;
+		keyCodec = kc;
+		valueCodec = vc;
+		valueOffset = KEY + kc.width();
+		recordSize = valueOffset + vc.width();
+		chunks = new ByteBuffer[1];
+		chunks[0] = newChunk();
+		setLeft(DUMMY, NIL);
+		setRight(DUMMY, NIL);
+		setParent(DUMMY, NIL);
+		setRed(DUMMY, false);
+		assert wellFormed() : "invariant broken after constructor";
+	}
+
+	private ByteBuffer newChunk() {
+		return ByteBuffer.allocateDirect(recordSize << CHUNK_BITS).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Release the storage of this map.  The memory is returned to the system
+	 * when the buffers are next collected; the map cannot be used after this.
+	 */
+	@Override // required
+	public void close() {
+		chunks = null;
+		numItems = 0;
+		++version;
+	}
+
+	/**
+	 * Return whether {@link #close()} has been called.
+	 * @return whether this map is closed
+	 */
+	public boolean isClosed() {
+		return chunks == null;
+	}
+
+	/**
+	 * Return the number of bytes of off-heap memory this map holds.
+	 * @return bytes allocated outside the heap
+	 */
+	public long offHeapBytes() {
+		if (chunks == null) return 0;
+		long result = 0;
+		for (ByteBuffer b : chunks) {
+			if (b != null) result += b.capacity();
+		}
+		return result;
+	}
+
+	private void checkOpen() {
+		if (chunks == null) throw new IllegalStateException("map is closed");
+	}
+
+	private ByteBuffer chunk(int n) {
+		return chunks[n >>> CHUNK_BITS];
+	}
+
+	private int base(int n) {
+		return (n & CHUNK_MASK) * recordSize;
+	}
+
+	private int left(int n) { return chunk(n).getInt(base(n) + LEFT); }
+	private int right(int n) { return chunk(n).getInt(base(n) + RIGHT); }
+	private int parent(int n) { return chunk(n).getInt(base(n) + PARENT); }
+	private void setLeft(int n, int v) { chunk(n).putInt(base(n) + LEFT, v); }
+	private void setRight(int n, int v) { chunk(n).putInt(base(n) + RIGHT, v); }
+	private void setParent(int n, int v) { chunk(n).putInt(base(n) + PARENT, v); }
+
+	private boolean isRed(int n) {
+		return n != NIL && chunk(n).get(base(n) + RED) != 0;
+	}
+
+	private void setRed(int n, boolean red) {
+		chunk(n).put(base(n) + RED, red ? (byte)1 : (byte)0);
+	}
+
+	private K keyAt(int n) {
+		return keyCodec.read(chunk(n), base(n) + KEY);
+	}
+
+	private V valueAt(int n) {
+		return valueCodec.read(chunk(n), base(n) + valueOffset);
+	}
+
+	private void setValueAt(int n, V v) {
+		valueCodec.write(chunk(n), base(n) + valueOffset, v);
+	}
+
+	/**
+	 * Return an unlinked slot holding the given key and value,
+	 * reusing a freed slot if there is one.
+	 */
+	private int allocate(K k, V v) {
+		int n;
+		if (free != NIL) {
+			n = free;
+			free = right(n);
+		} else {
+			n = used;
+			int c = n >>> CHUNK_BITS;
+			if (c == chunks.length) chunks = Arrays.copyOf(chunks, c * 2);
+			if (chunks[c] == null) chunks[c] = newChunk();
+			++used;
+		}
+		keyCodec.write(chunk(n), base(n) + KEY, k);
+		setValueAt(n, v);
+		setLeft(n, NIL);
+		setRight(n, NIL);
+		setParent(n, NIL);
+		return n;
+	}
+
+	private void release(int n) {
+		setLeft(n, NIL);
+		setParent(n, NIL);
+		setRight(n, free);
+		free = n;
+	}
+
+
+	/// Map operations
+
+	/**
+	 * Return the slot of the node with the given key, or NIL if there is none.
+	 * Keys of the wrong type are not found.
+	 */
+	private int findKey(Object o) {
+		if (o == null) return NIL;
+		@SuppressWarnings("unchecked")
+		K k = (K)o;
+		int r = left(DUMMY);
+		try {
+			while (r != NIL) {
+				int c = comparator.compare(k, keyAt(r));
+				if (c == 0) return r;
+				r = c < 0 ? left(r) : right(r);
+			}
+		} catch (ClassCastException ex) {
+			return NIL;
+		}
+		return NIL;
+	}
+
+	@Override // implementation
+	public int size() {
+		return numItems;
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object o) {
+		checkOpen();
+		assert wellFormed() : "invariant broken in containsKey";
+		return findKey(o) != NIL;
+	}
+
+	@Override // efficiency
+	public V get(Object o) {
+		checkOpen();
+		assert wellFormed() : "invariant broken in get";
+		int n = findKey(o);
+		return n == NIL ? null : valueAt(n);
+	}
+
+	@Override // implementation
+	public V put(K k, V v) {
+		checkOpen();
+		assert wellFormed() : "invariant broken at start of put";
+		if (k == null || v == null) throw new NullPointerException("null key or value");
+		int p = DUMMY;
+		int r = left(DUMMY);
+		int c = -1;
+		while (r != NIL) {
+			p = r;
+			c = comparator.compare(k, keyAt(r));
+			if (c == 0) {
+				V old = valueAt(r);
+				setValueAt(r, v);
+				return old;
+			}
+			r = c < 0 ? left(r) : right(r);
+		}
+		int n = allocate(k, v);
+		setParent(n, p);
+		if (c < 0) setLeft(p, n);
+		else setRight(p, n);
+		fixAfterInsert(n);
+		++numItems;
+		++version;
+		assert wellFormed() : "invariant broken at end of put";
+		return null;
+	}
+
+	@Override // efficiency
+	public V remove(Object o) {
+		checkOpen();
+		assert wellFormed() : "invariant broken at start of remove";
+		int n = findKey(o);
+		if (n == NIL) return null;
+		V result = valueAt(n);
+		removeNode(n);
+		assert wellFormed() : "invariant broken at end of remove";
+		return result;
+	}
+
+	@Override // efficiency
+	public void clear() {
+		checkOpen();
+		if (numItems == 0) return;
+		setLeft(DUMMY, NIL);
+		used = 1;
+		free = NIL;
+		numItems = 0;
+		++version;
+	}
+
+	/**
+	 * Return the smallest key.
+	 * @return smallest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public K firstKey() {
+		checkOpen();
+		if (left(DUMMY) == NIL) throw new NoSuchElementException("map is empty");
+		return keyAt(firstInTree(left(DUMMY)));
+	}
+
+	/**
+	 * Return the largest key.
+	 * @return largest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public K lastKey() {
+		checkOpen();
+		if (left(DUMMY) == NIL) throw new NoSuchElementException("map is empty");
+		int r = left(DUMMY);
+		while (right(r) != NIL) r = right(r);
+		return keyAt(r);
+	}
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		Set<Entry<K,V>> result = entrySet;
+		if (result == null) entrySet = result = new EntrySet();
+		return result;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+		@Override // required
+		public int size() {
+			return numItems;
+		}
+
+		@Override // required
+		public Iterator<Entry<K,V>> iterator() {
+			checkOpen();
+			return new MyIterator();
+		}
+
+		@Override // efficiency
+		public boolean contains(Object o) {
+			checkOpen();
+			if (!(o instanceof Entry<?,?>)) return false;
+			Entry<?,?> e = (Entry<?,?>)o;
+			int n = findKey(e.getKey());
+			return n != NIL && valueAt(n).equals(e.getValue());
+		}
+
+		@Override // efficiency
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			OffHeapTreeMap.this.remove(((Entry<?,?>)o).getKey());
+			return true;
+		}
+
+		@Override // efficiency
+		public void clear() {
+			OffHeapTreeMap.this.clear();
+		}
+	}
+
+	/**
+	 * A decoded entry; setting its value writes through to the map
+	 * as long as the map has not been structurally changed.
+	 */
+	private class SlotEntry extends SimpleEntry<K,V> {
+		private static final long serialVersionUID = 1L;
+		private final int slot;
+		private final int entryVersion = version;
+
+		SlotEntry(int n) {
+			super(keyAt(n), valueAt(n));
+			slot = n;
+		}
+
+		@Override // decorate
+		public V setValue(V v) {
+			checkOpen();
+			if (v == null) throw new NullPointerException("null value");
+			if (entryVersion != version) throw new ConcurrentModificationException("stale entry");
+			setValueAt(slot, v);
+			return super.setValue(v);
+		}
+	}
+
+	private class MyIterator implements Iterator<Entry<K,V>> {
+		private int current = NIL;
+		private int next = lowestNode();
+		private int colVersion = version;
+
+		private void checkVersion() {
+			if (colVersion != version) throw new ConcurrentModificationException("stale iterator");
+		}
+
+		public boolean hasNext() {
+			checkOpen();
+			checkVersion();
+			return next != DUMMY;
+		}
+
+		public Entry<K,V> next() {
+			checkOpen();
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			current = next;
+			next = successor(current);
+			return new SlotEntry(current);
+		}
+
+		public void remove() {
+			checkOpen();
+			checkVersion();
+			if (current == NIL) throw new IllegalStateException("nothing to remove");
+			removeNode(current);
+			current = NIL;
+			colVersion = version;
+		}
+	}
+
+
+	/// Tree helpers
+
+	private int firstInTree(int r) {
+		for (int l = left(r); l != NIL; l = left(r)) r = l;
+		return r;
+	}
+
+	private int lowestNode() {
+		int r = left(DUMMY);
+		return r == NIL ? DUMMY : firstInTree(r);
+	}
+
+	private int successor(int n) {
+		if (right(n) != NIL) return firstInTree(right(n));
+		int p = parent(n);
+		while (p != DUMMY && n == right(p)) {
+			n = p;
+			p = parent(p);
+		}
+		return p;
+	}
+
+	private void replaceChild(int u, int v) {
+		int p = parent(u);
+		if (left(p) == u) setLeft(p, v);
+		else setRight(p, v);
+		if (v != NIL) setParent(v, p);
+	}
+
+	private void rotateLeft(int x) {
+		int y = right(x);
+		int b = left(y);
+		setRight(x, b);
+		if (b != NIL) setParent(b, x);
+		replaceChild(x, y);
+		setLeft(y, x);
+		setParent(x, y);
+	}
+
+	private void rotateRight(int x) {
+		int y = left(x);
+		int b = right(y);
+		setLeft(x, b);
+		if (b != NIL) setParent(b, x);
+		replaceChild(x, y);
+		setRight(y, x);
+		setParent(x, y);
+	}
+
+	private void fixAfterInsert(int x) {
+		setRed(x, true);
+		while (x != left(DUMMY) && isRed(parent(x))) {
+			int p = parent(x);
+			int g = parent(p);
+			if (p == left(g)) {
+				int u = right(g);
+				if (isRed(u)) {
+					setRed(p, false);
+					setRed(u, false);
+					setRed(g, true);
+					x = g;
+				} else {
+					if (x == right(p)) {
+						rotateLeft(p);
+						x = p;
+						p = parent(x);
+					}
+					setRed(p, false);
+					setRed(g, true);
+					rotateRight(g);
+				}
+			} else {
+				int u = left(g);
+				if (isRed(u)) {
+					setRed(p, false);
+					setRed(u, false);
+					setRed(g, true);
+					x = g;
+				} else {
+					if (x == left(p)) {
+						rotateRight(p);
+						x = p;
+						p = parent(x);
+					}
+					setRed(p, false);
+					setRed(g, true);
+					rotateLeft(g);
+				}
+			}
+		}
+		setRed(left(DUMMY), false);
+	}
+
+	private void fixAfterRemove(int x, int xp) {
+		while (x != left(DUMMY) && !isRed(x)) {
+			if (x == left(xp)) {
+				int w = right(xp);
+				if (isRed(w)) {
+					setRed(w, false);
+					setRed(xp, true);
+					rotateLeft(xp);
+					w = right(xp);
+				}
+				if (!isRed(left(w)) && !isRed(right(w))) {
+					setRed(w, true);
+					x = xp;
+					xp = parent(x);
+				} else {
+					if (!isRed(right(w))) {
+						setRed(left(w), false);
+						setRed(w, true);
+						rotateRight(w);
+						w = right(xp);
+					}
+					setRed(w, isRed(xp));
+					setRed(xp, false);
+					setRed(right(w), false);
+					rotateLeft(xp);
+					x = left(DUMMY);
+				}
+			} else {
+				int w = left(xp);
+				if (isRed(w)) {
+					setRed(w, false);
+					setRed(xp, true);
+					rotateRight(xp);
+					w = left(xp);
+				}
+				if (!isRed(left(w)) && !isRed(right(w))) {
+					setRed(w, true);
+					x = xp;
+					xp = parent(x);
+				} else {
+					if (!isRed(left(w))) {
+						setRed(right(w), false);
+						setRed(w, true);
+						rotateLeft(w);
+						w = left(xp);
+					}
+					setRed(w, isRed(xp));
+					setRed(xp, false);
+					setRed(left(w), false);
+					rotateRight(xp);
+					x = left(DUMMY);
+				}
+			}
+		}
+		if (x != NIL) setRed(x, false);
+	}
+
+	/**
+	 * Remove a node from the tree and free its slot.  The successor
+	 * is relinked into its place so that an iterator's next slot stays valid.
+	 * @param z slot of a node in the tree
+	 */
+	private void removeNode(int z) {
+		int x, xp;
+		boolean removedBlack = !isRed(z);
+		if (left(z) == NIL) {
+			x = right(z);
+			xp = parent(z);
+			replaceChild(z, x);
+		} else if (right(z) == NIL) {
+			x = left(z);
+			xp = parent(z);
+			replaceChild(z, x);
+		} else {
+			int y = firstInTree(right(z));
+			removedBlack = !isRed(y);
+			x = right(y);
+			if (parent(y) == z) {
+				xp = y;
+			} else {
+				xp = parent(y);
+				replaceChild(y, x);
+				setRight(y, right(z));
+				setParent(right(y), y);
+			}
+			replaceChild(z, y);
+			setLeft(y, left(z));
+			setParent(left(y), y);
+			setRed(y, isRed(z));
+		}
+		if (removedBlack) fixAfterRemove(x, xp);
+		release(z);
+		--numItems;
+		++version;
+	}
+}
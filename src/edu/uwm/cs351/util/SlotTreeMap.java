@@ -0,0 +1,419 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * The red-black tree shared by the maps with primitive keys
+ * ({@link IntIntTreeMap} and {@link LongObjectTreeMap}).
+ * Nodes are not objects: each node is a slot in parallel arrays, and
+ * the links are slot indices.  Slots freed by removal are kept on a free list
+ * and reused.  This class keeps the links and colors; a subclass keeps
+ * the keys and values in arrays of its own, grown along with these,
+ * and does its own searching, so that keys are compared unboxed.
+ * @param <K> boxed type of keys
+ * @param <V> type of values
+ */
+abstract class SlotTreeMap<K,V> extends AbstractMap<K,V> {
+
+	static final int NIL = -1; // a null link
+	static final int DUMMY = 0; // slot of the dummy node, whose left child is the root
+
+	// node structure: slot i has children left[i] and right[i], ...
+	int[] left, right, parent;
+	boolean[] red;
+	int used = 1; // slots below this have been handed out at least once
+	int free = NIL; // first slot on the free list, which is linked through right
+
+	int numItems = 0;
+	int version = 0;
+
+
+	/// Invariant checks:
+
+	private static Consumer<String> reporter = (s) -> { System.err.println("Invariant error: " + s); };
+
+	boolean report(String error) {
+		reporter.accept(error);
+		return false;
+	}
+
+	/**
+	 * Return the black height of the subtree, or -1 if it is not a legal red-black tree.
+	 */
+	private int checkBlackHeight(int r) {
+		if (r == NIL) return 0;
+		if (red[r] && (isRed(left[r]) || isRed(right[r]))) return -1;
+		int lh = checkBlackHeight(left[r]);
+		if (lh < 0) return -1;
+		int rh = checkBlackHeight(right[r]);
+		if (rh != lh) return -1;
+		return red[r] ? lh : lh + 1;
+	}
+
+	/**
+	 * Check the dummy, the colors and the free list.  The subclass
+	 * must first check that the tree is in order with correct parents
+	 * and has numItems nodes (which also rules out cycles).
+	 * @return whether the tree structure is well formed
+	 */
+	boolean wellFormedTree() {
+		if (right[DUMMY] != NIL || parent[DUMMY] != NIL) return report("dummy is not correct");
+		if (isRed(left[DUMMY])) return report("root is red");
+		if (checkBlackHeight(left[DUMMY]) < 0) return report("red-black properties violated");
+		int freed = 0;
+		for (int i = free; i != NIL; i = right[i]) {
+			if (i <= DUMMY || i >= used || ++freed > used) return report("free list is corrupt");
+		}
+		if (1 + numItems + freed != used) return report("slots are lost: " + used + " used, " + freed + " free");
+		return true;
+	}
+
+
+	/// Storage
+
+	/**
+	 * Create an empty tree with room for the given number of nodes
+	 * before the arrays need to grow.  The subclass must allocate
+	 * its own arrays with {@link #capacity()} slots.
+	 * @param initialCapacity number of nodes to make room for, must not be negative
+	 */
+	SlotTreeMap(int initialCapacity) {
+		if (initialCapacity < 0) throw new IllegalArgumentException("negative capacity: " + initialCapacity);
+		int n = initialCapacity + 1;
+		left = new int[n];
+		right = new int[n];
+		parent = new int[n];
+		red = new boolean[n];
+		left[DUMMY] = right[DUMMY] = parent[DUMMY] = NIL;
+	}
+
+	/**
+	 * Return the number of slots the arrays have room for.
+	 */
+	int capacity() {
+		return left.length;
+	}
+
+	/**
+	 * Grow the subclass's key and value arrays to the given length.
+	 * @param n new length, larger than the current one
+	 */
+	abstract void resize(int n);
+
+	private void grow() {
+		int n = left.length < 8 ? 16 : left.length + (left.length >> 1);
+		resize(n);
+		left = Arrays.copyOf(left, n);
+		right = Arrays.copyOf(right, n);
+		parent = Arrays.copyOf(parent, n);
+		red = Arrays.copyOf(red, n);
+	}
+
+	/**
+	 * Return an unlinked slot, reusing a freed slot if there is one.
+	 * The caller must fill in the key and value.
+	 */
+	int allocate() {
+		int n;
+		if (free != NIL) {
+			n = free;
+			free = right[n];
+		} else {
+			if (used == left.length) grow();
+			n = used++;
+		}
+		left[n] = right[n] = parent[n] = NIL;
+		return n;
+	}
+
+	/**
+	 * Put a slot on the free list.  A subclass that holds references
+	 * in the slot should drop them here.
+	 */
+	void release(int n) {
+		left[n] = parent[n] = NIL;
+		right[n] = free;
+		free = n;
+	}
+
+	/**
+	 * Link a new slot in as a child of p and rebalance.
+	 * @param p parent, the dummy if the tree is empty
+	 * @param toLeft whether n becomes the left child
+	 * @param n slot from {@link #allocate()}, with its key and value set
+	 */
+	void attach(int p, boolean toLeft, int n) {
+		parent[n] = p;
+		if (toLeft) left[p] = n;
+		else right[p] = n;
+		fixAfterInsert(n);
+		++numItems;
+		++version;
+	}
+
+
+	/// Map operations
+
+	@Override // implementation
+	public int size() {
+		return numItems;
+	}
+
+	@Override // efficiency
+	public void clear() {
+		if (numItems == 0) return;
+		left[DUMMY] = NIL;
+		used = 1;
+		free = NIL;
+		numItems = 0;
+		++version;
+	}
+
+	/**
+	 * An iterator over the slots in order; a subclass turns the slots into entries.
+	 */
+	abstract class SlotIterator {
+		private int current = NIL;
+		private int next = lowestNode();
+		private int colVersion = version;
+
+		private void checkVersion() {
+			if (colVersion != version) throw new ConcurrentModificationException("stale iterator");
+		}
+
+		public boolean hasNext() {
+			checkVersion();
+			return next != DUMMY;
+		}
+
+		/**
+		 * Move on to the next slot.
+		 * @return the slot moved to
+		 */
+		int nextSlot() {
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			current = next;
+			next = successor(current);
+			return current;
+		}
+
+		public void remove() {
+			checkVersion();
+			if (current == NIL) throw new IllegalStateException("nothing to remove");
+			removeNode(current);
+			current = NIL;
+			colVersion = version;
+		}
+	}
+
+
+	/// Tree helpers
+
+	boolean isRed(int n) {
+		return n != NIL && red[n];
+	}
+
+	int firstInTree(int r) {
+		while (left[r] != NIL) r = left[r];
+		return r;
+	}
+
+	/**
+	 * Return the node with the smallest key, or the dummy if the map is empty.
+	 */
+	int lowestNode() {
+		return left[DUMMY] == NIL ? DUMMY : firstInTree(left[DUMMY]);
+	}
+
+	/**
+	 * Return the node with the largest key.
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	int highestNode() {
+		int r = left[DUMMY];
+		if (r == NIL) throw new NoSuchElementException("map is empty");
+		while (right[r] != NIL) r = right[r];
+		return r;
+	}
+
+	/**
+	 * Return the next node in order, or the dummy if n is the last node.
+	 */
+	int successor(int n) {
+		if (right[n] != NIL) return firstInTree(right[n]);
+		int p = parent[n];
+		while (p != DUMMY && n == right[p]) {
+			n = p;
+			p = parent[p];
+		}
+		return p;
+	}
+
+	private void replaceChild(int u, int v) {
+		int p = parent[u];
+		if (left[p] == u) left[p] = v;
+		else right[p] = v;
+		if (v != NIL) parent[v] = p;
+	}
+
+	private void rotateLeft(int x) {
+		int y = right[x];
+		right[x] = left[y];
+		if (left[y] != NIL) parent[left[y]] = x;
+		replaceChild(x, y);
+		left[y] = x;
+		parent[x] = y;
+	}
+
+	private void rotateRight(int x) {
+		int y = left[x];
+		left[x] = right[y];
+		if (right[y] != NIL) parent[right[y]] = x;
+		replaceChild(x, y);
+		right[y] = x;
+		parent[x] = y;
+	}
+
+	private void fixAfterInsert(int x) {
+		red[x] = true;
+		while (x != left[DUMMY] && red[parent[x]]) {
+			int p = parent[x];
+			int g = parent[p];
+			if (p == left[g]) {
+				int u = right[g];
+				if (isRed(u)) {
+					red[p] = red[u] = false;
+					red[g] = true;
+					x = g;
+				} else {
+					if (x == right[p]) {
+						rotateLeft(p);
+						x = p;
+						p = parent[x];
+					}
+					red[p] = false;
+					red[g] = true;
+					rotateRight(g);
+				}
+			} else {
+				int u = left[g];
+				if (isRed(u)) {
+					red[p] = red[u] = false;
+					red[g] = true;
+					x = g;
+				} else {
+					if (x == left[p]) {
+						rotateRight(p);
+						x = p;
+						p = parent[x];
+					}
+					red[p] = false;
+					red[g] = true;
+					rotateLeft(g);
+				}
+			}
+		}
+		red[left[DUMMY]] = false;
+	}
+
+	private void fixAfterRemove(int x, int xp) {
+		while (x != left[DUMMY] && !isRed(x)) {
+			if (x == left[xp]) {
+				int w = right[xp];
+				if (red[w]) {
+					red[w] = false;
+					red[xp] = true;
+					rotateLeft(xp);
+					w = right[xp];
+				}
+				if (!isRed(left[w]) && !isRed(right[w])) {
+					red[w] = true;
+					x = xp;
+					xp = parent[x];
+				} else {
+					if (!isRed(right[w])) {
+						red[left[w]] = false;
+						red[w] = true;
+						rotateRight(w);
+						w = right[xp];
+					}
+					red[w] = red[xp];
+					red[xp] = false;
+					red[right[w]] = false;
+					rotateLeft(xp);
+					x = left[DUMMY];
+				}
+			} else {
+				int w = left[xp];
+				if (red[w]) {
+					red[w] = false;
+					red[xp] = true;
+					rotateRight(xp);
+					w = left[xp];
+				}
+				if (!isRed(left[w]) && !isRed(right[w])) {
+					red[w] = true;
+					x = xp;
+					xp = parent[x];
+				} else {
+					if (!isRed(left[w])) {
+						red[right[w]] = false;
+						red[w] = true;
+						rotateLeft(w);
+						w = left[xp];
+					}
+					red[w] = red[xp];
+					red[xp] = false;
+					red[left[w]] = false;
+					rotateRight(xp);
+					x = left[DUMMY];
+				}
+			}
+		}
+		if (x != NIL) red[x] = false;
+	}
+
+	/**
+	 * Remove a node from the tree and free its slot.  The successor
+	 * is relinked into its place (rather than having its key and value
+	 * copied) so that an iterator's next slot stays valid.
+	 * @param z slot of a node in the tree
+	 */
+	void removeNode(int z) {
+		int x, xp;
+		boolean removedBlack = !red[z];
+		if (left[z] == NIL) {
+			x = right[z];
+			xp = parent[z];
+			replaceChild(z, x);
+		} else if (right[z] == NIL) {
+			x = left[z];
+			xp = parent[z];
+			replaceChild(z, x);
+		} else {
+			int y = firstInTree(right[z]);
+			removedBlack = !red[y];
+			x = right[y];
+			if (parent[y] == z) {
+				xp = y;
+			} else {
+				xp = parent[y];
+				replaceChild(y, x);
+				right[y] = right[z];
+				parent[right[y]] = y;
+			}
+			replaceChild(z, y);
+			left[y] = left[z];
+			parent[left[y]] = y;
+			red[y] = red[z];
+		}
+		if (removedBlack) fixAfterRemove(x, xp);
+		release(z);
+		--numItems;
+		++version;
+	}
+}
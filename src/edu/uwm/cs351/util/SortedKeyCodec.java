@@ -0,0 +1,103 @@
+package edu.uwm.cs351.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A binary encoding of keys on a stream, in which each key is encoded
+ * relative to the one before it.  Since {@link TreeMap#export} writes keys
+ * in sorted order, neighbouring keys are close together, and encoding
+ * only the difference takes far fewer bytes than encoding each key alone.
+ * @param <K> type of keys encoded
+ */
+public interface SortedKeyCodec<K> {
+
+	/**
+	 * Write the encoding of a key.
+	 * @param out stream to write to, must not be null
+	 * @param previous key written just before this one, or null if this is the first
+	 * @param key key to encode, must not be null
+	 * @throws IOException if the stream cannot be written
+	 */
+	void write(DataOutput out, K previous, K key) throws IOException;
+
+	/**
+	 * Read a key written by {@link #write}.
+	 * @param in stream to read from, must not be null
+	 * @param previous key read just before this one, or null if this is the first
+	 * @return decoded key
+	 * @throws IOException if the stream cannot be read or ends too soon
+	 */
+	K read(DataInput in, K previous) throws IOException;
+
+
+	/**
+	 * Return an encoding that ignores the previous key.
+	 * @param c encoding for each key alone, must not be null
+	 * @return encoding writing each key with the given encoding
+	 */
+	public static <K> SortedKeyCodec<K> of(StreamCodec<K> c) {
+		return new SortedKeyCodec<K>() {
+			public void write(DataOutput out, K previous, K key) throws IOException {
+				c.write(out, key);
+			}
+			public K read(DataInput in, K previous) throws IOException {
+				return c.read(in);
+			}
+		};
+	}
+
+	/**
+	 * Ints as the zigzag varint of the difference from the previous key
+	 * (or from zero for the first).  The difference wraps around, so
+	 * any order of keys can be encoded, but increasing keys close together
+	 * take one or two bytes each.
+	 */
+	public static final SortedKeyCodec<Integer> INT_DELTA = new SortedKeyCodec<Integer>() {
+		public void write(DataOutput out, Integer previous, Integer key) throws IOException {
+			StreamCodec.INT.write(out, key - (previous == null ? 0 : previous));
+		}
+		public Integer read(DataInput in, Integer previous) throws IOException {
+			return StreamCodec.INT.read(in) + (previous == null ? 0 : previous);
+		}
+	};
+
+	/**
+	 * Longs as the zigzag varint of the difference from the previous key
+	 * (or from zero for the first), like {@link #INT_DELTA}.
+	 */
+	public static final SortedKeyCodec<Long> LONG_DELTA = new SortedKeyCodec<Long>() {
+		public void write(DataOutput out, Long previous, Long key) throws IOException {
+			StreamCodec.LONG.write(out, key - (previous == null ? 0L : previous));
+		}
+		public Long read(DataInput in, Long previous) throws IOException {
+			return StreamCodec.LONG.read(in) + (previous == null ? 0L : previous);
+		}
+	};
+
+	/**
+	 * Strings as the number of leading characters shared with the previous key
+	 * (as a varint) followed by the rest of the key (as with {@link StreamCodec#STRING}).
+	 * A surrogate pair is never split between the two parts.
+	 */
+	public static final SortedKeyCodec<String> STRING_PREFIX = new SortedKeyCodec<String>() {
+		public void write(DataOutput out, String previous, String key) throws IOException {
+			int shared = 0;
+			if (previous != null) {
+				int max = Math.min(previous.length(), key.length());
+				while (shared < max && previous.charAt(shared) == key.charAt(shared)) ++shared;
+				if (shared > 0 && Character.isHighSurrogate(key.charAt(shared - 1))) --shared;
+			}
+			StreamCodec.writeVarInt(out, shared);
+			StreamCodec.STRING.write(out, key.substring(shared));
+		}
+		public String read(DataInput in, String previous) throws IOException {
+			int shared = StreamCodec.readVarInt(in);
+			int available = previous == null ? 0 : previous.length();
+			if (shared < 0 || shared > available) throw new IOException("shared prefix " + shared + " longer than previous key");
+			String rest = StreamCodec.STRING.read(in);
+			return shared == 0 ? rest : previous.substring(0, shared).concat(rest);
+		}
+	};
+}
@@ -0,0 +1,401 @@
+package edu.uwm.cs351.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe sorted map: a {@link TreeMap} guarded by a {@link StampedLock}.
+ * Lookups ({@link #get}, {@link #containsKey}, {@link #size} and the
+ * navigation methods) first run optimistically without taking any lock,
+ * and then validate that no writer was active; only if one was do they
+ * retry under the read lock.  So readers do not block each other, and
+ * in a read-mostly workload they rarely wait.
+ * Updates, including the compound default methods of {@link Map}, are
+ * atomic under the write lock.
+ * <p>
+ * Entries returned are immutable snapshots.  The entry set (and so the
+ * key set, values, equals, hashCode and toString) reflects the map at the time
+ * entrySet() was called; removing through its iterator removes from this map.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class StampedTreeMap<K,V> extends AbstractMap<K,V> {
+
+	private final TreeMap<K,V> map;
+	private final StampedLock lock = new StampedLock();
+
+	public StampedTreeMap() {
+		this(null);
+	}
+
+	/**
+	 * Create an empty thread-safe map.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 */
+	public StampedTreeMap(Comparator<K> c) {
+		map = new TreeMap<K,V>(c);
+	}
+
+	/**
+	 * Return the comparator, or null if the natural ordering is used.
+	 * @return comparator given to the constructor
+	 */
+	public Comparator<? super K> comparator() {
+		return map.comparator();
+	}
+
+
+	/// Optimistic reads
+
+	/**
+	 * Return a snapshot of the entry in the given relation to the key.
+	 * The lookup is tried first without a lock; if a writer interfered,
+	 * it is repeated under the read lock.
+	 */
+	private Entry<K,V> lookup(Object key, TreeMap.Relation rel) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			try {
+				Entry<K,V> e = map.racyLookup(key, rel);
+				K k = e == null ? null : e.getKey();
+				V v = e == null ? null : e.getValue();
+				if (lock.validate(stamp)) return e == null ? null : new SimpleImmutableEntry<K,V>(k, v);
+			} catch (RuntimeException ex) {
+				if (lock.validate(stamp)) throw ex; // not caused by a writer
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			Entry<K,V> e = map.racyLookup(key, rel);
+			return e == null ? null : new SimpleImmutableEntry<K,V>(e);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private static <K> K keyOrNull(Entry<K,?> e) {
+		return e == null ? null : e.getKey();
+	}
+
+	private static <K> K keyOrThrow(Entry<K,?> e) {
+		if (e == null) throw new NoSuchElementException("map is empty");
+		return e.getKey();
+	}
+
+	@Override // implementation
+	public int size() {
+		long stamp = lock.tryOptimisticRead();
+		int result = map.size();
+		if (lock.validate(stamp)) return result;
+		stamp = lock.readLock();
+		try {
+			return map.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override // efficiency
+	public V get(Object key) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			try {
+				Entry<K,V> e = map.racyLookup(key, TreeMap.Relation.EQUAL);
+				V v = e == null ? null : e.getValue();
+				if (lock.validate(stamp)) return v;
+			} catch (RuntimeException ex) {
+				if (lock.validate(stamp)) throw ex;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			Entry<K,V> e = map.racyLookup(key, TreeMap.Relation.EQUAL);
+			return e == null ? null : e.getValue();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override // efficiency
+	public boolean containsKey(Object key) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			try {
+				boolean found = map.racyLookup(key, TreeMap.Relation.EQUAL) != null;
+				if (lock.validate(stamp)) return found;
+			} catch (RuntimeException ex) {
+				if (lock.validate(stamp)) throw ex;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return map.racyLookup(key, TreeMap.Relation.EQUAL) != null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	public K firstKey() {
+		return keyOrThrow(lookup(null, TreeMap.Relation.FIRST));
+	}
+
+	public K lastKey() {
+		return keyOrThrow(lookup(null, TreeMap.Relation.LAST));
+	}
+
+	public Entry<K,V> firstEntry() {
+		return lookup(null, TreeMap.Relation.FIRST);
+	}
+
+	public Entry<K,V> lastEntry() {
+		return lookup(null, TreeMap.Relation.LAST);
+	}
+
+	public Entry<K,V> ceilingEntry(K key) {
+		return lookup(key, TreeMap.Relation.CEILING);
+	}
+
+	public K ceilingKey(K key) {
+		return keyOrNull(lookup(key, TreeMap.Relation.CEILING));
+	}
+
+	public Entry<K,V> higherEntry(K key) {
+		return lookup(key, TreeMap.Relation.HIGHER);
+	}
+
+	public K higherKey(K key) {
+		return keyOrNull(lookup(key, TreeMap.Relation.HIGHER));
+	}
+
+	public Entry<K,V> floorEntry(K key) {
+		return lookup(key, TreeMap.Relation.FLOOR);
+	}
+
+	public K floorKey(K key) {
+		return keyOrNull(lookup(key, TreeMap.Relation.FLOOR));
+	}
+
+	public Entry<K,V> lowerEntry(K key) {
+		return lookup(key, TreeMap.Relation.LOWER);
+	}
+
+	public K lowerKey(K key) {
+		return keyOrNull(lookup(key, TreeMap.Relation.LOWER));
+	}
+
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		long stamp = lock.readLock();
+		try {
+			map.forEach(action);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+
+	/// Updates (under the write lock)
+
+	@Override // implementation
+	public V put(K key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			return map.put(key, value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // efficiency
+	public V remove(Object key) {
+		long stamp = lock.writeLock();
+		try {
+			return map.remove(key);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // efficiency
+	public void putAll(Map<? extends K, ? extends V> m) {
+		long stamp = lock.writeLock();
+		try {
+			map.putAll(m);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // efficiency
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			map.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public Entry<K,V> pollFirstEntry() {
+		long stamp = lock.writeLock();
+		try {
+			return map.pollFirstEntry();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public Entry<K,V> pollLastEntry() {
+		long stamp = lock.writeLock();
+		try {
+			return map.pollLastEntry();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V putIfAbsent(K key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			return map.putIfAbsent(key, value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public boolean remove(Object key, Object value) {
+		long stamp = lock.writeLock();
+		try {
+			return map.remove(key, value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public boolean replace(K key, V oldValue, V newValue) {
+		long stamp = lock.writeLock();
+		try {
+			return map.replace(key, oldValue, newValue);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V replace(K key, V value) {
+		long stamp = lock.writeLock();
+		try {
+			return map.replace(key, value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> f) {
+		long stamp = lock.writeLock();
+		try {
+			return map.computeIfAbsent(key, f);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f) {
+		long stamp = lock.writeLock();
+		try {
+			return map.computeIfPresent(key, f);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> f) {
+		long stamp = lock.writeLock();
+		try {
+			return map.compute(key, f);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> f) {
+		long stamp = lock.writeLock();
+		try {
+			return map.merge(key, value, f);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override // atomicity
+	public void replaceAll(BiFunction<? super K, ? super V, ? extends V> f) {
+		long stamp = lock.writeLock();
+		try {
+			map.replaceAll(f);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+
+	/// Snapshot view
+
+	@Override // required
+	public Set<Entry<K,V>> entrySet() {
+		List<Entry<K,V>> entries;
+		long stamp = lock.readLock();
+		try {
+			entries = new ArrayList<>(map.size());
+			map.forEach((k, v) -> entries.add(new SimpleImmutableEntry<K,V>(k, v)));
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		return new AbstractSet<Entry<K,V>>() {
+			@Override // required
+			public int size() {
+				return entries.size();
+			}
+
+			@Override // required
+			public Iterator<Entry<K,V>> iterator() {
+				return new Iterator<Entry<K,V>>() {
+					private int next = 0;
+					private Entry<K,V> current = null;
+
+					public boolean hasNext() {
+						return next < entries.size();
+					}
+
+					public Entry<K,V> next() {
+						if (!hasNext()) throw new NoSuchElementException("no more");
+						return current = entries.get(next++);
+					}
+
+					public void remove() {
+						if (current == null) throw new IllegalStateException("nothing to remove");
+						StampedTreeMap.this.remove(current.getKey());
+						current = null;
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,144 @@
+package edu.uwm.cs351.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A variable-length binary encoding of values on a stream,
+ * used by {@link TreeMap#export} and {@link TreeMap#importFrom}.
+ * The static methods read and write the unsigned varints
+ * (seven bits a byte, least significant first) that the encodings share.
+ * @param <T> type of values encoded
+ */
+public interface StreamCodec<T> {
+
+	/**
+	 * Write the encoding of a value.
+	 * @param out stream to write to, must not be null
+	 * @param value value to encode, must not be null
+	 * @throws IOException if the stream cannot be written
+	 */
+	void write(DataOutput out, T value) throws IOException;
+
+	/**
+	 * Read a value written by {@link #write}.
+	 * @param in stream to read from, must not be null
+	 * @return decoded value
+	 * @throws IOException if the stream cannot be read or ends too soon
+	 */
+	T read(DataInput in) throws IOException;
+
+
+	/**
+	 * Write a long as an unsigned varint, taking one to ten bytes.
+	 */
+	public static void writeVarLong(DataOutput out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	/**
+	 * Read a long written by {@link #writeVarLong}.
+	 * @throws IOException if the varint is longer than ten bytes
+	 */
+	public static long readVarLong(DataInput in) throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return result;
+		}
+		throw new IOException("varint too long");
+	}
+
+	/**
+	 * Write an int as an unsigned varint, taking one to five bytes.
+	 */
+	public static void writeVarInt(DataOutput out, int v) throws IOException {
+		writeVarLong(out, v & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Read an int written by {@link #writeVarInt}.
+	 * @throws IOException if the varint is too long for an int
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		long v = readVarLong(in);
+		if ((v >>> 32) != 0) throw new IOException("varint too long for an int");
+		return (int) v;
+	}
+
+	/**
+	 * Return an encoding that writes the fixed-width encoding of a {@link Codec}.
+	 * It keeps a buffer of its own, so it should not be used by several threads at once.
+	 * @param c fixed-width encoding to use, must not be null
+	 * @return stream encoding using the same bytes
+	 */
+	public static <T> StreamCodec<T> of(Codec<T> c) {
+		return new StreamCodec<T>() {
+			private final ByteBuffer buf = ByteBuffer.allocate(c.width());
+
+			public void write(DataOutput out, T value) throws IOException {
+				c.write(buf, 0, value);
+				out.write(buf.array());
+			}
+
+			public T read(DataInput in) throws IOException {
+				in.readFully(buf.array());
+				return c.read(buf, 0);
+			}
+		};
+	}
+
+
+	/** Ints as zigzag varints, so that small magnitudes take few bytes. */
+	public static final StreamCodec<Integer> INT = new StreamCodec<Integer>() {
+		public void write(DataOutput out, Integer value) throws IOException {
+			writeVarInt(out, (value << 1) ^ (value >> 31));
+		}
+		public Integer read(DataInput in) throws IOException {
+			int v = readVarInt(in);
+			return (v >>> 1) ^ -(v & 1);
+		}
+	};
+
+	/** Longs as zigzag varints, so that small magnitudes take few bytes. */
+	public static final StreamCodec<Long> LONG = new StreamCodec<Long>() {
+		public void write(DataOutput out, Long value) throws IOException {
+			writeVarLong(out, (value << 1) ^ (value >> 63));
+		}
+		public Long read(DataInput in) throws IOException {
+			long v = readVarLong(in);
+			return (v >>> 1) ^ -(v & 1);
+		}
+	};
+
+	/**
+	 * The largest number of UTF-8 bytes {@link #STRING} writes or reads,
+	 * so that a corrupt count cannot make it allocate a huge array.
+	 */
+	public static final int MAX_STRING_BYTES = 1 << 24;
+
+	/** Strings as a varint byte count followed by the UTF-8 bytes. */
+	public static final StreamCodec<String> STRING = new StreamCodec<String>() {
+		public void write(DataOutput out, String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > MAX_STRING_BYTES) throw new IOException("string of " + bytes.length + " bytes is too long");
+			writeVarInt(out, bytes.length);
+			out.write(bytes);
+		}
+		public String read(DataInput in) throws IOException {
+			int n = readVarInt(in);
+			if (n < 0 || n > MAX_STRING_BYTES) throw new IOException("bad string length " + (n & 0xFFFFFFFFL));
+			byte[] bytes = new byte[n];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+}
@@ -1,13 +1,42 @@
 package edu.uwm.cs351.util;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 import junit.framework.TestCase;
 
@@ -16,23 +45,100 @@ import junit.framework.TestCase;
  * Homework 10, CS 351
  */
 
-public class TreeMap<K,V>  extends AbstractMap<K,V> {
+public class TreeMap<K,V>  extends AbstractMap<K,V> implements NavigableMap<K,V> {
 
 	// Here is the data structure to use.
 	
 	private static class Node<K,V> extends DefaultEntry<K,V> {
 		Node<K,V> left, right;
 		Node<K,V> parent;
+		boolean red; // only meaningful when red-black balancing is used
+		int size; // number of nodes in this subtree
+		Object agg; // summary of this subtree (if the map has a monoid)
+		Owner<K,V> owner; // tag of the tree this node was made for, or null
+		Node<K,V> forward; // copy that took this node's place in the live map, or null
 		Node(K k, V v) {
 			super(k,v);
 			parent = left = right = null;
+			size = 1;
+		}
+		
+		/**
+		 * Return the node that now holds this entry for the live map:
+		 * this node, or the last of the copies made in its place.
+		 */
+		Node<K,V> latest() {
+			Node<K,V> n = this;
+			while (n.forward != null) n = n.forward;
+			return n;
+		}
+		
+		@Override // decorate
+		public V getValue() {
+			return latest().value;
+		}
+		
+		@Override // decorate
+		public V setValue(V v) {
+			Node<K,V> n = latest();
+			TreeMap<K,V> m = n.owner == null ? null : n.owner.map;
+			if (m == null) {
+				V old = n.value;
+				n.value = v;
+				return old;
+			}
+			return m.setValueOf(n, v);
+		}
+	}
+	
+	/**
+	 * The tag of the nodes made by a map (created through a public constructor),
+	 * which lets an entry changed through setValue find its map at once.
+	 * A map changes only nodes with its current tag: {@link #snapshot()} gives
+	 * the map a new tag, so that all the nodes so far are shared, and
+	 * when the whole tree is dropped, its nodes are let go by ending the tag.
+	 */
+	private static class Owner<K,V> {
+		TreeMap<K,V> map; // map that made these nodes, or null once the tree is dropped
+		Owner(TreeMap<K,V> m) {
+			map = m;
 		}
 	}
 	
+	/**
+	 * How the tree keeps itself balanced.
+	 * <ul>
+	 * <li>NONE: a plain binary search tree; the shape depends on the order of insertion.
+	 * <li>RED_BLACK: a red-black tree; the height is always O(log n).
+	 * <li>SPLAY: a splay tree; get, containsKey and put move the node they reach
+	 * to the root, so keys used often stay near the top.  Operations take
+	 * amortized O(log n) time, and a recently used key is found almost at once.
+	 * Since reads then change the shape of the tree (though not the version,
+	 * so iterators are undisturbed), a splay tree should not be read by several
+	 * threads at once.  Splaying nodes shared with a snapshot copies them first.
+	 * </ul>
+	 */
+	public enum Balancing { NONE, RED_BLACK, SPLAY }
+	
+	@SuppressWarnings("unchecked")
+	private static final Comparator<Object> NATURAL = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+	
 	private Comparator<K> comparator;
 	private Node<K,V> dummy;
+	private Owner<K,V> owner; // tag of the nodes this map may change (null for trees built node by node in TestSuite)
 	private int numItems = 0;
 	private int version = 0;
+	private Balancing balancing;
+	private boolean counted; // whether subtree sizes are maintained (not for trees built node by node in TestSuite)
+	private Monoid<? super V, Object> monoid; // null if no aggregates are kept
+	private boolean fingerSearch; // whether searches start from the last node found
+	private Node<K,V> finger; // node of the last search, or null
+	private CountingBloomFilter<? super K> filter; // answers lookups of absent keys, or null
+	private HashIndex index; // finds nodes by hash for get and containsKey, or null
+	private Class<?> admittedClass; // class of the last probe that the comparator accepted
+	private boolean readOnly; // true for snapshots
+	private TreeMap<K,V> lastSnapshot; // snapshot of this map, or null once the map has changed since
+	private int generation; // changes when nodes are replaced by copies, so cursors must move to the copies
 	
 	
 	/// Invariant checks:
@@ -66,7 +172,8 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 	 * Between the lower and upper bounds (exclusive)
 	 */
 	private boolean checkInRange(Node<K,V> node, Node<K, V> p, K lower, K upper) {
-		if (node.parent != p) {
+		// the parent pointers of shared nodes belong to the live map
+		if (!readOnly && node.parent != p) {
 			return false;
 		}
 		if (node.key == null) {
@@ -131,9 +238,96 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 		//Invariant 6
 		if (countNodes(dummy.left) != numItems) return report("countNodes does not equal numItems");
 		
+		//Invariant 7 (only when sizes are maintained)
+		if (counted && checkSizes(dummy.left) < 0) return report("subtree size is wrong");
+		
+		//Invariant 8 (only when aggregates are kept)
+		if (monoid != null && !checkAggregates(dummy.left)) return report("subtree aggregate is wrong");
+		
+		//Invariant 9 (only with finger search)
+		if (finger != null) {
+			Node<K,V> r = finger;
+			while (r.parent != null) r = r.parent;
+			if (r != dummy || finger == dummy) return report("finger is not a node in the tree");
+		}
+		
+		//Invariant 11 (only with a miss filter)
+		if (filter != null) {
+			for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+				if (!filter.mightContain(n.key)) return report("miss filter rejects key " + n.key);
+			}
+		}
+		
+		//Invariant 12 (only with a hash index)
+		if (index != null) {
+			if (index.count != numItems) return report("hash index has " + index.count + " entries, not " + numItems);
+			for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+				if (index.find(n.key) != n) return report("hash index does not find key " + n.key);
+			}
+		}
+		
+		//Invariant 13 (only for live maps with tags): no node in the tree has been copied,
+		// and the parent of a node this map owns is owned too (so nodes above one shared with a snapshot are shared)
+		if (owner != null && !readOnly) {
+			for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+				if (n.forward != null) return report("node " + n.key + " has been replaced by a copy");
+				if (n.owner == owner && n.parent != dummy && n.parent.owner != owner) return report("node " + n.key + " is owned, but its parent is shared");
+			}
+		}
+		
+		//Invariant 10 (only for red-black trees)
+		if (balancing == Balancing.RED_BLACK) {
+			if (dummy.left != null && dummy.left.red) return report("root is red");
+			if (checkBlackHeight(dummy.left) < 0) return report("red-black properties violated");
+		}
+		
 		return true;
 	}
 	
+	/**
+	 * Return the number of nodes in the subtree, or -1 if any node in it
+	 * has a size field that does not match.
+	 * @param r subtree to check, may be null
+	 * @return size of the subtree, or -1 if some recorded size is wrong
+	 */
+	private int checkSizes(Node<K,V> r) {
+		if (r == null) return 0;
+		int ls = checkSizes(r.left);
+		if (ls < 0) return -1;
+		int rs = checkSizes(r.right);
+		if (rs < 0) return -1;
+		if (r.size != ls + rs + 1) return -1;
+		return r.size;
+	}
+	
+	/**
+	 * Return whether every node in the subtree has the correct aggregate.
+	 * @param r subtree to check, may be null
+	 * @return whether all recorded aggregates match the monoid
+	 */
+	private boolean checkAggregates(Node<K,V> r) {
+		if (r == null) return true;
+		if (!checkAggregates(r.left) || !checkAggregates(r.right)) return false;
+		Object expected = monoid.combine(monoid.combine(aggOf(r.left), monoid.of(r.value)), aggOf(r.right));
+		return expected == null ? r.agg == null : expected.equals(r.agg);
+	}
+	
+	/**
+	 * Return the number of black nodes on every path from the given node down
+	 * to a null, or -1 if the paths do not agree or a red node has a red child.
+	 * @param r subtree to check, may be null
+	 * @return black height of the subtree, or -1 if it is not a legal red-black tree
+	 */
+	private int checkBlackHeight(Node<K,V> r) {
+		if (r == null) return 0;
+		if (r.red && (isRed(r.left) || isRed(r.right))) return -1;
+		int lh = checkBlackHeight(r.left);
+		if (lh < 0) return -1;
+		int rh = checkBlackHeight(r.right);
+		if (rh != lh) return -1;
+		return r.red ? lh : lh + 1;
+	}
+	
 	
 	/// constructors
 	
@@ -144,28 +338,216 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 		assert wellFormed() : "invariant broken after constructor()";
 	}
 	
-	@SuppressWarnings("unchecked") // for comparator creation
 	public TreeMap(Comparator<K> c) {
+		this(c, Balancing.RED_BLACK);
+		assert wellFormed() : "invariant broken after constructor(Comparator)";
+	}
+	
+	/**
+	 * Create an empty tree map using the given comparator and balancing strategy.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param bal balancing strategy, must not be null
+	 */
+	@SuppressWarnings("unchecked") // for comparator creation
+	public TreeMap(Comparator<K> c, Balancing bal) {
 		// TODO
 		// Update the parameter comparator if necessary
 		// Create the dummy node.
+		if (bal == null) throw new NullPointerException("balancing is null");
+		balancing = bal;
+		counted = true;
 		if (c == null) {
-			comparator = (a, b) -> ((Comparable<K>) a).compareTo(b);
+			comparator = (Comparator<K>) NATURAL;
 		}
 		else {
 			comparator = c;
 		}
+		owner = new Owner<K,V>(this);
 		dummy = new Node<K, V>(null, null);
 	
-		assert wellFormed() : "invariant broken after constructor(Comparator)";
+		assert wellFormed() : "invariant broken after constructor(Comparator,Balancing)";
+	}
+	
+	/**
+	 * Create a balanced tree map with the same ordering and entries as
+	 * the given sorted map, in linear time.
+	 * (This is not a constructor, since TreeMap(null) must remain unambiguous.)
+	 * @param m sorted map to copy, must not be null or have null keys
+	 * @return new map with the same entries
+	 */
+	@SuppressWarnings("unchecked") // Comparator<? super K> is fine as a Comparator<K>
+	public static <K,V> TreeMap<K,V> fromSorted(SortedMap<K, ? extends V> m) {
+		TreeMap<K,V> result = new TreeMap<K,V>((Comparator<K>)m.comparator());
+		result.buildFromSorted(m.entrySet().iterator(), m.size());
+		assert result.wellFormed() : "invariant broken after fromSorted";
+		return result;
+	}
+	
+	/**
+	 * Create a balanced tree map from entries given in increasing key order,
+	 * in linear time.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param entries entries in strictly increasing key order, must not be null
+	 * @return new map with these entries
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 */
+	public static <K,V> TreeMap<K,V> fromSorted(Comparator<K> c, Iterator<? extends Entry<? extends K, ? extends V>> entries) {
+		List<Entry<K,V>> copy = new ArrayList<>();
+		while (entries.hasNext()) {
+			copy.add(new SimpleImmutableEntry<K,V>(entries.next()));
+		}
+		TreeMap<K,V> result = new TreeMap<K,V>(c);
+		result.buildFromSorted(copy.iterator(), copy.size());
+		assert result.wellFormed() : "invariant broken after fromSorted";
+		return result;
+	}
+	
+	/**
+	 * Create a balanced tree map from a known number of entries given in
+	 * increasing key order, in linear time.  Unlike {@link #fromSorted(Comparator, Iterator)}
+	 * the entries are not buffered, so the iterator may reuse one entry object.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param entries at least n entries in strictly increasing key order, must not be null
+	 * @param n number of entries to use, must not be negative
+	 * @return new map with these entries
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 */
+	public static <K,V> TreeMap<K,V> fromSorted(Comparator<K> c, Iterator<? extends Entry<? extends K, ? extends V>> entries, int n) {
+		if (n < 0) throw new IllegalArgumentException("negative count: " + n);
+		TreeMap<K,V> result = new TreeMap<K,V>(c);
+		result.buildFromSorted(entries, n);
+		assert result.wellFormed() : "invariant broken after fromSorted";
+		return result;
+	}
+	
+	/**
+	 * Create a balanced tree map from parallel arrays of keys and values
+	 * where the keys are in increasing order, in linear time.
+	 * @param c comparator to use, if null then the natural ordering of keys is used
+	 * @param keys keys in strictly increasing order, must not be null
+	 * @param values values for each key, must be the same length as keys
+	 * @return new map with these entries
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 * or the arrays have different lengths
+	 */
+	public static <K,V> TreeMap<K,V> fromSorted(Comparator<K> c, K[] keys, V[] values) {
+		if (keys.length != values.length) throw new IllegalArgumentException("keys and values differ in length");
+		TreeMap<K,V> result = new TreeMap<K,V>(c);
+		DefaultEntry<K,V> flyweight = new DefaultEntry<K,V>(null, null);
+		result.buildFromSorted(new Iterator<Entry<K,V>>() {
+			private int i = 0;
+			public boolean hasNext() { return i < keys.length; }
+			public Entry<K,V> next() {
+				flyweight.key = keys[i];
+				flyweight.value = values[i];
+				++i;
+				return flyweight;
+			}
+		}, keys.length);
+		assert result.wellFormed() : "invariant broken after fromSorted";
+		return result;
+	}
+	
+	/**
+	 * Replace the contents of this map with a perfectly balanced tree
+	 * built from the given entries, which must be in increasing order.
+	 * The keys are checked using one comparison per adjacent pair.
+	 * @param it iterator over at least n entries
+	 * @param n number of entries to use
+	 */
+	private void buildFromSorted(Iterator<? extends Entry<? extends K, ? extends V>> it, int n) {
+		// nodes on the deepest level (if it is not full) are colored red
+		int redLevel = 0;
+		for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+			++redLevel;
+		}
+		if (dummy.left != null) dropTree();
+		Builder b = new Builder(it, redLevel);
+		Node<K,V> r = b.build(0, 0, n - 1);
+		dummy.left = r;
+		if (r != null) r.parent = dummy;
+		finger = null;
+		numItems = n;
+		refillFilter();
+		if (index != null) index.refill();
+		version++;
+	}
+	
+	/**
+	 * Replace the tree with a perfectly balanced one using the given nodes,
+	 * which must already be in strictly increasing key order.
+	 * @param nodes nodes to link together
+	 */
+	private void relinkBalanced(List<Node<K,V>> nodes) {
+		int n = nodes.size();
+		int redLevel = 0;
+		for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+			++redLevel;
+		}
+		Builder b = new Builder(nodes.iterator(), redLevel);
+		b.relink = true;
+		Node<K,V> r = b.build(0, 0, n - 1);
+		dummy.left = r;
+		if (r != null) r.parent = dummy;
+		finger = null;
+		numItems = n;
+		refillFilter();
+		if (index != null) index.refill();
+		version++;
+	}
+	
+	private class Builder {
+		private final Iterator<? extends Entry<? extends K, ? extends V>> entries;
+		private final int redLevel;
+		private K previous;
+		boolean relink; // entries are nodes (known to be in order) to be reused
+		
+		Builder(Iterator<? extends Entry<? extends K, ? extends V>> it, int rl) {
+			entries = it;
+			redLevel = rl;
+		}
+		
+		/**
+		 * Build a balanced subtree of the entries with indices lo..hi,
+		 * consuming them from the iterator in order.
+		 */
+		Node<K,V> build(int depth, int lo, int hi) {
+			if (hi < lo) return null;
+			int mid = (lo + hi) >>> 1;
+			Node<K,V> left = build(depth + 1, lo, mid - 1);
+			Node<K,V> r;
+			if (relink) {
+				@SuppressWarnings("unchecked")
+				Node<K,V> existing = (Node<K,V>)entries.next();
+				r = existing;
+			} else {
+				Entry<? extends K, ? extends V> e = entries.next();
+				K k = e.getKey();
+				if (k == null) throw new NullPointerException("null key");
+				if (previous != null && comparator.compare(previous, k) >= 0) {
+					throw new IllegalArgumentException("keys are not in increasing order: " + previous + ", " + k);
+				}
+				previous = k;
+				r = newNode(k, e.getValue());
+			}
+			r.red = depth == redLevel;
+			r.left = left;
+			if (left != null) left.parent = r;
+			r.right = build(depth + 1, mid + 1, hi);
+			if (r.right != null) r.right.parent = r;
+			update(r);
+			return r;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	private K asKey(Object x) {
 		if (dummy.left == null || x == null) return null;
+		if (x.getClass() == admittedClass) return (K)x;
 		try {
 			comparator.compare(dummy.left.key,(K)x);
 			comparator.compare((K)x,dummy.left.key);
+			admittedClass = x.getClass();
 			return (K)x;
 		} catch (ClassCastException ex) {
 			return null;
@@ -176,25 +558,335 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 	 * Find the node for a given key.  Return null if the key isn't present
 	 * in the tree.  This helper method assumes that the tree is well formed,
 	 * but doesn't check that.
+	 * The probe is checked against the comparator once (see {@link #asKey}),
+	 * and then the descent uses exactly one comparison per level.
+	 * The finger is not moved, so this may be used by invariant checks.
 	 * @param o object treated as a key.
 	 * @return node whose data is equal to o, 
 	 * or null if no nodes in the tree have this property.
 	 */
 	private Node<K, V> findKey(Object o){
+		return findKey(o, false);
+	}
+	
+	/**
+	 * Find the node for a given key, as {@link #findKey(Object)} does.
+	 * @param o object treated as a key
+	 * @param moveFinger whether the search is made for the client,
+	 * and so moves the finger (if finger search is on)
+	 * @return node with this key, or null if there is none
+	 */
+	private Node<K, V> findKey(Object o, boolean moveFinger){
 		K key = asKey(o);
 		if (key == null) return null;
 		
 		Node<K, V> i = dummy.left;
-		while (i != null) {
-			int c = comparator.compare(key, asKey(i.key));
-			if (c == 0) return i;
-			if (c > 0) i = i.right;
-			else {
-				i = i.left;
+		try {
+			if (finger != null) i = climbFromFinger(key);
+			Node<K, V> last = null;
+			while (i != null) {
+				int c = comparator.compare(key, i.key);
+				if (c == 0) break;
+				last = i;
+				i = c < 0 ? i.left : i.right;
+			}
+			if (moveFinger && fingerSearch) finger = i == null ? last : i;
+		} catch (ClassCastException ex) {
+			// a key of an admitted class may still be incomparable (e.g. generic wrappers)
+			return null;
+		}
+		
+		return i;
+	}
+	
+	/**
+	 * Return the node from which a search for the key should descend,
+	 * found by climbing from the finger only until a subtree whose range
+	 * must contain the key is reached (as {@link #insertSorted} does,
+	 * but in either direction).  When the key is near the finger
+	 * (d keys away), this takes O(log d) steps.
+	 * @param k key to search for, must not be null
+	 * @return node in the tree to descend from
+	 */
+	private Node<K, V> climbFromFinger(K k) {
+		Node<K, V> r = finger;
+		int c = comparator.compare(k, r.key);
+		if (c == 0) return r;
+		while (r != dummy.left) {
+			Node<K, V> p = r.parent;
+			// the subtree of r covers everything between the finger and p
+			if (c > 0 ? r == p.left : r == p.right) {
+				int pc = comparator.compare(k, p.key);
+				if (pc == 0) return p;
+				if (pc < 0 == c > 0) break;
+			}
+			r = p;
+		}
+		return r;
+	}
+	
+	/**
+	 * Set whether searches start from the node found by the previous search
+	 * (the finger) rather than from the root.  When consecutive searches
+	 * are for nearby keys, each then takes time logarithmic in the distance
+	 * between the keys rather than in the size of the map.
+	 * Searches by get, containsKey and put move the finger;
+	 * removing a node or rebuilding the tree forgets it.
+	 * Since reads then change the map's state, a map with finger search
+	 * should not be read by several threads at once.  Off by default.
+	 * @param on whether to use finger search
+	 */
+	public void setFingerSearch(boolean on) {
+		fingerSearch = on;
+		finger = null;
+	}
+	
+	/**
+	 * Return whether finger search is used.
+	 * @return whether searches start from the previous search's node
+	 * @see #setFingerSearch(boolean)
+	 */
+	public boolean isFingerSearch() {
+		return fingerSearch;
+	}
+	
+	/**
+	 * Find the node for a lookup by get or containsKey,
+	 * asking the miss filter first if there is one.
+	 * @param o object treated as a key
+	 * @return node with this key, or null if there is none
+	 */
+	private Node<K, V> lookup(Object o) {
+		if (filter != null) {
+			K key = asKey(o);
+			if (key == null) return null;
+			if (!filter.mightContain(key)) {
+				filter.record(false, false);
+				return null;
+			}
+			Node<K, V> n = index != null ? findIndexed(key) : splaying() ? splayFind(key) : findKey(key, true);
+			filter.record(true, n != null);
+			return n;
+		}
+		if (index != null) return findIndexed(o);
+		return splaying() ? splayFind(o) : findKey(o, true);
+	}
+	
+	/**
+	 * Set the filter that get and containsKey ask before searching,
+	 * so that most lookups of absent keys take constant time instead
+	 * of a descent through the tree.  The map fills the filter with its
+	 * keys (forgetting whatever it held) and keeps it up to date as entries
+	 * are added and removed, enlarging it when the map outgrows its capacity.
+	 * Snapshots do not have a filter.
+	 * @param f filter whose hash function agrees with this map's comparator,
+	 * or null to stop using a filter
+	 */
+	public void setMissFilter(CountingBloomFilter<? super K> f) {
+		assert wellFormed() : "invariant broken at start of setMissFilter";
+		filter = f;
+		refillFilter();
+		assert wellFormed() : "invariant broken at end of setMissFilter";
+	}
+	
+	/**
+	 * Return the filter that get and containsKey ask before searching.
+	 * @return the miss filter, or null if there is none
+	 * @see #setMissFilter(CountingBloomFilter)
+	 */
+	public CountingBloomFilter<? super K> getMissFilter() {
+		return filter;
+	}
+	
+	/**
+	 * Refill the miss filter (if any) with the current keys,
+	 * making it larger first if the map has outgrown it.
+	 */
+	private void refillFilter() {
+		if (filter == null) return;
+		if (numItems > filter.capacity()) filter.resize(Math.max(numItems, filter.capacity() * 2));
+		else filter.clear();
+		for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+			filter.add(n.key);
+		}
+	}
+	
+	
+	/// Hash index
+	
+	public static final float DEFAULT_INDEX_LOAD_FACTOR = 0.5f;
+	
+	/**
+	 * Keep a hash table from keys to nodes beside the tree, so that
+	 * get, containsKey and entrySet().contains take expected constant time
+	 * rather than a descent through the tree.  Iteration, navigation and range
+	 * operations still use the tree.  The map keeps the table up to date as
+	 * entries are added and removed.  Snapshots do not have a hash index.
+	 * @param hash hash function that agrees with this map's comparator
+	 * (keys that compare equal must have equal hashes), or null to drop the index
+	 * @param loadFactor largest fraction of the table's slots that may be full,
+	 * strictly between 0 and 1; lower values take more memory (see {@link #hashIndexBytes()})
+	 * but make lookups shorter
+	 */
+	public void setHashIndex(ToIntFunction<? super K> hash, float loadFactor) {
+		assert wellFormed() : "invariant broken at start of setHashIndex";
+		if (hash == null) {
+			index = null;
+			return;
+		}
+		if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("load factor must be between 0 and 1: " + loadFactor);
+		if (readOnly) throw new UnsupportedOperationException("snapshot is read-only");
+		index = new HashIndex(hash, loadFactor);
+		index.refill();
+		assert wellFormed() : "invariant broken at end of setHashIndex";
+	}
+	
+	/**
+	 * Keep a hash table from keys to nodes beside the tree,
+	 * using the default load factor.
+	 * @param hash hash function that agrees with this map's comparator, or null to drop the index
+	 * @see #setHashIndex(ToIntFunction, float)
+	 */
+	public void setHashIndex(ToIntFunction<? super K> hash) {
+		setHashIndex(hash, DEFAULT_INDEX_LOAD_FACTOR);
+	}
+	
+	/**
+	 * Return whether this map keeps a hash index.
+	 * @return whether point lookups use a hash table
+	 */
+	public boolean hasHashIndex() {
+		return index != null;
+	}
+	
+	/**
+	 * Return the memory taken by the hash index: each slot holds a reference
+	 * and an int hash, and references are counted as four bytes
+	 * (as with compressed references).
+	 * @return approximate size of the hash index in bytes, or 0 if there is none
+	 */
+	public long hashIndexBytes() {
+		return index == null ? 0 : (long) index.nodes.length * (Integer.BYTES + 4);
+	}
+	
+	/**
+	 * Find the node with the given key using the hash index.
+	 * @param o object treated as a key
+	 * @return node with this key, or null if there is none
+	 */
+	private Node<K, V> findIndexed(Object o) {
+		K key = asKey(o);
+		if (key == null) return null;
+		try {
+			return index.find(key);
+		} catch (ClassCastException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * An open-addressing table with linear probing from keys to the nodes
+	 * holding them.  Each slot also keeps the key's (spread) hash, so that keys are
+	 * compared only when hashes match.  Removal shifts later entries of a probe
+	 * sequence back into the gap, so no tombstones are needed.  Since unlink
+	 * moves nodes rather than copying entries between them, a node stays
+	 * valid in the table until its entry is removed.
+	 */
+	private class HashIndex {
+		final ToIntFunction<? super K> hash;
+		final float loadFactor;
+		Node<K,V>[] nodes;
+		int[] hashes;
+		int count;
+		
+		HashIndex(ToIntFunction<? super K> h, float lf) {
+			hash = h;
+			loadFactor = lf;
+		}
+		
+		/**
+		 * Replace the table with an empty one large enough for n keys.
+		 */
+		@SuppressWarnings("unchecked")
+		void allocate(int n) {
+			int cap = 16;
+			while (cap * loadFactor < n && cap < 1 << 30) cap <<= 1;
+			nodes = (Node<K,V>[]) new Node<?,?>[cap];
+			hashes = new int[cap];
+			count = 0;
+		}
+		
+		/**
+		 * Fill the table with the nodes now in the tree.
+		 */
+		void refill() {
+			allocate(numItems);
+			for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+				insert(n, spread(n.key));
+			}
+		}
+		
+		int spread(K k) {
+			int h = hash.applyAsInt(k) * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+		
+		void add(Node<K,V> n) {
+			if (count + 1 > nodes.length * loadFactor) {
+				Node<K,V>[] oldNodes = nodes;
+				int[] oldHashes = hashes;
+				allocate(count * 2); // a number of keys, so this doubles the table
+				for (int i=0; i < oldNodes.length; ++i) {
+					if (oldNodes[i] != null) insert(oldNodes[i], oldHashes[i]);
+				}
 			}
+			insert(n, spread(n.key));
+		}
+		
+		private void insert(Node<K,V> n, int h) {
+			int mask = nodes.length - 1;
+			int i = h & mask;
+			while (nodes[i] != null) i = (i + 1) & mask;
+			nodes[i] = n;
+			hashes[i] = h;
+			++count;
+		}
+		
+		Node<K,V> find(K k) {
+			int h = spread(k);
+			int mask = nodes.length - 1;
+			for (int i = h & mask; nodes[i] != null; i = (i + 1) & mask) {
+				if (hashes[i] == h && comparator.compare(k, nodes[i].key) == 0) return nodes[i];
+			}
+			return null;
+		}
+		
+		/**
+		 * Put a copy of a node (see {@link TreeMap#own}) in its slot.
+		 */
+		void replace(Node<K,V> old, Node<K,V> n) {
+			int mask = nodes.length - 1;
+			int i = spread(old.key) & mask;
+			while (nodes[i] != old) i = (i + 1) & mask;
+			nodes[i] = n;
 		}
 		
-		return i; // TODO (non-recursive is fine)
+		void remove(Node<K,V> n) {
+			int mask = nodes.length - 1;
+			int i = spread(n.key) & mask;
+			while (nodes[i] != n) i = (i + 1) & mask;
+			// move back any later entry whose home slot is not between the gap and itself
+			for (int j = (i + 1) & mask; nodes[j] != null; j = (j + 1) & mask) {
+				int home = hashes[j] & mask;
+				if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+					nodes[i] = nodes[j];
+					hashes[i] = hashes[j];
+					i = j;
+				}
+			}
+			nodes[i] = null;
+			--count;
+		}
 	}
 
 	// TODO: many methods to override here:
@@ -212,29 +904,31 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 	@Override // implementation
 	public boolean containsKey(Object o) {
 		assert wellFormed() : "wellFormed failed at the start of containsKey";
-		if (findKey(o) == null) return false;
-		return true;
+		return lookup(o) != null;
 	}
 	
 	@Override // efficiency
 	public V get(Object o){
-		V i = null;
-		if (findKey(o) != null) {
-			i = findKey(o).getValue();
-		}
-		return i;
+		assert wellFormed() : "wellFormed failed at the start of get";
+		Node<K, V> n = lookup(o);
+		return n == null ? null : n.value;
 	}
 	
 	@Override // efficiency
 	public void clear() {
+		if (readOnly) throw new UnsupportedOperationException("snapshot is read-only");
 		if (numItems == 0) return;
-		dummy.left = null;
+		// no need to copy nodes that are about to be dropped: they pass to the snapshot (if any)
+		dropTree();
+		finger = null;
 		numItems = 0;
+		if (filter != null) filter.clear();
+		if (index != null) index.allocate(0);
 		version++;
 	}
 	
 	private Node<K, V> getNode(Object o){
-		return findKey(o);
+		return index != null ? findIndexed(o) : findKey(o, true);
 	}
 	
 	private Node<K, V> firstInTree(Node<K, V> r){
@@ -244,313 +938,2673 @@ public class TreeMap<K,V>  extends AbstractMap<K,V> {
 		return r;
 	}
 	
-	private Node<K, V> doPut(Node<K, V> r, Node<K, V> p, K k, V v) {
-		if (r == null) { 
-			r = new Node<K, V>(k, v);
-			r.parent = p;
-			return r;
-		}
-		
-		if (comparator.compare(r.key, k) < 0) {
-			r.right = doPut(r.right, r, k, v);
-		}
-		else {
-			r.left = doPut(r.left, r, k, v);
-		}
-		
-		return r;
-	}
-	
-	
 	@Override // implementation
 	public V put(K k, V v) {
 		assert wellFormed() : "wellFormed failed at start of put";
 		if (k == null) throw new NullPointerException();
-		V val = null;
+		checkWritable();
 		
-		if (containsKey(k)) {
-			val = findKey(k).getValue();
-			findKey(k).setValue(v);
-		}
-		else {
-			dummy.left = doPut(dummy.left, dummy, k, v);
-			version++;
-			numItems++;
+		// a single descent finds either the node to update or where to attach
+		Node<K, V> r = finger == null ? dummy.left : climbFromFinger(k);
+		Node<K, V> p = r == null ? dummy : r.parent;
+		int c = -1;
+		while (r != null) {
+			c = comparator.compare(k, r.key);
+			if (c == 0) {
+				r = own(r);
+				V val = r.value;
+				r.value = v;
+				if (monoid != null) updatePath(r);
+				if (fingerSearch) finger = r;
+				if (splaying()) splay(r);
+				assert wellFormed() : "wellFormed failed at end of put";
+				return val;
+			}
+			p = r;
+			r = c < 0 ? r.left : r.right;
 		}
 		
+		r = attach(p, c, k, v);
+		if (fingerSearch) finger = r;
+		if (splaying()) splay(r);
 		
 		assert wellFormed() : "wellFormed failed at end of put";
-		return val;
+		return null;
 	}
 	
-	private Node<K, V> doRemove(Node<K, V> r, Node<K, V> p, Node<K, V> target){
-		if (r == target) {
-			if (r.left == null) {
-				if (r.right != null) {
-					r.right.parent = p;
-				}
-				return r.right;
+	/**
+	 * Link a new node in as a child of p, rebalance and record the modification.
+	 * @param p node (or the dummy) that has no child on the required side
+	 * @param c result of comparing the new key with p's key (negative for left)
+	 * @param k key for the new node
+	 * @param v value for the new node
+	 * @return the new node
+	 */
+	private Node<K, V> attach(Node<K, V> p, int c, K k, V v) {
+		p = own(p);
+		Node<K, V> n = newNode(k, v);
+		n.parent = p;
+		if (c < 0) p.left = n;
+		else p.right = n;
+		if (monoid != null) n.agg = monoid.of(v);
+		updatePath(p);
+		if (balancing == Balancing.RED_BLACK) fixAfterInsert(n);
+		version++;
+		numItems++;
+		if (filter != null) {
+			if (numItems > filter.capacity()) refillFilter();
+			else filter.add(k);
+		}
+		if (index != null) index.add(n);
+		return n;
+	}
+	
+	/**
+	 * Copy all entries of the given map into this one.
+	 * If the map is sorted with the same ordering as this map, its entries are
+	 * merged in with one of two strategies:
+	 * when it is large compared to this map, the two sorted sequences are merged
+	 * in one linear pass and the tree is rebuilt balanced;
+	 * otherwise each entry is inserted by walking up from where the previous one went.
+	 * Other maps are copied one entry at a time.
+	 * @param m map to copy from, must not be null
+	 */
+	@Override // efficiency
+	public void putAll(Map<? extends K, ? extends V> m) {
+		assert wellFormed() : "invariant broken at start of putAll";
+		if (m == this || m.isEmpty()) return;
+		checkWritable();
+		if (!(m instanceof SortedMap<?,?>) || !Objects.equals(((SortedMap<?,?>)m).comparator(), comparator())) {
+			super.putAll(m);
+			return;
+		}
+		int n = m.size();
+		if (numItems == 0) {
+			buildFromSorted(m.entrySet().iterator(), n);
+		} else if ((long)n * (32 - Integer.numberOfLeadingZeros(numItems)) >= numItems) {
+			mergeFromSorted(m.entrySet().iterator(), n);
+		} else {
+			insertSorted(m.entrySet().iterator());
+		}
+		assert wellFormed() : "invariant broken at end of putAll";
+	}
+	
+	/**
+	 * Merge sorted entries with the existing nodes in one pass,
+	 * then relink everything into a balanced tree.
+	 * Existing nodes are reused so that their entries stay live
+	 * (those shared with a snapshot are copied, since all are relinked).
+	 * @param it entries in strictly increasing key order
+	 * @param n number of entries
+	 */
+	private void mergeFromSorted(Iterator<? extends Entry<? extends K, ? extends V>> it, int n) {
+		List<Node<K, V>> merged = new ArrayList<>(numItems + n);
+		Node<K, V> a = lowestNode();
+		Entry<? extends K, ? extends V> b = it.hasNext() ? it.next() : null;
+		while (a != null || b != null) {
+			int c;
+			if (a == null) c = 1;
+			else if (b == null) c = -1;
+			else c = comparator.compare(a.key, b.getKey());
+			if (c <= 0) {
+				Node<K, V> x = a.owner == owner ? a : copyNode(a);
+				if (c == 0) x.value = b.getValue();
+				merged.add(x);
+				a = successor(a);
+				if (a == dummy) a = null;
+			} else {
+				if (b.getKey() == null) throw new NullPointerException("null key");
+				merged.add(newNode(b.getKey(), b.getValue()));
 			}
-			if (r.right == null) {
-				if (r.left != null) {
-					r.left.parent = p;
+			if (c >= 0) b = it.hasNext() ? it.next() : null;
+		}
+		relinkBalanced(merged);
+	}
+	
+	/**
+	 * Insert entries in increasing key order.  Each search starts from the node
+	 * of the previous key and climbs only until it reaches a subtree whose
+	 * range contains the new key.
+	 * @param it entries in increasing key order
+	 */
+	private void insertSorted(Iterator<? extends Entry<? extends K, ? extends V>> it) {
+		Node<K, V> last = null;
+		while (it.hasNext()) {
+			Entry<? extends K, ? extends V> e = it.next();
+			K k = e.getKey();
+			if (k == null) throw new NullPointerException("null key");
+			Node<K, V> r = dummy.left;
+			if (last != null) {
+				// every key in the subtree of r is at least the previous key
+				r = last;
+				while (r != dummy.left) {
+					Node<K, V> p = r.parent;
+					if (r == p.left && comparator.compare(k, p.key) < 0) break;
+					r = p;
 				}
-				return r.left;
-			}
-			
-			Node<K, V> t = firstInTree(r.right);
-			t.right = doRemove(r.right, r, t);
-			t.left = r.left;
-			t.parent = p;
-			r = t;
-			if (r.right != null) {
-				r.right.parent = r;
-			}
-			if (r.left != null) {
-				r.left.parent = r;
 			}
-		}
-		else if (r != null){
-			if (comparator.compare(target.key, r.key) < 0) {
-				r.left = doRemove(r.left, r, target);
+			Node<K, V> p = r == null ? dummy : r.parent;
+			int c = -1;
+			while (r != null) {
+				c = comparator.compare(k, r.key);
+				if (c == 0) break;
+				p = r;
+				r = c < 0 ? r.left : r.right;
 			}
-			else {
-				r.right = doRemove(r.right, r, target);
+			if (r != null) {
+				r = own(r);
+				r.value = e.getValue();
+				if (monoid != null) updatePath(r);
+				last = r;
+			} else {
+				last = attach(p, c, k, e.getValue());
 			}
 		}
-
-		return r;
 	}
 	
-	@Override // implementation
-	public V remove(Object o) {
-		assert wellFormed() : "wellFormed failed in remove(main) start";
-		if (findKey(o) == null) return null;
-		
-		Node<K, V> i = getNode(o);
-		dummy.left = doRemove(dummy.left, dummy, i);
-		numItems--;
-		version++;
-		
-		assert wellFormed() : "wellFormed failed in remove(main) end";
-		return i.getValue();
+	
+	/// Red-black helpers
+	
+	private static boolean isRed(Node<?,?> n) {
+		return n != null && n.red;
 	}
-
 	
-	private volatile Set<Entry<K,V>> entrySet;
+	private static int sizeOf(Node<?,?> n) {
+		return n == null ? 0 : n.size;
+	}
 	
-	@Override // required
-	public Set<Entry<K, V>> entrySet() {
+	private Object aggOf(Node<K,V> n) {
+		return n == null ? monoid.identity() : n.agg;
+	}
+	
+	/**
+	 * Recompute the size (and aggregate, if kept) of a node from its children.
+	 * @param n node in the tree, must not be null or the dummy
+	 */
+	private void update(Node<K,V> n) {
+		n.size = sizeOf(n.left) + sizeOf(n.right) + 1;
+		if (monoid != null) n.agg = monoid.combine(monoid.combine(aggOf(n.left), monoid.of(n.value)), aggOf(n.right));
+	}
+	
+	/**
+	 * Recompute the size and aggregate of the given node and all its ancestors.
+	 * @param n node to start at, may be the dummy (which is not changed)
+	 */
+	private void updatePath(Node<K,V> n) {
+		for (; n != dummy; n = n.parent) {
+			update(n);
+		}
+	}
+	
+	/**
+	 * Change the value of an entry of this map through its setValue method.
+	 * A node shared with a snapshot is copied first (see {@link #own}).
+	 * @param n node made by this map, not since copied, must not be null
+	 * @param v new value
+	 * @return old value
+	 * @throws UnsupportedOperationException if the node is shared with
+	 * a snapshot but no longer in this map's tree
+	 */
+	private V setValueOf(Node<K,V> n, V v) {
+		if (n.owner != owner && !inTree(n)) throw new UnsupportedOperationException("entry belongs to a snapshot");
+		n = own(n);
+		V old = n.value;
+		n.value = v;
+		if (monoid != null) updatePath(n);
+		return old;
+	}
+	
+	/**
+	 * Return a new node for this map's tree.
+	 */
+	private Node<K,V> newNode(K k, V v) {
+		Node<K,V> n = new Node<K,V>(k, v);
+		n.owner = owner;
+		return n;
+	}
+	
+	/**
+	 * Let go of all the nodes and start a new empty tree.  The old nodes
+	 * keep their links (snapshots may still use them),
+	 * but their entries no longer change this map.
+	 */
+	private void dropTree() {
+		if (owner != null) {
+			owner.map = null;
+			owner = new Owner<K,V>(this);
+		}
+		if (dummy.left != null) {
+			dummy.left.parent = null; // detach old nodes from the map
+			dummy.left = null;
+		}
+	}
+	
+	/**
+	 * Return whether a node is in this map's tree, by climbing to the top.
+	 * @param n node made by this map, must not be null
+	 * @return whether the climb reaches this map's dummy
+	 */
+	private boolean inTree(Node<K,V> n) {
+		while (n != null && n != dummy) n = n.parent;
+		return n == dummy;
+	}
+	
+	/**
+	 * Replace the child link that points to u with one that points to v.
+	 * This works when u is the root, since the root is the left child of the dummy.
+	 * @param u node currently in the tree, must not be null
+	 * @param v node to take its place, may be null
+	 */
+	private void replaceChild(Node<K,V> u, Node<K,V> v) {
+		Node<K,V> p = u.parent;
+		if (p.left == u) p.left = v;
+		else p.right = v;
+		if (v != null) v.parent = p;
+	}
+	
+	/**
+	 * Rotate the right child of x above it.
+	 * @param x node in the tree whose parent and itself this map owns
+	 */
+	private void rotateLeft(Node<K,V> x) {
+		Node<K,V> y = own(x.right);
+		x.right = y.left;
+		if (y.left != null) y.left.parent = x;
+		replaceChild(x, y);
+		y.left = x;
+		x.parent = y;
+		update(x);
+		update(y);
+	}
+	
+	/**
+	 * Rotate the left child of x above it.
+	 * @param x node in the tree whose parent and itself this map owns
+	 */
+	private void rotateRight(Node<K,V> x) {
+		Node<K,V> y = own(x.left);
+		x.left = y.right;
+		if (y.right != null) y.right.parent = x;
+		replaceChild(x, y);
+		y.right = x;
+		x.parent = y;
+		update(x);
+		update(y);
+	}
+	
+	/**
+	 * Rotate a node above its parent.
+	 * @param x node in the tree, must not be the root
+	 */
+	private void rotateUp(Node<K,V> x) {
+		if (x == x.parent.left) rotateRight(x.parent);
+		else rotateLeft(x.parent);
+	}
+	
+	
+	/// Splay helpers
+	
+	/**
+	 * Return whether accesses should splay: only a splay tree
+	 * that is not a snapshot may.
+	 */
+	private boolean splaying() {
+		return balancing == Balancing.SPLAY && !readOnly;
+	}
+	
+	/**
+	 * Move a node to the root by rotations, two levels at a time
+	 * (rotating the parent first when both are on the same side).
+	 * The rotations keep sizes and aggregates up to date; the version
+	 * does not change, since the entries and their order do not.
+	 * The path to the node is copied first if it is shared with a snapshot.
+	 * @param x node in the tree, or null (in which case nothing is done)
+	 * @return the node splayed (a copy of x, if x was shared), or null
+	 */
+	private Node<K,V> splay(Node<K,V> x) {
+		if (x == null) return null;
+		x = own(x);
+		while (x.parent != dummy) {
+			Node<K,V> p = x.parent;
+			Node<K,V> g = p.parent;
+			if (g != dummy && (x == p.left) == (p == g.left)) rotateUp(p);
+			else if (g != dummy) rotateUp(x);
+			rotateUp(x);
+		}
+		return x;
+	}
+	
+	/**
+	 * Find the node for a key (as {@link #findKey} does) and splay it to the root;
+	 * if the key is absent, splay the last node visited instead.
+	 * @param o object treated as a key
+	 * @return node with this key, or null if none
+	 */
+	private Node<K, V> splayFind(Object o) {
+		K key = asKey(o);
+		if (key == null) return null;
+		Node<K, V> r = dummy.left;
+		Node<K, V> last = null;
+		try {
+			while (r != null) {
+				int c = comparator.compare(key, r.key);
+				if (c == 0) break;
+				last = r;
+				r = c < 0 ? r.left : r.right;
+			}
+		} catch (ClassCastException ex) {
+			return null;
+		}
+		Node<K, V> x = splay(r == null ? last : r);
+		return r == null ? null : x;
+	}
+	
+	
+	/// Red-black fix-ups
+	
+	/**
+	 * Restore the red-black properties after a new leaf has been linked in.
+	 * The new node's ancestors are this map's own; an uncle changed is copied
+	 * if it is shared with a snapshot.
+	 * @param x newly added node
+	 */
+	private void fixAfterInsert(Node<K,V> x) {
+		x.red = true;
+		while (x != dummy.left && x.parent.red) {
+			Node<K,V> p = x.parent;
+			Node<K,V> g = p.parent;
+			if (p == g.left) {
+				Node<K,V> u = g.right;
+				if (isRed(u)) {
+					u = own(u);
+					p.red = u.red = false;
+					g.red = true;
+					x = g;
+				} else {
+					if (x == p.right) {
+						rotateLeft(p);
+						x = p;
+						p = x.parent;
+					}
+					p.red = false;
+					g.red = true;
+					rotateRight(g);
+				}
+			} else {
+				Node<K,V> u = g.left;
+				if (isRed(u)) {
+					u = own(u);
+					p.red = u.red = false;
+					g.red = true;
+					x = g;
+				} else {
+					if (x == p.left) {
+						rotateRight(p);
+						x = p;
+						p = x.parent;
+					}
+					p.red = false;
+					g.red = true;
+					rotateLeft(g);
+				}
+			}
+		}
+		dummy.left.red = false;
+	}
+	
+	/**
+	 * Restore the red-black properties after a black node was unlinked
+	 * from under xp, leaving x (possibly null) one black short.
+	 * Siblings (and their children) are copied before they are changed
+	 * if they are shared with a snapshot.
+	 * @param x node that is short one black, may be null
+	 * @param xp parent of x, owned by this map
+	 */
+	private void fixAfterRemove(Node<K,V> x, Node<K,V> xp) {
+		while (x != dummy.left && !isRed(x)) {
+			if (x == xp.left) {
+				Node<K,V> w = own(xp.right);
+				if (w.red) {
+					w.red = false;
+					xp.red = true;
+					rotateLeft(xp);
+					w = own(xp.right);
+				}
+				if (!isRed(w.left) && !isRed(w.right)) {
+					w.red = true;
+					x = xp;
+					xp = x.parent;
+				} else {
+					if (!isRed(w.right)) {
+						own(w.left).red = false;
+						w.red = true;
+						rotateRight(w);
+						w = own(xp.right);
+					}
+					w.red = xp.red;
+					xp.red = false;
+					own(w.right).red = false;
+					rotateLeft(xp);
+					x = dummy.left;
+				}
+			} else {
+				Node<K,V> w = own(xp.left);
+				if (w.red) {
+					w.red = false;
+					xp.red = true;
+					rotateRight(xp);
+					w = own(xp.left);
+				}
+				if (!isRed(w.left) && !isRed(w.right)) {
+					w.red = true;
+					x = xp;
+					xp = x.parent;
+				} else {
+					if (!isRed(w.left)) {
+						own(w.right).red = false;
+						w.red = true;
+						rotateLeft(w);
+						w = own(xp.left);
+					}
+					w.red = xp.red;
+					xp.red = false;
+					own(w.left).red = false;
+					rotateRight(xp);
+					x = dummy.left;
+				}
+			}
+		}
+		if (x != null) own(x).red = false;
+	}
+	
+	/**
+	 * Remove the given node from the tree.
+	 * The node's successor (if needed) is moved into its place rather than
+	 * copying data, so that entries returned earlier keep their identity.
+	 * @param z node in the tree owned by this map, must not be null
+	 */
+	private void unlink(Node<K,V> z) {
+		Node<K,V> x, xp;
+		boolean removedBlack = !z.red;
+		if (z.left == null) {
+			x = z.right;
+			xp = z.parent;
+			replaceChild(z, x);
+		} else if (z.right == null) {
+			x = z.left;
+			xp = z.parent;
+			replaceChild(z, x);
+		} else {
+			Node<K,V> y = own(firstInTree(z.right));
+			removedBlack = !y.red;
+			x = y.right;
+			if (y.parent == z) {
+				xp = y;
+			} else {
+				xp = y.parent;
+				replaceChild(y, x);
+				y.right = z.right;
+				y.right.parent = y;
+			}
+			replaceChild(z, y);
+			y.left = z.left;
+			y.left.parent = y;
+			y.red = z.red;
+		}
+		updatePath(xp);
+		if (balancing == Balancing.RED_BLACK && removedBlack) fixAfterRemove(x, xp);
+		z.left = z.right = z.parent = null;
+	}
+	
+	@Override // implementation
+	public V remove(Object o) {
+		assert wellFormed() : "wellFormed failed in remove(main) start";
+		Node<K, V> i = findKey(o);
+		if (i == null) return null;
+		
+		removeNode(i);
+		
+		assert wellFormed() : "wellFormed failed in remove(main) end";
+		return i.getValue();
+	}
+	
+	/**
+	 * Remove a node known to be in the tree and record the modification.
+	 * @param n node in the tree (or one copied since it was reached), must not be null
+	 */
+	private void removeNode(Node<K, V> n) {
+		checkWritable();
+		n = own(relocate(n)); // an iterator's node may have been copied since it was reached
+		if (filter != null) filter.remove(n.key);
+		if (index != null) index.remove(n);
+		unlink(n);
+		n.owner = null;
+		finger = null;
+		numItems--;
+		version++;
+	}
+
+	
+	/// Navigation
+	
+	private Node<K, V> lastInTree(Node<K, V> r){
+		while (r.right != null) {
+			r = r.right;
+		}
+		return r;
+	}
+	
+	/**
+	 * Return the next node in order, using parent pointers only
+	 * (except in a snapshot: see {@link #ancestorOf}).
+	 * @param n node in the tree, must not be null or the dummy
+	 * @return next node, or the dummy if n is the last node
+	 */
+	private Node<K, V> successor(Node<K, V> n) {
+		if (n.right != null) return firstInTree(n.right);
+		if (readOnly) return ancestorOf(n, true);
+		Node<K, V> p = n.parent;
+		while (p != dummy && n == p.right) {
+			n = p;
+			p = p.parent;
+		}
+		return p;
+	}
+	
+	/**
+	 * Return the previous node in order, using parent pointers only
+	 * (except in a snapshot: see {@link #ancestorOf}).
+	 * @param n node in the tree, must not be null or the dummy
+	 * @return previous node, or the dummy if n is the first node
+	 */
+	private Node<K, V> predecessor(Node<K, V> n) {
+		if (n.left != null) return lastInTree(n.left);
+		if (readOnly) return ancestorOf(n, false);
+		Node<K, V> p = n.parent;
+		while (p != dummy && n == p.left) {
+			n = p;
+			p = p.parent;
+		}
+		return p;
+	}
+	
+	/**
+	 * Return the nearest ancestor of a node that has it in its left subtree
+	 * (or in its right subtree, if not after), found by descending from the root.
+	 * A snapshot moves this way, since the parent pointers of the nodes it
+	 * shares belong to the live map; so stepping through a snapshot takes
+	 * O(log n) comparisons where the live map takes amortized constant time.
+	 * @param n node in the tree, must not be null or the dummy
+	 * @param after whether to find the next node in order rather than the previous
+	 * @return the ancestor, or the dummy if there is none
+	 */
+	private Node<K, V> ancestorOf(Node<K, V> n, boolean after) {
+		Node<K, V> r = dummy.left, result = dummy;
+		while (r != n) {
+			if (comparator.compare(n.key, r.key) < 0) {
+				if (after) result = r;
+				r = r.left;
+			} else {
+				if (!after) result = r;
+				r = r.right;
+			}
+		}
+		return result;
+	}
+	
+	private Node<K, V> lowestNode() {
+		return dummy.left == null ? null : firstInTree(dummy.left);
+	}
+	
+	private Node<K, V> highestNode() {
+		return dummy.left == null ? null : lastInTree(dummy.left);
+	}
+	
+	/**
+	 * Return the node with the least key greater than or equal to
+	 * (or strictly greater than, if not inclusive) the given key.
+	 * @param k key to search for, must not be null
+	 * @param inclusive whether a node with an equal key qualifies
+	 * @return the node found, or null if there is none
+	 */
+	private Node<K, V> ceilingNode(K k, boolean inclusive) {
+		if (k == null) throw new NullPointerException();
+		Node<K, V> r = dummy.left, best = null;
+		while (r != null) {
+			int c = comparator.compare(k, r.key);
+			if (c == 0 && inclusive) return r;
+			if (c < 0) {
+				best = r;
+				r = r.left;
+			} else r = r.right;
+		}
+		return best;
+	}
+	
+	/**
+	 * Return the node with the greatest key less than or equal to
+	 * (or strictly less than, if not inclusive) the given key.
+	 * @param k key to search for, must not be null
+	 * @param inclusive whether a node with an equal key qualifies
+	 * @return the node found, or null if there is none
+	 */
+	private Node<K, V> floorNode(K k, boolean inclusive) {
+		if (k == null) throw new NullPointerException();
+		Node<K, V> r = dummy.left, best = null;
+		while (r != null) {
+			int c = comparator.compare(k, r.key);
+			if (c == 0 && inclusive) return r;
+			if (c > 0) {
+				best = r;
+				r = r.right;
+			} else r = r.left;
+		}
+		return best;
+	}
+	
+	private static <K,V> Entry<K,V> exportEntry(Node<K,V> n) {
+		// the fields, not getValue: in a snapshot, the node may have been copied since
+		return n == null ? null : new SimpleImmutableEntry<K,V>(n.key, n.value);
+	}
+	
+	/**
+	 * Return whether a node, read as this map sees it, equals an entry.
+	 * (A node's own equals follows it to the live map's copy, if any.)
+	 * @param n node of this map, must not be null
+	 * @param e entry to compare with, must not be null
+	 */
+	private static boolean matches(Node<?,?> n, Entry<?,?> e) {
+		return Objects.equals(n.key, e.getKey()) && Objects.equals(n.value, e.getValue());
+	}
+	
+	private static <K> K keyOrNull(Node<K,?> n) {
+		return n == null ? null : n.key;
+	}
+	
+	private static <K> K keyOrThrow(Node<K,?> n) {
+		if (n == null) throw new NoSuchElementException("map is empty");
+		return n.key;
+	}
+	
+	@Override // required
+	public Comparator<? super K> comparator() {
+		return comparator == NATURAL ? null : comparator;
+	}
+	
+	@Override // required
+	public K firstKey() {
+		return keyOrThrow(lowestNode());
+	}
+	
+	@Override // required
+	public K lastKey() {
+		return keyOrThrow(highestNode());
+	}
+	
+	@Override // required
+	public Entry<K, V> firstEntry() {
+		return exportEntry(lowestNode());
+	}
+	
+	@Override // required
+	public Entry<K, V> lastEntry() {
+		return exportEntry(highestNode());
+	}
+	
+	@Override // required
+	public Entry<K, V> pollFirstEntry() {
+		Node<K, V> n = lowestNode();
+		if (n == null) return null;
+		removeNode(n);
+		return exportEntry(n);
+	}
+	
+	@Override // required
+	public Entry<K, V> pollLastEntry() {
+		Node<K, V> n = highestNode();
+		if (n == null) return null;
+		removeNode(n);
+		return exportEntry(n);
+	}
+	
+	@Override // required
+	public Entry<K, V> lowerEntry(K key) {
+		return exportEntry(floorNode(key, false));
+	}
+	
+	@Override // required
+	public K lowerKey(K key) {
+		return keyOrNull(floorNode(key, false));
+	}
+	
+	@Override // required
+	public Entry<K, V> floorEntry(K key) {
+		return exportEntry(floorNode(key, true));
+	}
+	
+	@Override // required
+	public K floorKey(K key) {
+		return keyOrNull(floorNode(key, true));
+	}
+	
+	@Override // required
+	public Entry<K, V> ceilingEntry(K key) {
+		return exportEntry(ceilingNode(key, true));
+	}
+	
+	@Override // required
+	public K ceilingKey(K key) {
+		return keyOrNull(ceilingNode(key, true));
+	}
+	
+	@Override // required
+	public Entry<K, V> higherEntry(K key) {
+		return exportEntry(ceilingNode(key, false));
+	}
+	
+	@Override // required
+	public K higherKey(K key) {
+		return keyOrNull(ceilingNode(key, false));
+	}
+	
+
+	/// Snapshots
+	// A snapshot shares the nodes of the tree at the time it was taken, and never changes them.
+	// The live map changes only nodes with its current tag; taking a snapshot gives the map
+	// a new tag, and before the map changes a node shared with a snapshot, it copies the node
+	// and every shared node above it (its ancestors), and links the copies in their place.
+	// So a change copies at most a path from the root: O(log n) nodes in a balanced tree.
+	// The live map sets the parent pointers of shared nodes, so a snapshot finds
+	// its way by descending from the root instead.  A node that has been copied
+	// points forward to its copy, so entries and iterators of the live map keep up.
+	
+	/**
+	 * Return a read-only map with the current contents of this map, in constant time.
+	 * The snapshot and this map share their nodes; when this map next changes a node,
+	 * it copies the node and the nodes above it (in time proportional to its depth),
+	 * so the snapshot's nodes never change.  This map's entries, iterators and views are
+	 * not disturbed, nor are iterating, navigating and aggregating over the snapshot;
+	 * but since a snapshot cannot use parent pointers, each step of an iteration
+	 * over it takes a descent from the root.
+	 * All attempts to change the snapshot throw UnsupportedOperationException;
+	 * the entries it returns cannot be changed.
+	 * @return a read-only snapshot of this map
+	 */
+	public TreeMap<K,V> snapshot() {
+		assert wellFormed() : "invariant broken in snapshot";
+		if (readOnly) return this;
+		if (lastSnapshot != null && lastSnapshot.version == version) return lastSnapshot;
+		TreeMap<K,V> s = new TreeMap<K,V>(false);
+		s.comparator = comparator;
+		s.dummy = new Node<K,V>(null, null);
+		s.dummy.left = dummy.left;
+		s.numItems = numItems;
+		s.version = version;
+		s.balancing = balancing;
+		s.counted = counted;
+		s.monoid = monoid;
+		s.readOnly = true;
+		owner = new Owner<K,V>(this); // all the nodes so far are now shared
+		lastSnapshot = s;
+		assert s.wellFormed() : "invariant broken in new snapshot";
+		return s;
+	}
+	
+	/**
+	 * Return whether this map is a read-only snapshot.
+	 * @return whether this map was returned by {@link #snapshot()}
+	 */
+	public boolean isSnapshot() {
+		return readOnly;
+	}
+	
+	/**
+	 * Throw an exception if this map is a snapshot.
+	 */
+	private void checkWritable() {
+		if (readOnly) throw new UnsupportedOperationException("snapshot is read-only");
+	}
+	
+	/**
+	 * Return the node to change in place of the given one: the node itself
+	 * if this map owns it, or else a copy.  A node shared with a snapshot is copied
+	 * along with its shared ancestors (the ancestors of an owned node are owned),
+	 * bottom up by parent pointers; each copy is linked in where its original was,
+	 * and the children of the copies are given the copies as parents.
+	 * @param n node in this map's tree, or the dummy
+	 * @return the node in its place that this map owns
+	 */
+	private Node<K,V> own(Node<K,V> n) {
+		if (n == dummy || n.owner == owner) return n;
+		Node<K,V> result = null, f = n, child = null, copy = null; // a shared node, and the one below it with its copy
+		do {
+			Node<K,V> c = copyNode(f);
+			if (child != null) {
+				if (c.left == child) c.left = copy;
+				else c.right = copy;
+			}
+			if (c.left != null) c.left.parent = c;
+			if (c.right != null) c.right.parent = c;
+			if (finger == f) finger = c;
+			if (index != null) index.replace(f, c);
+			if (result == null) result = c;
+			child = f;
+			copy = c;
+			f = f.parent;
+		} while (f != dummy && f.owner != owner);
+		if (f.left == child) f.left = copy;
+		else f.right = copy;
+		copy.parent = f;
+		lastSnapshot = null;
+		++generation;
+		return result;
+	}
+	
+	/**
+	 * Make every node in the tree this map's own, as bulk changes need.
+	 * The walk is in pre-order, using parent pointers (and so no stack, however
+	 * deep the tree), so that a node's parent is owned by the time it is reached
+	 * and only the node itself is copied.
+	 */
+	private void ownAll() {
+		Node<K,V> prev = dummy, n = dummy.left;
+		while (n != null && n != dummy) {
+			Node<K,V> next;
+			if (prev == n.parent) {
+				n = own(n);
+				next = n.left != null ? n.left : n.right != null ? n.right : n.parent;
+			} else if (prev == n.left && n.right != null) {
+				next = n.right;
+			} else {
+				next = n.parent;
+			}
+			prev = n;
+			n = next;
+		}
+	}
+	
+	/**
+	 * Return a copy of a node shared with a snapshot, with the same links,
+	 * tagged as this map's own; the caller links it into the tree.
+	 * The node is marked as replaced by the copy.
+	 * @param f node to copy, must not be null
+	 * @return the copy
+	 */
+	private Node<K,V> copyNode(Node<K,V> f) {
+		Node<K,V> c = newNode(f.key, f.value);
+		c.left = f.left;
+		c.right = f.right;
+		c.parent = f.parent;
+		c.red = f.red;
+		c.size = f.size;
+		c.agg = f.agg;
+		f.forward = c;
+		return c;
+	}
+	
+	/**
+	 * Return the node in this map's tree in place of the given node,
+	 * which may have been copied since it was reached.
+	 * @param n node of this map (maybe copied since), or the dummy
+	 * @return the node in the tree now
+	 */
+	private Node<K,V> relocate(Node<K,V> n) {
+		return n.latest();
+	}
+	
+	/**
+	 * Return a node as an entry to hand out: the node itself,
+	 * or for a snapshot (whose nodes are shared) an immutable copy.
+	 */
+	private Entry<K,V> entryOf(Node<K,V> n) {
+		return readOnly ? new SimpleImmutableEntry<K,V>(n.key, n.value) : n;
+	}
+
+
+	/// Sorted files (see MappedTreeMap)
+	
+	/**
+	 * Write the entries of this map, in order, to a file that
+	 * a {@link MappedTreeMap} can open without reading it all.
+	 * The file is created or replaced, and forced to the device before returning.
+	 * It is written under a temporary name and then renamed, so if writing
+	 * fails (for instance on a null value) the old file is left unchanged.
+	 * @param file file to write, must not be null
+	 * @param kc encoding of keys, must not be null
+	 * @param vc encoding of values, must not be null (nor may any value in the map be null)
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeTo(Path file, Codec<? super K> kc, Codec<? super V> vc) throws IOException {
+		assert wellFormed() : "invariant broken in writeTo";
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		MappedTreeMap.write(file, numItems, entrySet().iterator(), kc, vc);
+	}
+
+
+	/// Streams
+	
+	private static final int STREAM_MAGIC = 0x53545244; // "STRD"
+	
+	/**
+	 * Write the entries of this map, in order, to a stream in a compact
+	 * binary form that {@link #importFrom} reads.  Each key is encoded relative
+	 * to the one before it, so keys close together take few bytes.
+	 * The output is buffered here and flushed at the end; the stream is not closed.
+	 * @param out stream to write to, must not be null
+	 * @param kc encoding of keys, must not be null
+	 * @param vc encoding of values, must not be null
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void export(OutputStream out, SortedKeyCodec<K> kc, StreamCodec<? super V> vc) throws IOException {
+		assert wellFormed() : "invariant broken in export";
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(STREAM_MAGIC);
+		StreamCodec.writeVarInt(data, numItems);
+		K previous = null;
+		for (Node<K,V> n = lowestNode(); n != null && n != dummy; n = successor(n)) {
+			kc.write(data, previous, n.key);
+			vc.write(data, n.value);
+			previous = n.key;
+		}
+		data.flush();
+	}
+	
+	/**
+	 * Read a map written by {@link #export}, building a balanced tree
+	 * in linear time as the entries arrive.
+	 * Only the bytes of the map are read; since they are read a few at a time,
+	 * the stream should be buffered.
+	 * @param in stream to read from, must not be null
+	 * @param c comparator the map was written with, if null then the natural ordering of keys is used
+	 * @param kc encoding of keys the map was written with, must not be null
+	 * @param vc encoding of values the map was written with, must not be null
+	 * @return new map with the entries read
+	 * @throws IOException if the stream cannot be read, or does not hold
+	 * a map with keys in increasing order
+	 */
+	public static <K,V> TreeMap<K,V> importFrom(InputStream in, Comparator<K> c, SortedKeyCodec<K> kc, StreamCodec<? extends V> vc) throws IOException {
+		if (kc == null || vc == null) throw new NullPointerException("codec is null");
+		DataInputStream data = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+		if (data.readInt() != STREAM_MAGIC) throw new IOException("not an exported map");
+		int n = StreamCodec.readVarInt(data);
+		if (n < 0) throw new IOException("bad entry count " + n);
+		DefaultEntry<K,V> flyweight = new DefaultEntry<K,V>(null, null);
+		try {
+			return fromSorted(c, new Iterator<Entry<K,V>>() {
+				private int i = 0;
+				public boolean hasNext() { return i < n; }
+				public Entry<K,V> next() {
+					try {
+						flyweight.key = kc.read(data, flyweight.key);
+						flyweight.value = vc.read(data);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+					++i;
+					return flyweight;
+				}
+			}, n);
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("keys out of order", ex);
+		}
+	}
+	
+	
+	/// Lookups for readers without a lock (see StampedTreeMap)
+	// A writer may be changing links while these run, so they do not check
+	// the invariant, and they give up (with ConcurrentModificationException)
+	// if a descent runs longer than any path in the tree could be.
+
+	enum Relation { EQUAL, CEILING, HIGHER, FLOOR, LOWER, FIRST, LAST }
+
+	/**
+	 * Return the (live) entry in the given relation to the key.
+	 * The result is only meaningful if no writer was active;
+	 * the caller must validate that afterwards.
+	 * @param o key to compare against (ignored for FIRST and LAST)
+	 * @param rel which entry to find
+	 * @return entry found, or null if there is none
+	 * @throws ConcurrentModificationException if the descent did not end in time
+	 */
+	@SuppressWarnings("unchecked")
+	Entry<K,V> racyLookup(Object o, Relation rel) {
+		int budget = numItems + 1;
+		Node<K,V> r = dummy.left;
+		if (rel == Relation.FIRST || rel == Relation.LAST) {
+			if (r == null) return null;
+			for (Node<K,V> c = r; c != null; c = rel == Relation.FIRST ? c.left : c.right) {
+				if (--budget < 0) throw new ConcurrentModificationException("torn read");
+				r = c;
+			}
+			return r;
+		}
+		if (rel == Relation.EQUAL) {
+			K k = asKey(o);
+			if (k == null) return null;
+			try {
+				while (r != null) {
+					if (--budget < 0) throw new ConcurrentModificationException("torn read");
+					int c = comparator.compare(k, r.key);
+					if (c == 0) return r;
+					r = c < 0 ? r.left : r.right;
+				}
+			} catch (ClassCastException ex) {
+				return null;
+			}
+			return null;
+		}
+		if (o == null) throw new NullPointerException();
+		K k = (K)o;
+		boolean up = rel == Relation.CEILING || rel == Relation.HIGHER;
+		boolean inclusive = rel == Relation.CEILING || rel == Relation.FLOOR;
+		Node<K,V> best = null;
+		while (r != null) {
+			if (--budget < 0) throw new ConcurrentModificationException("torn read");
+			int c = comparator.compare(k, r.key);
+			if (c == 0 && inclusive) return r;
+			if (up ? c < 0 : c > 0) {
+				best = r;
+				r = up ? r.left : r.right;
+			} else r = up ? r.right : r.left;
+		}
+		return best;
+	}
+
+
+	/// Order statistics (using subtree sizes)
+	
+	/**
+	 * Return the number of keys less than (or, if inclusive, less than or equal to)
+	 * the given key.  The key need not be in the map.
+	 * @param k key to compare against, must not be null
+	 * @param inclusive whether an equal key is counted
+	 * @return number of keys in the map before this key
+	 */
+	private int countBefore(K k, boolean inclusive) {
+		if (k == null) throw new NullPointerException();
+		int result = 0;
+		Node<K, V> r = dummy.left;
+		while (r != null) {
+			int c = comparator.compare(k, r.key);
+			if (c < 0 || (c == 0 && !inclusive)) {
+				r = r.left;
+			} else {
+				result += sizeOf(r.left) + 1;
+				if (c == 0) break;
+				r = r.right;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Return the node at the given position in order.
+	 * @param i index, must be in the range [0,size())
+	 * @return the i'th node (counting from zero)
+	 */
+	private Node<K, V> nodeAt(int i) {
+		if (i < 0 || i >= numItems) throw new IndexOutOfBoundsException("index " + i + " for size " + numItems);
+		Node<K, V> r = dummy.left;
+		for (;;) {
+			int ls = sizeOf(r.left);
+			if (i == ls) return r;
+			if (i < ls) r = r.left;
+			else {
+				i -= ls + 1;
+				r = r.right;
+			}
+		}
+	}
+	
+	/**
+	 * Return the number of keys in the map strictly less than the given key.
+	 * If the key is in the map, this is its position in iteration order.
+	 * @param key key to look for, must not be null
+	 * @return number of keys less than this key
+	 */
+	public int rank(K key) {
+		return countBefore(key, false);
+	}
+	
+	/**
+	 * Return the key at the given position in iteration order.
+	 * @param i index, must be in the range [0,size())
+	 * @return the key at this index
+	 * @throws IndexOutOfBoundsException if the index is not legal
+	 */
+	public K select(int i) {
+		return nodeAt(i).key;
+	}
+	
+	/**
+	 * Return the entry at the given position in iteration order.
+	 * Like the navigation methods, the entry returned does not support setValue.
+	 * @param i index, must be in the range [0,size())
+	 * @return the entry at this index
+	 * @throws IndexOutOfBoundsException if the index is not legal
+	 */
+	public Entry<K,V> entryAt(int i) {
+		return exportEntry(nodeAt(i));
+	}
+	
+	/**
+	 * Return the number of keys k such that lo &lt;= k &lt; hi.
+	 * @param lo lower bound (inclusive), must not be null
+	 * @param hi upper bound (exclusive), must not be null
+	 * @return number of keys in the half-open range
+	 * @throws IllegalArgumentException if lo is greater than hi
+	 */
+	public int countInRange(K lo, K hi) {
+		if (comparator.compare(lo, hi) > 0) throw new IllegalArgumentException("lo > hi");
+		return countBefore(hi, false) - countBefore(lo, false);
+	}
+	
+	
+	/// Set operations on whole maps
+	
+	private static final int PARALLEL_THRESHOLD = 1 << 13; // entries per task
+	
+	private enum SetOp { UNION, INTERSECTION, DIFFERENCE }
+	
+	/**
+	 * Return a new map with the keys of both this map and the other.
+	 * Neither map is changed.
+	 * @param other map with the same ordering, must not be null
+	 * @param merge function that gives the value for a key in both maps,
+	 * called with this map's value and then the other's, must not be null
+	 * @return new map with the union of the keys
+	 * @throws IllegalArgumentException if the maps are ordered differently
+	 */
+	public TreeMap<K,V> union(TreeMap<K,V> other, BiFunction<? super V, ? super V, ? extends V> merge) {
+		if (merge == null) throw new NullPointerException("merge is null");
+		return setOperation(other, SetOp.UNION, merge);
+	}
+	
+	/**
+	 * Return a new map with the keys that are in both this map and the other.
+	 * Neither map is changed.
+	 * @param other map with the same ordering, must not be null
+	 * @param merge function that gives the value for each key,
+	 * called with this map's value and then the other's, must not be null
+	 * @return new map with the intersection of the keys
+	 * @throws IllegalArgumentException if the maps are ordered differently
+	 */
+	public TreeMap<K,V> intersection(TreeMap<K,V> other, BiFunction<? super V, ? super V, ? extends V> merge) {
+		if (merge == null) throw new NullPointerException("merge is null");
+		return setOperation(other, SetOp.INTERSECTION, merge);
+	}
+	
+	/**
+	 * Return a new map with the entries of this map whose keys are not in the other.
+	 * Neither map is changed.
+	 * @param other map with the same ordering, must not be null
+	 * @return new map with the keys of this map that are not in other
+	 * @throws IllegalArgumentException if the maps are ordered differently
+	 */
+	public TreeMap<K,V> difference(TreeMap<K,?> other) {
+		return setOperation(other, SetOp.DIFFERENCE, null);
+	}
+	
+	/**
+	 * Perform a set operation, producing a new balanced map.
+	 * When one map is much smaller than the other, each of its keys is found
+	 * in the larger map by searching onward from where the previous key was
+	 * found, which takes O(log(d + 1)) comparisons and steps when d entries
+	 * are passed over.  Entries passed over that the result drops are skipped
+	 * without being visited, so for sizes m &lt;= n an intersection, or a small map
+	 * minus a large one, takes O(m log(n/m + 1)) time in all.
+	 * Entries the result keeps are visited one by one (without comparisons),
+	 * so a union, or a large map minus a small one, takes O(m log(n/m + 1))
+	 * comparisons but O(n) time.
+	 * Otherwise both maps are cut at the same keys (chosen by rank in the larger map)
+	 * and the pieces are merged in parallel, in O(n + m) time.
+	 * Either way the result is gathered into lists and built in parallel,
+	 * in time linear in its size.
+	 */
+	private <W> TreeMap<K,V> setOperation(TreeMap<K,W> other, SetOp op, BiFunction<? super V, ? super W, ? extends V> merge) {
+		if (!Objects.equals(comparator(), other.comparator())) throw new IllegalArgumentException("maps are ordered differently");
+		int n = numItems, m = other.numItems;
+		List<K> keys = new ArrayList<>();
+		List<V> values = new ArrayList<>();
+		if ((long)Math.min(n, m) * GALLOP_RATIO <= Math.max(n, m)) {
+			if (n >= m) gallopOther(other, op, merge, keys, values);
+			else gallopThis(other, op, merge, keys, values);
+		} else {
+			int pieces = (n + m) / PARALLEL_THRESHOLD + 1;
+			pieces = Math.min(pieces, 4 * ForkJoinPool.getCommonPoolParallelism());
+			TreeMap<K,?> larger = n >= m ? this : other;
+			List<K> cuts = new ArrayList<>();
+			cuts.add(null);
+			for (int i=1; i < pieces; ++i) {
+				cuts.add(larger.select((int)((long)i * larger.numItems / pieces)));
+			}
+			cuts.add(null);
+			List<MergeTask<W>> tasks = new ArrayList<>();
+			for (int i=0; i < pieces; ++i) {
+				tasks.add(new MergeTask<W>(other, op, merge, cuts.get(i), cuts.get(i+1)));
+			}
+			if (pieces == 1) tasks.get(0).invoke();
+			else ForkJoinTask.invokeAll(tasks);
+			for (MergeTask<W> t : tasks) {
+				keys.addAll(t.keys);
+				values.addAll(t.values);
+			}
+		}
+		TreeMap<K,V> result = new TreeMap<K,V>(comparator, balancing);
+		result.buildParallel(keys, values);
+		assert result.wellFormed() : "invariant broken after set operation";
+		return result;
+	}
+	
+	private static final int GALLOP_RATIO = 16; // size ratio at which merging gives way to searching
+	
+	/**
+	 * Perform a set operation when the other map is much smaller:
+	 * walk its keys, finding each one in this map.
+	 */
+	private <W> void gallopOther(TreeMap<K,W> other, SetOp op, BiFunction<? super V, ? super W, ? extends V> merge, List<K> keys, List<V> values) {
+		boolean keepThis = op != SetOp.INTERSECTION;
+		Node<K,V> pos = lowestNode(); // first entry of this map not yet handled
+		for (Node<K,W> b = other.lowestNode(); b != null; b = other.nextOrNull(b)) {
+			Node<K,V> a = pos == null || comparator.compare(pos.key, b.key) >= 0 ? pos : ceilingAfter(pos, b.key);
+			if (!keepThis) pos = a; // skip the entries in between without visiting them
+			for (; pos != a; pos = nextOrNull(pos)) {
+				keys.add(pos.key);
+				values.add(pos.value);
+			}
+			if (a != null && comparator.compare(a.key, b.key) == 0) {
+				if (op != SetOp.DIFFERENCE) {
+					keys.add(a.key);
+					values.add(merge.apply(a.value, b.value));
+				}
+				pos = nextOrNull(a);
+			} else if (op == SetOp.UNION) {
+				// for a union, the other map has the same value type
+				@SuppressWarnings("unchecked")
+				V v = (V)b.value;
+				keys.add(b.key);
+				values.add(v);
+			}
+		}
+		for (; keepThis && pos != null; pos = nextOrNull(pos)) {
+			keys.add(pos.key);
+			values.add(pos.value);
+		}
+	}
+	
+	/**
+	 * Perform a set operation when this map is much smaller:
+	 * walk its keys, finding each one in the other map.
+	 */
+	private <W> void gallopThis(TreeMap<K,W> other, SetOp op, BiFunction<? super V, ? super W, ? extends V> merge, List<K> keys, List<V> values) {
+		boolean keepOther = op == SetOp.UNION;
+		Node<K,W> pos = other.lowestNode(); // first entry of the other map not yet handled
+		for (Node<K,V> a = lowestNode(); a != null; a = nextOrNull(a)) {
+			Node<K,W> b = pos == null || comparator.compare(pos.key, a.key) >= 0 ? pos : other.ceilingAfter(pos, a.key);
+			if (!keepOther) pos = b; // skip the entries in between without visiting them
+			for (; pos != b; pos = other.nextOrNull(pos)) {
+				@SuppressWarnings("unchecked")
+				V v = (V)pos.value;
+				keys.add(pos.key);
+				values.add(v);
+			}
+			if (b != null && comparator.compare(b.key, a.key) == 0) {
+				if (op != SetOp.DIFFERENCE) {
+					keys.add(a.key);
+					values.add(merge.apply(a.value, b.value));
+				}
+				pos = other.nextOrNull(b);
+			} else if (op != SetOp.INTERSECTION) {
+				keys.add(a.key);
+				values.add(a.value);
+			}
+		}
+		for (; keepOther && pos != null; pos = other.nextOrNull(pos)) {
+			@SuppressWarnings("unchecked")
+			V v = (V)pos.value;
+			keys.add(pos.key);
+			values.add(v);
+		}
+	}
+	
+	/**
+	 * Return the first node whose key is at least k, searching from a node
+	 * with a smaller key.  As in {@link #climbFromFinger}, the search climbs
+	 * only until a subtree that must contain the answer is reached, so when
+	 * d entries lie between the two, it takes O(log d) comparisons.
+	 * @param from node in the tree with a key less than k, must not be null
+	 * @param k key to search for, must not be null
+	 * @return first node with a key at least k, or null if there is none
+	 */
+	private Node<K,V> ceilingAfter(Node<K,V> from, K k) {
+		if (readOnly) return ceilingNode(k, true); // a snapshot cannot climb: see ancestorOf
+		Node<K,V> r = from, bound = null;
+		while (r != dummy.left) {
+			Node<K,V> p = r.parent;
+			// climbing from a right child passes only smaller keys
+			if (r == p.left && comparator.compare(k, p.key) <= 0) {
+				bound = p;
+				break;
+			}
+			r = p;
+		}
+		// the answer is in r's subtree, or else it is the bound
+		Node<K,V> best = bound;
+		while (r != null) {
+			int c = comparator.compare(k, r.key);
+			if (c > 0) r = r.right;
+			else {
+				best = r;
+				if (c == 0) break;
+				r = r.left;
+			}
+		}
+		return best;
+	}
+	
+	private Node<K,V> nextOrNull(Node<K,V> n) {
+		n = successor(n);
+		return n == dummy ? null : n;
+	}
+	
+	
+	/// Traversal without iterators
+	// These walk the tree with parent pointers: no comparisons, no allocation,
+	// but they still fail fast if the action changes the structure of the map.
+	// (A snapshot cannot use parent pointers, and descends instead: see ancestorOf.)
+	
+	@Override // efficiency
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		if (action == null) throw new NullPointerException();
+		int expected = version, gen = generation;
+		for (Node<K,V> n = lowestNode(); n != null; n = nextOrNull(n)) {
+			action.accept(n.key, n.value);
+			if (version != expected) throw new ConcurrentModificationException("map changed during forEach");
+			if (gen != generation) n = relocate(n);
+			gen = generation;
+		}
+	}
+	
+	@Override // efficiency
+	public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+		if (function == null) throw new NullPointerException();
+		checkWritable();
+		ownAll();
+		int expected = version;
+		try {
+			for (Node<K,V> n = lowestNode(); n != null; n = nextOrNull(n)) {
+				n.value = function.apply(n.key, n.value);
+				if (version != expected) throw new ConcurrentModificationException("map changed during replaceAll");
+			}
+		} finally {
+			// one linear pass instead of a path update per value
+			if (monoid != null && version == expected) computeAggregates(dummy.left);
+		}
+	}
+	
+	/**
+	 * Merge the entries of this map and another in the key range [lo,hi).
+	 * A null bound means no limit.  The maps are only read.
+	 */
+	@SuppressWarnings("serial")
+	private class MergeTask<W> extends RecursiveAction {
+		final TreeMap<K,W> other;
+		final SetOp op;
+		final BiFunction<? super V, ? super W, ? extends V> merge;
+		final K lo, hi;
+		final List<K> keys = new ArrayList<>();
+		final List<V> values = new ArrayList<>();
+		
+		MergeTask(TreeMap<K,W> o, SetOp op, BiFunction<? super V, ? super W, ? extends V> f, K lo, K hi) {
+			other = o;
+			this.op = op;
+			merge = f;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override // required
+		protected void compute() {
+			Node<K,V> a = lo == null ? lowestNode() : ceilingNode(lo, true);
+			Node<K,V> aEnd = hi == null ? null : ceilingNode(hi, true);
+			Node<K,W> b = lo == null ? other.lowestNode() : other.ceilingNode(lo, true);
+			Node<K,W> bEnd = hi == null ? null : other.ceilingNode(hi, true);
+			while (a != aEnd || b != bEnd) {
+				int c;
+				if (a == aEnd) c = 1;
+				else if (b == bEnd) c = -1;
+				else c = comparator.compare(a.key, b.key);
+				if (c < 0) {
+					if (op != SetOp.INTERSECTION) {
+						keys.add(a.key);
+						values.add(a.value);
+					}
+				} else if (c > 0) {
+					if (op == SetOp.UNION) {
+						// for a union, the other map has the same value type
+						@SuppressWarnings("unchecked")
+						V v = (V)b.value;
+						keys.add(b.key);
+						values.add(v);
+					}
+				} else if (op != SetOp.DIFFERENCE) {
+					keys.add(a.key);
+					values.add(merge.apply(a.value, b.value));
+				}
+				if (c <= 0) a = nextOrNull(a);
+				if (c >= 0) b = other.nextOrNull(b);
+			}
+		}
+	}
+	
+	/**
+	 * Replace the (empty) contents of this map with a balanced tree of
+	 * the given entries, which must be in strictly increasing key order.
+	 * Large inputs are built with independent subtrees in parallel.
+	 * @param keys keys in increasing order
+	 * @param values value for each key
+	 */
+	private void buildParallel(List<K> keys, List<V> values) {
+		int n = keys.size();
+		int redLevel = 0;
+		for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+			++redLevel;
+		}
+		BuildTask task = new BuildTask(keys, values, redLevel, 0, 0, n - 1);
+		Node<K,V> r = n < PARALLEL_THRESHOLD ? task.compute() : task.invoke();
+		dummy.left = r;
+		if (r != null) r.parent = dummy;
+		finger = null;
+		numItems = n;
+		refillFilter();
+		if (index != null) index.refill();
+		version++;
+	}
+	
+	@SuppressWarnings("serial")
+	private class BuildTask extends RecursiveTask<Node<K,V>> {
+		final List<K> keys;
+		final List<V> values;
+		final int redLevel, depth, lo, hi;
+		
+		BuildTask(List<K> ks, List<V> vs, int rl, int d, int lo, int hi) {
+			keys = ks;
+			values = vs;
+			redLevel = rl;
+			depth = d;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override // required
+		protected Node<K,V> compute() {
+			if (hi < lo) return null;
+			int mid = (lo + hi) >>> 1;
+			BuildTask leftTask = new BuildTask(keys, values, redLevel, depth + 1, lo, mid - 1);
+			BuildTask rightTask = new BuildTask(keys, values, redLevel, depth + 1, mid + 1, hi);
+			Node<K,V> left, right;
+			if (hi - lo < PARALLEL_THRESHOLD) {
+				left = leftTask.compute();
+				right = rightTask.compute();
+			} else {
+				rightTask.fork();
+				left = leftTask.compute();
+				right = rightTask.join();
+			}
+			Node<K,V> r = newNode(keys.get(mid), values.get(mid));
+			r.red = depth == redLevel;
+			r.left = left;
+			if (left != null) left.parent = r;
+			r.right = right;
+			if (right != null) right.parent = r;
+			update(r);
+			return r;
+		}
+	}
+	
+	
+	/// Range aggregates (using a monoid)
+	
+	/**
+	 * Start (or stop) maintaining aggregates of the values in every subtree.
+	 * Setting a monoid takes linear time; afterwards every change costs
+	 * O(log n) extra combine operations, including changes made
+	 * through setValue on entries of this map.
+	 * @param m monoid to use, or null to stop keeping aggregates
+	 */
+	@SuppressWarnings("unchecked")
+	public void setMonoid(Monoid<? super V, ?> m) {
+		checkWritable();
+		monoid = (Monoid<? super V, Object>) m;
+		lastSnapshot = null;
+		if (m != null) {
+			ownAll();
+			computeAggregates(dummy.left);
+		}
+		assert wellFormed() : "invariant broken after setMonoid";
+	}
+	
+	/**
+	 * Recompute the sizes and aggregates of a subtree, children before parents.
+	 * The post-order walk follows parent pointers, so it needs no stack
+	 * however deep the tree is (as it may be without red-black balancing).
+	 * @param r root of the subtree, may be null
+	 */
+	private void computeAggregates(Node<K,V> r) {
+		if (r == null) return;
+		Node<K,V> top = r.parent;
+		Node<K,V> n = firstInPostOrder(r);
+		while (n != top) {
+			update(n);
+			Node<K,V> p = n.parent;
+			if (p != top && n == p.left && p.right != null) n = firstInPostOrder(p.right);
+			else n = p;
+		}
+	}
+	
+	private Node<K,V> firstInPostOrder(Node<K,V> n) {
+		for (;;) {
+			if (n.left != null) n = n.left;
+			else if (n.right != null) n = n.right;
+			else return n;
+		}
+	}
+	
+	private void checkMonoid(Monoid<?,?> m) {
+		if (m == null || m != monoid) throw new IllegalArgumentException("not the monoid of this map");
+	}
+	
+	/**
+	 * Return the aggregate of all values in the map, in constant time.
+	 * @param m the monoid previously given to {@link #setMonoid}
+	 * @return the combination of all values in key order
+	 * @throws IllegalArgumentException if m is not the monoid of this map
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> A aggregate(Monoid<? super V, A> m) {
+		checkMonoid(m);
+		return (A)aggOf(dummy.left);
+	}
+	
+	/**
+	 * Return the aggregate of the values for keys k such that lo &lt;= k &lt; hi.
+	 * This takes O(log n) combine operations.
+	 * @param m the monoid previously given to {@link #setMonoid}
+	 * @param lo lower bound (inclusive), must not be null
+	 * @param hi upper bound (exclusive), must not be null
+	 * @return the combination of the values in the range, in key order
+	 * @throws IllegalArgumentException if m is not the monoid of this map, or lo &gt; hi
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> A aggregate(Monoid<? super V, A> m, K lo, K hi) {
+		checkMonoid(m);
+		if (comparator.compare(lo, hi) > 0) throw new IllegalArgumentException("lo > hi");
+		// find the highest node in range: the ranges on each side are then one-sided
+		Node<K, V> r = dummy.left;
+		while (r != null) {
+			if (comparator.compare(r.key, lo) < 0) r = r.right;
+			else if (comparator.compare(r.key, hi) >= 0) r = r.left;
+			else break;
+		}
+		if (r == null) return m.identity();
+		Object suffix = monoid.identity(); // of nodes >= lo in r.left
+		for (Node<K, V> n = r.left; n != null; ) {
+			if (comparator.compare(n.key, lo) >= 0) {
+				suffix = monoid.combine(monoid.combine(monoid.of(n.value), aggOf(n.right)), suffix);
+				n = n.left;
+			} else n = n.right;
+		}
+		Object prefix = monoid.identity(); // of nodes < hi in r.right
+		for (Node<K, V> n = r.right; n != null; ) {
+			if (comparator.compare(n.key, hi) < 0) {
+				prefix = monoid.combine(prefix, monoid.combine(aggOf(n.left), monoid.of(n.value)));
+				n = n.right;
+			} else n = n.left;
+		}
+		return (A)monoid.combine(monoid.combine(suffix, monoid.of(r.value)), prefix);
+	}
+	
+	private volatile NavigableSet<K> keySet;
+	private volatile NavigableMap<K,V> descendingMap;
+	
+	@Override // efficiency
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+	
+	@Override // required
+	public NavigableSet<K> navigableKeySet() {
+		if (keySet == null) {
+			keySet = new KeySet<K>(this);
+		}
+		return keySet;
+	}
+	
+	@Override // required
+	public NavigableSet<K> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+	
+	private volatile Collection<V> values;
+	
+	@Override // efficiency
+	public Collection<V> values() {
+		if (values == null) {
+			values = new Values();
+		}
+		return values;
+	}
+	
+	private class Values extends AbstractCollection<V> {
+		@Override // implementation
+		public int size() {
+			return TreeMap.this.size();
+		}
+		
+		@Override // implementation
+		public Iterator<V> iterator() {
+			return new ValueIterator<V>(new MyIterator());
+		}
+		
+		@Override // efficiency
+		public void clear() {
+			TreeMap.this.clear();
+		}
+		
+		@Override // efficiency
+		public Spliterator<V> spliterator() {
+			return new NodeSpliterator<V>(0, numItems, n -> n.value, null,
+					Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED);
+		}
+		
+		@Override // efficiency
+		public void forEach(Consumer<? super V> action) {
+			if (action == null) throw new NullPointerException();
+			int expected = version, gen = generation;
+			for (Node<K,V> n = lowestNode(); n != null; n = nextOrNull(n)) {
+				action.accept(n.value);
+				if (version != expected) throw new ConcurrentModificationException("map changed during forEach");
+				if (gen != generation) n = relocate(n);
+				gen = generation;
+			}
+		}
+	}
+	
+	private static final int KEY_CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+			| Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+	
+	Spliterator<K> keySpliterator() {
+		return new NodeSpliterator<K>(0, numItems, n -> n.key, comparator(), KEY_CHARACTERISTICS);
+	}
+	
+	/**
+	 * Return a comparator on entries that orders them as the map orders their keys.
+	 */
+	private Comparator<Entry<K,V>> entryComparator() {
+		return (a, b) -> comparator.compare(a.getKey(), b.getKey());
+	}
+	
+	@Override // required
+	public NavigableMap<K, V> descendingMap() {
+		if (descendingMap == null) {
+			descendingMap = new SubMap(true, null, false, true, null, false, true);
+		}
+		return descendingMap;
+	}
+	
+	@Override // required
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+	}
+	
+	@Override // required
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return new SubMap(true, null, false, false, toKey, inclusive, false);
+	}
+	
+	@Override // required
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return new SubMap(false, fromKey, inclusive, true, null, false, false);
+	}
+	
+	@Override // required
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+	
+	@Override // required
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+	
+	@Override // required
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	
+	private volatile Set<Entry<K,V>> entrySet;
+	
+	@Override // required
+	public Set<Entry<K, V>> entrySet() {
 		assert wellFormed() : "invariant broken at beginning of entrySet";
 		if (entrySet == null) {
 			entrySet = new EntrySet();
 		}
-		return entrySet;
+		return entrySet;
+	}
+
+	/**
+	 * The set for this map, backed by the map.
+	 * By "backed: we mean that this set doesn't have its own data structure:
+	 * it uses the data structure of the map.
+	 */
+	private class EntrySet extends AbstractSet<Entry<K,V>> {
+		// Do NOT add any fields! 
+		
+		@Override // implementation
+		public int size() {
+			// TODO: Easy: delegate to TreeMap.size()
+			return TreeMap.this.size();
+		}
+
+		@Override // implementation
+		public Iterator<Entry<K, V>> iterator() {
+			return new MyIterator();
+		}
+		
+		@Override // efficiency
+		public Spliterator<Entry<K, V>> spliterator() {
+			return new NodeSpliterator<Entry<K,V>>(0, numItems, TreeMap.this::entryOf, entryComparator(), KEY_CHARACTERISTICS);
+		}
+		
+		@Override // efficiency
+		public void forEach(Consumer<? super Entry<K, V>> action) {
+			if (action == null) throw new NullPointerException();
+			int expected = version, gen = generation;
+			for (Node<K,V> n = lowestNode(); n != null; n = nextOrNull(n)) {
+				action.accept(entryOf(n));
+				if (version != expected) throw new ConcurrentModificationException("map changed during forEach");
+				if (gen != generation) n = relocate(n);
+				gen = generation;
+			}
+		}
+		
+		
+		@Override // efficiency
+		public boolean contains(Object o) {
+			assert wellFormed() : "Invariant broken at start of EntrySet.contains";
+			// TODO if o is not an entry (instanceof Entry<?,?>), return false
+			// Otherwise, check the entry for this entry's key.
+			// If there is no such entry return false;
+			// Otherwise return whether the entries match (use the equals method of the Node class). 
+			// N.B. You can't check whether the key is of the correct type
+			// because K is a generic type parameter.  So you must handle any
+			// Object similarly to how "get" does.
+			if (!(o instanceof Entry<?, ?>)) return false;
+			
+			Entry<?, ?> temp = (Entry<?, ?>) o;
+			
+			Node<K, V> n = TreeMap.this.getNode(temp.getKey());
+			return n != null && matches(n, temp);
+		}
+
+		@Override //implementation
+		public boolean remove(Object x) {
+			// TODO: if the tree doesn't contain x, return false
+			// otherwise do a TreeMap remove.
+			// make sure that the invariant is true before returning.
+			assert wellFormed() : "wellFormed failed at the beginning of remove(EntrySet)";
+			if (!(x instanceof Entry<?, ?>)) return false;
+			
+			Entry<?, ?> temp = (Entry<?, ?>) x;
+			Node<K, V> n = TreeMap.this.getNode(temp.getKey());
+			if (n == null || !matches(n, temp)) return false;
+			removeNode(n);
+			
+			assert wellFormed() : "wellFormed failed at the beginning of remove(EntrySet)";
+			return true;
+		}
+		
+		@Override // efficiency
+		public void clear() {
+			// TODO: Easy: delegate to the TreeMap.clear()
+			TreeMap.this.clear();
+		}
+	}
+
+	
+	/**
+	 * Iterator over the map.
+	 * We use parent pointers.
+	 * current points to node (if any) that can be removed.
+	 * next points to dummy indicating no more next.
+	 */
+	private class MyIterator implements Iterator<Entry<K,V>> {
+		
+		Node<K, V> current, next;
+		Node<K, V> fence = dummy; // where iteration stops
+		int colVersion = version;
+		int gen = generation;
+		
+		
+		boolean wellFormed() {
+			// TODO: See Homework description for more details.  Here's a summary:
+			// (1) check the outer wellFormed()
+			// (2) If version matches, do the remaining checks:
+			//     (a) current should either be null or a non-dummy node in the tree
+			//     (b) next should never be null and should be in the tree (maybe dummy).
+			//     (c) if current is not null, make sure it is the last node before where next is.
+			
+			//Invariant 1
+			if (!TreeMap.this.wellFormed()) return false;
+			
+			if (colVersion == version) {
+				//Invariant 2
+				if (current != null && TreeMap.this.findKey(current.key) == null) return report("current not in TreeMap");
+				
+				//Invariant 3
+				if (next == null) {
+					return report("next is null");
+				}
+				else {
+					if (next != dummy && TreeMap.this.findKey(next.key) == null) {
+						return report("next is not equal to dummy and not in TreeMap");
+					}
+				}
+				//Invariant 4
+				if (current != null) {
+					Node<K, V> i = next;
+					if (i.left != null) {
+						i = i.left;
+						while (i.right != null) {
+							i = i.right;
+						}
+					}
+					else if (readOnly) {
+						i = predecessor(i); // a snapshot cannot climb
+					}
+					else {
+						while (i.parent.key != null && comparator.compare(i.parent.key, next.key) > 0){
+							i = i.parent;
+						}
+						i = i.parent;
+					}
+					if (current != i) return report("current is not before next");
+				}
+				
+			}
+			
+			return true;
+		}
+		
+		MyIterator(boolean ignored) {} // do not change this
+		
+		MyIterator() {
+			// TODO: initialize next to the leftmost node
+			current = null;
+			next = TreeMap.this.firstInTree(dummy);
+			assert wellFormed() : "invariant broken after iterator constructor";
+		}
+		
+		/**
+		 * Create an iterator over a range of nodes.
+		 * @param first first node to return, or null if the range is empty
+		 * @param fence node just past the range (the dummy if the range extends to the end)
+		 */
+		MyIterator(Node<K, V> first, Node<K, V> fence) {
+			current = null;
+			this.fence = fence;
+			next = first == null ? fence : first;
+			assert wellFormed() : "invariant broken after iterator constructor";
+		}
+		
+		public void checkVersion() {
+			if (version != colVersion) throw new ConcurrentModificationException("stale iterator");
+		}
+		
+		/**
+		 * If nodes have been copied since (see {@link TreeMap#own}),
+		 * move to the copies.
+		 */
+		private void catchUp() {
+			if (gen == generation) return;
+			if (current != null) current = relocate(current);
+			next = relocate(next);
+			fence = relocate(fence);
+			gen = generation;
+		}
+		
+		@Override // required
+		public boolean hasNext() {
+			catchUp();
+			assert wellFormed() : "invariant broken before hasNext()";
+			// TODO: easy!
+			checkVersion();
+			return next != fence;
+		}
+
+		@Override // required
+		public Entry<K, V> next() {
+			catchUp();
+			assert wellFormed() : "invariant broken at start of next()";
+			// TODO
+			// We don't use (non-existent)nextInTree: 
+			// but rather parent pointers in the second case.
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			
+			current = next;
+			next = successor(current);
+			
+			assert wellFormed() : "invariant broken at end of next()";
+			return entryOf(current);
+		}
+
+		@Override // implementation
+		public void remove() {
+			assert wellFormed() : "invariant broken at start of iterator.remove()";
+			// TODO: check that there is something to remove.
+			// Use the remove method from TreeMap to remove it.
+			// (See handout for details.)
+			// After removal, record that there is nothing to remove any more.
+			// Handle versions.
+			checkVersion();
+			if (current == null) throw new IllegalStateException();
+			
+			removeNode(current);
+			
+			current = null;
+			if (numItems == 0) {
+				next = dummy;
+			}
+			
+			colVersion = version;
+			assert wellFormed() : "invariant broken at end of iterator.remove()";
+		}
+		
+	}
+	
+	
+	/**
+	 * Iterator over the map in descending order.
+	 * Like MyIterator, but moves to predecessors, and stops at fence.
+	 */
+	private class DescendingIterator implements Iterator<Entry<K,V>> {
+		Node<K, V> current, next, fence;
+		int colVersion = version;
+		int gen = generation;
+		
+		DescendingIterator(Node<K, V> first, Node<K, V> fence) {
+			next = first == null ? fence : first;
+			this.fence = fence;
+		}
+		
+		@Override // required
+		public boolean hasNext() {
+			if (version != colVersion) throw new ConcurrentModificationException("stale iterator");
+			if (gen != generation) {
+				// nodes have been copied
+				next = relocate(next);
+				fence = relocate(fence);
+				gen = generation;
+			}
+			return next != fence;
+		}
+		
+		@Override // required
+		public Entry<K, V> next() {
+			if (!hasNext()) throw new NoSuchElementException("no more");
+			current = next;
+			next = predecessor(current);
+			return entryOf(current);
+		}
+		
+		@Override // implementation
+		public void remove() {
+			if (version != colVersion) throw new ConcurrentModificationException("stale iterator");
+			if (current == null) throw new IllegalStateException();
+			removeNode(current);
+			current = null;
+			colVersion = version;
+		}
+	}
+	
+	/**
+	 * Spliterator over a run of consecutive nodes, identified by their positions.
+	 * Splitting takes the first half of the remaining positions, so the pieces
+	 * are exactly sized; the node to start at is found lazily with one
+	 * descent using subtree sizes, and traversal follows parent pointers.
+	 * Neither uses the comparator.
+	 */
+	private class NodeSpliterator<T> implements Spliterator<T> {
+		private int index, remaining;
+		private Node<K,V> next; // the node at index, or null if not found yet
+		private final Function<Node<K,V>, T> extract;
+		private final Comparator<? super T> order;
+		private final int characteristics;
+		private int expectedVersion = version;
+		private int gen = generation;
+		
+		NodeSpliterator(int from, int count, Function<Node<K,V>, T> f, Comparator<? super T> c, int ch) {
+			index = from;
+			remaining = count;
+			extract = f;
+			order = c;
+			characteristics = ch;
+		}
+		
+		private void checkVersion() {
+			if (version != expectedVersion) throw new ConcurrentModificationException("stale spliterator");
+		}
+		
+		@Override // required
+		public Spliterator<T> trySplit() {
+			if (remaining < 2) return null;
+			int half = remaining >>> 1;
+			NodeSpliterator<T> prefix = new NodeSpliterator<T>(index, half, extract, order, characteristics);
+			prefix.next = next;
+			prefix.expectedVersion = expectedVersion;
+			prefix.gen = gen;
+			index += half;
+			remaining -= half;
+			next = null;
+			return prefix;
+		}
+		
+		@Override // required
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (action == null) throw new NullPointerException();
+			checkVersion();
+			if (remaining == 0) return false;
+			if (gen != generation) {
+				// nodes have been copied
+				next = null;
+				gen = generation;
+			}
+			if (next == null) next = nodeAt(index);
+			Node<K,V> n = next;
+			++index;
+			next = --remaining == 0 ? null : successor(n);
+			action.accept(extract.apply(n));
+			return true;
+		}
+		
+		@Override // efficiency
+		public void forEachRemaining(Consumer<? super T> action) {
+			if (action == null) throw new NullPointerException();
+			checkVersion();
+			if (remaining == 0) return;
+			Node<K,V> n = next == null ? nodeAt(index) : next;
+			int count = remaining;
+			index += count;
+			remaining = 0;
+			next = null;
+			for (;;) {
+				action.accept(extract.apply(n));
+				checkVersion();
+				if (--count == 0) break;
+				if (gen != generation) {
+					n = relocate(n);
+					gen = generation;
+				}
+				n = successor(n);
+			}
+		}
+		
+		@Override // required
+		public long estimateSize() {
+			return remaining;
+		}
+		
+		@Override // required
+		public int characteristics() {
+			return characteristics;
+		}
+		
+		@Override // implementation
+		public Comparator<? super T> getComparator() {
+			if ((characteristics & SORTED) == 0) throw new IllegalStateException("not sorted");
+			return order;
+		}
+	}
+	
+	/**
+	 * A view of a range of this map, possibly in descending order.
+	 * The bounds are always given in terms of the map's own (ascending) order;
+	 * "abs" helpers work in that order and the "rel" helpers translate
+	 * for descending views.
+	 */
+	private class SubMap extends AbstractMap<K,V> implements NavigableMap<K,V> {
+		final boolean fromStart, toEnd;
+		final K lo, hi;
+		final boolean loInclusive, hiInclusive;
+		final boolean descending;
+		
+		SubMap(boolean fromStart, K lo, boolean loInclusive,
+				boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+			if (!fromStart && !toEnd) {
+				if (comparator.compare(lo, hi) > 0) throw new IllegalArgumentException("fromKey > toKey");
+			} else {
+				// check type and nullness
+				if (!fromStart) comparator.compare(lo, lo);
+				if (!toEnd) comparator.compare(hi, hi);
+			}
+			this.fromStart = fromStart;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.toEnd = toEnd;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+		
+		boolean tooLow(K key) {
+			if (fromStart) return false;
+			int c = comparator.compare(key, lo);
+			return c < 0 || (c == 0 && !loInclusive);
+		}
+		
+		boolean tooHigh(K key) {
+			if (toEnd) return false;
+			int c = comparator.compare(key, hi);
+			return c > 0 || (c == 0 && !hiInclusive);
+		}
+		
+		boolean inRange(K key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+		
+		boolean inClosedRange(K key) {
+			return (fromStart || comparator.compare(key, lo) >= 0)
+					&& (toEnd || comparator.compare(hi, key) >= 0);
+		}
+		
+		boolean inRange(K key, boolean inclusive) {
+			return inclusive ? inRange(key) : inClosedRange(key);
+		}
+		
+		Node<K, V> absLowest() {
+			Node<K, V> n = fromStart ? lowestNode() : ceilingNode(lo, loInclusive);
+			return (n == null || tooHigh(n.key)) ? null : n;
+		}
+		
+		Node<K, V> absHighest() {
+			Node<K, V> n = toEnd ? highestNode() : floorNode(hi, hiInclusive);
+			return (n == null || tooLow(n.key)) ? null : n;
+		}
+		
+		Node<K, V> absCeiling(K key, boolean inclusive) {
+			if (tooLow(key)) return absLowest();
+			Node<K, V> n = ceilingNode(key, inclusive);
+			return (n == null || tooHigh(n.key)) ? null : n;
+		}
+		
+		Node<K, V> absFloor(K key, boolean inclusive) {
+			if (tooHigh(key)) return absHighest();
+			Node<K, V> n = floorNode(key, inclusive);
+			return (n == null || tooLow(n.key)) ? null : n;
+		}
+		
+		/** First node past the high end of the range, or the dummy. */
+		Node<K, V> absHighFence() {
+			Node<K, V> n = toEnd ? null : ceilingNode(hi, !hiInclusive);
+			return n == null ? dummy : n;
+		}
+		
+		/** First node past the low end of the range (going down), or the dummy. */
+		Node<K, V> absLowFence() {
+			Node<K, V> n = fromStart ? null : floorNode(lo, !loInclusive);
+			return n == null ? dummy : n;
+		}
+		
+		Node<K, V> relLowest() {
+			return descending ? absHighest() : absLowest();
+		}
+		
+		Node<K, V> relHighest() {
+			return descending ? absLowest() : absHighest();
+		}
+		
+		Node<K, V> relCeiling(K key, boolean inclusive) {
+			return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+		}
+		
+		Node<K, V> relFloor(K key, boolean inclusive) {
+			return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+		}
+		
+		/** Return the node for this key if it is in the tree and in range. */
+		Node<K, V> getNode(Object o) {
+			Node<K, V> n = findKey(o, true);
+			return (n == null || !inRange(n.key)) ? null : n;
+		}
+		
+		@Override // implementation
+		public int size() {
+			int high = toEnd ? numItems : countBefore(hi, hiInclusive);
+			int low = fromStart ? 0 : countBefore(lo, !loInclusive);
+			return Math.max(0, high - low);
+		}
+		
+		@Override // efficiency
+		public boolean isEmpty() {
+			return absLowest() == null;
+		}
+		
+		@Override // efficiency
+		public boolean containsKey(Object key) {
+			return getNode(key) != null;
+		}
+		
+		@Override // efficiency
+		public V get(Object key) {
+			Node<K, V> n = getNode(key);
+			return n == null ? null : n.value;
+		}
+		
+		@Override // implementation
+		public V put(K key, V value) {
+			if (!inRange(key)) throw new IllegalArgumentException("key out of range");
+			return TreeMap.this.put(key, value);
+		}
+		
+		@Override // efficiency
+		public V remove(Object key) {
+			Node<K, V> n = getNode(key);
+			if (n == null) return null;
+			removeNode(n);
+			return n.value;
+		}
+		
+		@Override // required
+		public Comparator<? super K> comparator() {
+			Comparator<? super K> c = TreeMap.this.comparator();
+			return descending ? Collections.reverseOrder(c) : c;
+		}
+		
+		@Override // required
+		public K firstKey() {
+			return keyOrThrow(relLowest());
+		}
+		
+		@Override // required
+		public K lastKey() {
+			return keyOrThrow(relHighest());
+		}
+		
+		@Override // required
+		public Entry<K, V> firstEntry() {
+			return exportEntry(relLowest());
+		}
+		
+		@Override // required
+		public Entry<K, V> lastEntry() {
+			return exportEntry(relHighest());
+		}
+		
+		@Override // required
+		public Entry<K, V> pollFirstEntry() {
+			Node<K, V> n = relLowest();
+			if (n == null) return null;
+			removeNode(n);
+			return exportEntry(n);
+		}
+		
+		@Override // required
+		public Entry<K, V> pollLastEntry() {
+			Node<K, V> n = relHighest();
+			if (n == null) return null;
+			removeNode(n);
+			return exportEntry(n);
+		}
+		
+		@Override // required
+		public Entry<K, V> lowerEntry(K key) {
+			return exportEntry(relFloor(key, false));
+		}
+		
+		@Override // required
+		public K lowerKey(K key) {
+			return keyOrNull(relFloor(key, false));
+		}
+		
+		@Override // required
+		public Entry<K, V> floorEntry(K key) {
+			return exportEntry(relFloor(key, true));
+		}
+		
+		@Override // required
+		public K floorKey(K key) {
+			return keyOrNull(relFloor(key, true));
+		}
+		
+		@Override // required
+		public Entry<K, V> ceilingEntry(K key) {
+			return exportEntry(relCeiling(key, true));
+		}
+		
+		@Override // required
+		public K ceilingKey(K key) {
+			return keyOrNull(relCeiling(key, true));
+		}
+		
+		@Override // required
+		public Entry<K, V> higherEntry(K key) {
+			return exportEntry(relCeiling(key, false));
+		}
+		
+		@Override // required
+		public K higherKey(K key) {
+			return keyOrNull(relCeiling(key, false));
+		}
+		
+		@Override // efficiency
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+		
+		@Override // required
+		public NavigableSet<K> navigableKeySet() {
+			return new KeySet<K>(this);
+		}
+		
+		/** Index (in the whole map) of the first node in this view. */
+		int absLowIndex() {
+			return fromStart ? 0 : countBefore(lo, !loInclusive);
+		}
+		
+		/**
+		 * Return a spliterator over the keys, or null if this view is descending
+		 * (and so not split by position).
+		 */
+		Spliterator<K> keySpliterator() {
+			if (descending) return null;
+			return new NodeSpliterator<K>(absLowIndex(), size(), n -> n.key, comparator(), KEY_CHARACTERISTICS);
+		}
+		
+		@Override // required
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+		
+		@Override // required
+		public NavigableMap<K, V> descendingMap() {
+			return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+		}
+		
+		@Override // required
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			if (!inRange(fromKey, fromInclusive)) throw new IllegalArgumentException("fromKey out of range");
+			if (!inRange(toKey, toInclusive)) throw new IllegalArgumentException("toKey out of range");
+			if (descending) return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+			return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+		}
+		
+		@Override // required
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			if (!inRange(toKey, inclusive)) throw new IllegalArgumentException("toKey out of range");
+			if (descending) return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+			return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+		}
+		
+		@Override // required
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			if (!inRange(fromKey, inclusive)) throw new IllegalArgumentException("fromKey out of range");
+			if (descending) return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+			return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+		}
+		
+		@Override // required
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+		
+		@Override // required
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+		
+		@Override // required
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+		
+		@Override // required
+		public Set<Entry<K, V>> entrySet() {
+			return new SubEntrySet();
+		}
+		
+		private class SubEntrySet extends AbstractSet<Entry<K,V>> {
+			@Override // implementation
+			public int size() {
+				return SubMap.this.size();
+			}
+			
+			@Override // efficiency
+			public boolean isEmpty() {
+				return absLowest() == null;
+			}
+			
+			@Override // implementation
+			public Iterator<Entry<K, V>> iterator() {
+				if (descending) return new DescendingIterator(absHighest(), absLowFence());
+				return new MyIterator(absLowest(), absHighFence());
+			}
+			
+			@Override // efficiency
+			public Spliterator<Entry<K, V>> spliterator() {
+				if (descending) return Spliterators.spliterator(this, Spliterator.ORDERED | Spliterator.DISTINCT);
+				return new NodeSpliterator<Entry<K,V>>(absLowIndex(), SubMap.this.size(), TreeMap.this::entryOf, entryComparator(), KEY_CHARACTERISTICS);
+			}
+			
+			@Override // efficiency
+			public boolean contains(Object o) {
+				if (!(o instanceof Entry<?,?>)) return false;
+				Node<K, V> n = SubMap.this.getNode(((Entry<?,?>)o).getKey());
+				return n != null && matches(n, (Entry<?,?>)o);
+			}
+			
+			@Override // efficiency
+			public boolean remove(Object o) {
+				if (!(o instanceof Entry<?,?>)) return false;
+				Node<K, V> n = SubMap.this.getNode(((Entry<?,?>)o).getKey());
+				if (n == null || !matches(n, (Entry<?,?>)o)) return false;
+				removeNode(n);
+				return true;
+			}
+		}
 	}
-
+	
 	/**
-	 * The set for this map, backed by the map.
-	 * By "backed: we mean that this set doesn't have its own data structure:
-	 * it uses the data structure of the map.
+	 * The navigable set of keys of a navigable map (this map or one of its views).
+	 * All operations are delegated to the map.
 	 */
-	private class EntrySet extends AbstractSet<Entry<K,V>> {
-		// Do NOT add any fields! 
+	private static class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+		private final NavigableMap<E, ?> map;
+		
+		KeySet(NavigableMap<E, ?> m) {
+			map = m;
+		}
 		
 		@Override // implementation
-		public int size() {
-			// TODO: Easy: delegate to TreeMap.size()
-			return TreeMap.this.size();
+		public Iterator<E> iterator() {
+			return new KeyIterator<E>(map.entrySet().iterator());
 		}
-
+		
+		@Override // required
+		public Iterator<E> descendingIterator() {
+			return new KeyIterator<E>(map.descendingMap().entrySet().iterator());
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override // efficiency
+		public Spliterator<E> spliterator() {
+			Spliterator<E> result = null;
+			if (map instanceof TreeMap<?,?>) result = ((TreeMap<E,?>)map).keySpliterator();
+			else if (map instanceof TreeMap<?,?>.SubMap) result = ((TreeMap<E,?>.SubMap)map).keySpliterator();
+			if (result == null) result = Spliterators.spliterator(this, Spliterator.ORDERED | Spliterator.DISTINCT);
+			return result;
+		}
+		
 		@Override // implementation
-		public Iterator<Entry<K, V>> iterator() {
-			return new MyIterator();
+		public int size() {
+			return map.size();
 		}
 		
+		@Override // efficiency
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
 		
 		@Override // efficiency
 		public boolean contains(Object o) {
-			assert wellFormed() : "Invariant broken at start of EntrySet.contains";
-			// TODO if o is not an entry (instanceof Entry<?,?>), return false
-			// Otherwise, check the entry for this entry's key.
-			// If there is no such entry return false;
-			// Otherwise return whether the entries match (use the equals method of the Node class). 
-			// N.B. You can't check whether the key is of the correct type
-			// because K is a generic type parameter.  So you must handle any
-			// Object similarly to how "get" does.
-			if (!(o instanceof Entry<?, ?>)) return false;
-			
-			Entry<?, ?> temp = (Entry<?, ?>) o;
-			
-			if (!TreeMap.this.containsKey(temp.getKey())) return false;
-			
-			if (!TreeMap.this.getNode(temp.getKey()).equals(o)) return false;
-			
-			return true;
+			return map.containsKey(o);
 		}
-
-		@Override //implementation
-		public boolean remove(Object x) {
-			// TODO: if the tree doesn't contain x, return false
-			// otherwise do a TreeMap remove.
-			// make sure that the invariant is true before returning.
-			assert wellFormed() : "wellFormed failed at the beginning of remove(EntrySet)";
-			if (!(x instanceof Entry<?, ?>)) return false;
-			
-			Entry<?, ?> temp = (Entry<?, ?>) x;
-			if (!TreeMap.this.containsKey(temp.getKey())) return false;		
-			if (!x.equals(TreeMap.this.getNode(temp.getKey()))) return false;
-			TreeMap.this.remove(temp.getKey());
-			
-			assert wellFormed() : "wellFormed failed at the beginning of remove(EntrySet)";
+		
+		@Override // efficiency
+		public boolean remove(Object o) {
+			if (!map.containsKey(o)) return false;
+			map.remove(o);
 			return true;
 		}
 		
 		@Override // efficiency
 		public void clear() {
-			// TODO: Easy: delegate to the TreeMap.clear()
-			TreeMap.this.clear();
+			map.clear();
 		}
-	}
-
-	
-	/**
-	 * Iterator over the map.
-	 * We use parent pointers.
-	 * current points to node (if any) that can be removed.
-	 * next points to dummy indicating no more next.
-	 */
-	private class MyIterator implements Iterator<Entry<K,V>> {
 		
-		Node<K, V> current, next;
-		int colVersion = version;
+		@Override // required
+		public Comparator<? super E> comparator() {
+			return map.comparator();
+		}
 		
+		@Override // required
+		public E first() {
+			return map.firstKey();
+		}
 		
-		boolean wellFormed() {
-			// TODO: See Homework description for more details.  Here's a summary:
-			// (1) check the outer wellFormed()
-			// (2) If version matches, do the remaining checks:
-			//     (a) current should either be null or a non-dummy node in the tree
-			//     (b) next should never be null and should be in the tree (maybe dummy).
-			//     (c) if current is not null, make sure it is the last node before where next is.
-			
-			//Invariant 1
-			if (!TreeMap.this.wellFormed()) return false;
-			
-			if (colVersion == version) {
-				//Invariant 2
-				if (current != null && TreeMap.this.findKey(current.key) == null) return report("current not in TreeMap");
-				
-				//Invariant 3
-				if (next == null) {
-					return report("next is null");
-				}
-				else {
-					if (next != dummy && TreeMap.this.findKey(next.key) == null) {
-						return report("next is not equal to dummy and not in TreeMap");
-					}
-				}
-				//Invariant 4
-				if (current != null) {
-					Node<K, V> i = next;
-					if (i.left != null) {
-						i = i.left;
-						while (i.right != null) {
-							i = i.right;
-						}
-					}
-					else {
-						while (i.parent.key != null && comparator.compare(i.parent.key, next.key) > 0){
-							i = i.parent;
-						}
-						i = i.parent;
-					}
-					if (current != i) return report("current is not before next");
-				}
-				
-			}
-			
-			return true;
+		@Override // required
+		public E last() {
+			return map.lastKey();
 		}
 		
-		MyIterator(boolean ignored) {} // do not change this
+		@Override // required
+		public E lower(E e) {
+			return map.lowerKey(e);
+		}
 		
-		MyIterator() {
-			// TODO: initialize next to the leftmost node
-			current = null;
-			next = TreeMap.this.firstInTree(dummy);
-			assert wellFormed() : "invariant broken after iterator constructor";
+		@Override // required
+		public E floor(E e) {
+			return map.floorKey(e);
 		}
 		
-		public void checkVersion() {
-			if (version != colVersion) throw new ConcurrentModificationException("stale iterator");
+		@Override // required
+		public E ceiling(E e) {
+			return map.ceilingKey(e);
+		}
+		
+		@Override // required
+		public E higher(E e) {
+			return map.higherKey(e);
+		}
+		
+		@Override // required
+		public E pollFirst() {
+			Entry<E, ?> e = map.pollFirstEntry();
+			return e == null ? null : e.getKey();
+		}
+		
+		@Override // required
+		public E pollLast() {
+			Entry<E, ?> e = map.pollLastEntry();
+			return e == null ? null : e.getKey();
+		}
+		
+		@Override // required
+		public NavigableSet<E> descendingSet() {
+			return new KeySet<E>(map.descendingMap());
+		}
+		
+		@Override // required
+		public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+			return new KeySet<E>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+		}
+		
+		@Override // required
+		public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+			return new KeySet<E>(map.headMap(toElement, inclusive));
+		}
+		
+		@Override // required
+		public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+			return new KeySet<E>(map.tailMap(fromElement, inclusive));
+		}
+		
+		@Override // required
+		public SortedSet<E> subSet(E fromElement, E toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+		
+		@Override // required
+		public SortedSet<E> headSet(E toElement) {
+			return headSet(toElement, false);
+		}
+		
+		@Override // required
+		public SortedSet<E> tailSet(E fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+	
+	private static class ValueIterator<V> implements Iterator<V> {
+		private final Iterator<? extends Entry<?, V>> entries;
+		
+		ValueIterator(Iterator<? extends Entry<?, V>> it) {
+			entries = it;
 		}
 		
 		@Override // required
 		public boolean hasNext() {
-			assert wellFormed() : "invariant broken before hasNext()";
-			// TODO: easy!
-			checkVersion();
-			return next != dummy;
+			return entries.hasNext();
 		}
-
+		
 		@Override // required
-		public Entry<K, V> next() {
-			assert wellFormed() : "invariant broken at start of next()";
-			// TODO
-			// We don't use (non-existent)nextInTree: 
-			// but rather parent pointers in the second case.
-			if (!hasNext()) throw new NoSuchElementException("no more");
-			checkVersion();
-			
-			current = next;
-			if (current.right != null) {
-				next = firstInTree(current.right);
-			}
-			else {
-				if (next.right == null) {
-					Node<K, V> i = next;
-					while (i.parent != null) {
-						i = i.parent;
-						if (i != dummy && comparator.compare(next.key, i.key) < 0) {
-							break;
-						}
-					}
-					next = i;
-				}
-				else {
-					next = firstInTree(next.right);
-				}
-			}
-			
-			
-			assert wellFormed() : "invariant broken at end of next()";
-			return current;
+		public V next() {
+			return entries.next().getValue();
 		}
-
+		
 		@Override // implementation
 		public void remove() {
-			assert wellFormed() : "invariant broken at start of iterator.remove()";
-			// TODO: check that there is something to remove.
-			// Use the remove method from TreeMap to remove it.
-			// (See handout for details.)
-			// After removal, record that there is nothing to remove any more.
-			// Handle versions.
-			checkVersion();
-			if (current == null) throw new IllegalStateException();
-			
-			TreeMap.this.remove(current.key);
-			
-			current = null;
-			if (numItems == 0) {
-				next = dummy;
-			}
-			
-			colVersion = ++version;
-			assert wellFormed() : "invariant broken at end of iterator.remove()";
+			entries.remove();
+		}
+	}
+	
+	private static class KeyIterator<E> implements Iterator<E> {
+		private final Iterator<? extends Entry<E, ?>> entries;
+		
+		KeyIterator(Iterator<? extends Entry<E, ?>> it) {
+			entries = it;
+		}
+		
+		@Override // required
+		public boolean hasNext() {
+			return entries.hasNext();
+		}
+		
+		@Override // required
+		public E next() {
+			return entries.next().getKey();
 		}
 		
+		@Override // implementation
+		public void remove() {
+			entries.remove();
+		}
 	}
+
 	
 	
 	/// Junit test case of private internal structure.